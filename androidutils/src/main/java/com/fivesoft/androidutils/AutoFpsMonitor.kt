@@ -0,0 +1,142 @@
+package com.fivesoft.androidutils
+
+import android.view.Choreographer
+import androidx.lifecycle.Lifecycle
+import androidx.lifecycle.LifecycleEventObserver
+import androidx.lifecycle.LifecycleOwner
+import com.fivesoft.javautils.measure.FPSMeasure
+
+/**
+ * Feeds an [FPSMeasure] automatically with the vsync time of every frame, using [Choreographer].
+ * Frame times are the vsync times passed to [Choreographer.FrameCallback.doFrame], not the time
+ * the callback runs, so the measure is not skewed by the work done before the callback.
+ * Besides the measure, the number of vsyncs with no frame (dropped vsyncs) is counted.
+ *
+ * Costs one callback per frame and does not allocate. Must be used on a thread with a
+ * [android.os.Looper], usually the main thread. Bind it to a lifecycle with [bindTo]
+ * to measure only while the screen is resumed.
+ * @param measure The measure to feed.
+ * @param refreshRate The refresh rate of the display in Hz, used to count dropped vsyncs.
+ */
+class AutoFpsMonitor @JvmOverloads constructor(
+    val measure: FPSMeasure = FPSMeasure(DEFAULT_BUFFER_SIZE),
+    refreshRate: Float = DEFAULT_REFRESH_RATE
+) : Choreographer.FrameCallback, LifecycleEventObserver {
+
+    private var choreographer: Choreographer? = null
+    private var vsyncIntervalNanos = 0L
+
+    /**
+     * Whether the monitor is receiving frames.
+     */
+    @Volatile
+    var isRunning = false
+        private set
+
+    /**
+     * The number of vsyncs with no frame since creation or [resetDroppedVsyncs].
+     * A frame taking three vsync intervals counts as two dropped vsyncs.
+     */
+    @Volatile
+    var droppedVsyncs = 0L
+        private set
+
+    /**
+     * The refresh rate of the display in Hz, used to count dropped vsyncs.
+     * Update it when the display mode changes.
+     */
+    var refreshRate: Float = refreshRate
+        set(value) {
+            require(value > 0) { "Refresh rate must be greater than 0" }
+            field = value
+            vsyncIntervalNanos = (1_000_000_000.0 / value).toLong()
+        }
+
+    init {
+        this.refreshRate = refreshRate
+    }
+
+    /**
+     * Starts receiving frames. Does nothing if already running.
+     * Must be called on a thread with a [android.os.Looper].
+     */
+    fun start() {
+        if (isRunning) return
+        val choreographer = Choreographer.getInstance()
+        this.choreographer = choreographer
+        isRunning = true
+        //The pause before starting is not a frame
+        measure.skipFrame()
+        choreographer.postFrameCallback(this)
+    }
+
+    /**
+     * Stops receiving frames. Does nothing if not running.
+     * Must be called on the thread [start] was called on.
+     */
+    fun stop() {
+        if (!isRunning) return
+        isRunning = false
+        choreographer?.removeFrameCallback(this)
+        choreographer = null
+    }
+
+    /**
+     * Starts and stops the monitor with the lifecycle: runs while it is resumed
+     * and unbinds when it is destroyed.
+     * @param lifecycle The lifecycle, for example of an activity or fragment.
+     */
+    fun bindTo(lifecycle: Lifecycle) {
+        lifecycle.addObserver(this)
+    }
+
+    /**
+     * Starts and stops the monitor with the lifecycle of the owner.
+     * @see bindTo
+     */
+    fun bindTo(owner: LifecycleOwner) = bindTo(owner.lifecycle)
+
+    /**
+     * Resets the dropped vsyncs count.
+     */
+    fun resetDroppedVsyncs() {
+        droppedVsyncs = 0
+    }
+
+    override fun doFrame(frameTimeNanos: Long) {
+        if (!isRunning) return
+        val delta = measure.onFrame(frameTimeNanos)
+        if (delta > 0) {
+            //Vsyncs passed since the last frame, rounded, minus the one of this frame
+            val vsyncs = (delta + vsyncIntervalNanos / 2) / vsyncIntervalNanos
+            if (vsyncs > 1) droppedVsyncs += vsyncs - 1
+        }
+        choreographer?.postFrameCallback(this)
+    }
+
+    override fun onStateChanged(source: LifecycleOwner, event: Lifecycle.Event) {
+        when (event) {
+            Lifecycle.Event.ON_RESUME -> start()
+            Lifecycle.Event.ON_PAUSE -> stop()
+            Lifecycle.Event.ON_DESTROY -> {
+                stop()
+                source.lifecycle.removeObserver(this)
+            }
+            else -> {}
+        }
+    }
+
+    companion object {
+
+        /**
+         * Default number of frames the average FPS is calculated over.
+         */
+        const val DEFAULT_BUFFER_SIZE = 60
+
+        /**
+         * Default refresh rate of the display in Hz.
+         */
+        const val DEFAULT_REFRESH_RATE = 60f
+    }
+
+}
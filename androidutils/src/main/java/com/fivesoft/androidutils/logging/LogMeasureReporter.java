@@ -0,0 +1,49 @@
+package com.fivesoft.androidutils.logging;
+
+import com.fivesoft.javautils.measure.MeasureReporter;
+import com.fivesoft.javautils.measure.MeasureSnapshot;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Objects;
+
+/**
+ * Logs the snapshots of a {@link com.fivesoft.javautils.measure.MeasureRegistry} with {@link X},
+ * one message per snapshot with one line per sample.
+ */
+public class LogMeasureReporter implements MeasureReporter {
+
+    @NotNull
+    private final X.Priority priority;
+    @Nullable
+    private final String tag;
+
+    /**
+     * Creates a new reporter logging with {@link X.Priority#DEBUG} priority.
+     * @param tag The tag of the messages.
+     */
+    public LogMeasureReporter(@Nullable String tag) {
+        this(X.Priority.DEBUG, tag);
+    }
+
+    /**
+     * Creates a new reporter.
+     * @param priority The priority of the messages.
+     * @param tag The tag of the messages.
+     */
+    public LogMeasureReporter(@NotNull X.Priority priority, @Nullable String tag) {
+        this.priority = Objects.requireNonNull(priority);
+        this.tag = tag;
+    }
+
+    @Override
+    public void report(@NotNull MeasureSnapshot snapshot) {
+        StringBuilder message = new StringBuilder("Measures:");
+        for (MeasureSnapshot.Sample sample : snapshot.getSamples()) {
+            message.append('\n').append(sample);
+        }
+        X.log(priority, tag, message.toString());
+    }
+
+}
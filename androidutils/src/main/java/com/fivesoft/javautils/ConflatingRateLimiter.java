@@ -0,0 +1,227 @@
+package com.fivesoft.javautils;
+
+import android.os.Handler;
+import android.os.Looper;
+
+import com.fivesoft.javautils.time.Scheduler;
+import com.fivesoft.javautils.time.SystemScheduler;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+
+/**
+ * ConflatingRateLimiter is a class that limits
+ * the frequency of value delivery.<br>
+ * Values offered faster than the allowed frequency are conflated:
+ * only the newest one is kept and delivered as soon as the interval passes,
+ * so the consumer always ends up with the latest value.
+ * @param <T> The type of the values.
+ */
+public final class ConflatingRateLimiter<T> {
+
+    @NotNull
+    private final Consumer<T> consumer;
+    @Nullable
+    private final Handler mainHandler;
+    @NotNull
+    private final Scheduler scheduler;
+    private volatile long minIntervalNs;
+    private volatile long lastDeliveryTime;
+    private volatile boolean hasDelivered = false;
+    private final AtomicReference<T> pending = new AtomicReference<>(null);
+    private final AtomicBoolean isDeliveryScheduled = new AtomicBoolean(false);
+    private final AtomicLong conflatedValues = new AtomicLong(0);
+    private final Runnable deliveryTask = this::deliver;
+
+    /**
+     * Creates a new ConflatingRateLimiter object, delivering values on the calling or scheduler thread.
+     * @param consumer The consumer receiving the values.
+     * @param maxFrequency The maximum frequency of value delivery in Hz.
+     *                     Negative or zero values will disable the rate limiting.
+     */
+    public ConflatingRateLimiter(@NotNull Consumer<T> consumer, float maxFrequency){
+        this(consumer, maxFrequency, false);
+    }
+
+    /**
+     * Creates a new ConflatingRateLimiter object.
+     * @param consumer The consumer receiving the values.
+     * @param maxFrequency The maximum frequency of value delivery in Hz.
+     *                     Negative or zero values will disable the rate limiting.
+     * @param deliverOnMainThread If true, values will always be delivered on the main thread.
+     */
+    public ConflatingRateLimiter(@NotNull Consumer<T> consumer, float maxFrequency, boolean deliverOnMainThread){
+        this(consumer, maxFrequency <= 0 ? -1 : (long) (1000f / maxFrequency), deliverOnMainThread);
+    }
+
+    /**
+     * Creates a new ConflatingRateLimiter object.
+     * @param consumer The consumer receiving the values.
+     * @param minIntervalMs The minimum interval between deliveries in milliseconds.
+     *                      Negative values will disable the rate limiting.
+     * @param deliverOnMainThread If true, values will always be delivered on the main thread.
+     */
+    public ConflatingRateLimiter(@NotNull Consumer<T> consumer, long minIntervalMs, boolean deliverOnMainThread){
+        this(consumer, minIntervalMs, deliverOnMainThread, SystemScheduler.getInstance());
+    }
+
+    /**
+     * Creates a new ConflatingRateLimiter object.
+     * @param consumer The consumer receiving the values.
+     * @param minIntervalMs The minimum interval between deliveries in milliseconds.
+     *                      Negative values will disable the rate limiting.
+     * @param deliverOnMainThread If true, values will always be delivered on the main thread.
+     * @param scheduler The scheduler used to measure time and to execute delayed deliveries.
+     *                  Delayed deliveries on the main thread are posted to its looper instead.
+     */
+    public ConflatingRateLimiter(@NotNull Consumer<T> consumer, long minIntervalMs, boolean deliverOnMainThread,
+                                 @NotNull Scheduler scheduler){
+        Objects.requireNonNull(consumer);
+        Objects.requireNonNull(scheduler);
+        this.consumer = consumer;
+        this.scheduler = scheduler;
+        this.mainHandler = deliverOnMainThread ? new Handler(Looper.getMainLooper()) : null;
+        setMinInterval(minIntervalMs);
+    }
+
+    /**
+     * Sets the maximum frequency of value delivery in Hz.
+     * @param hz The maximum frequency in Hz. Negative or zero values will disable the rate limiting.
+     */
+    public void setMaxFrequency(float hz){
+        if(hz <= 0){
+            setMinInterval(-1);
+            return;
+        }
+        setMinInterval((long) (1000f / hz));
+    }
+
+    /**
+     * Sets the minimum interval between deliveries in milliseconds.
+     * @param ms The minimum interval in milliseconds. Negative values will disable the rate limiting.
+     */
+    public void setMinInterval(long ms){
+        minIntervalNs = ms <= 0 ? -1 : TimeUnit.MILLISECONDS.toNanos(ms);
+    }
+
+    /**
+     * Returns the max frequency of value delivery in Hz or -1 if rate limiting is disabled.
+     * @return The max frequency in Hz.
+     */
+    public float getMaxFrequency(){
+        long interval = getMinInterval();
+        if(interval <= 0){
+            return -1;
+        }
+        return 1000f / interval;
+    }
+
+    /**
+     * Returns the minimum interval between deliveries in milliseconds or -1 if rate limiting is disabled.
+     * @return The minimum interval in milliseconds.
+     */
+    public long getMinInterval(){
+        long interval = minIntervalNs;
+        if(interval <= 0){
+            return -1;
+        }
+        return TimeUnit.NANOSECONDS.toMillis(interval);
+    }
+
+    /**
+     * Returns the number of values that were replaced by a newer value before being delivered.
+     * @return The number of conflated values.
+     */
+    public long getConflatedValuesCount(){
+        return conflatedValues.get();
+    }
+
+    /**
+     * Resets conflated value counter to 0.
+     */
+    public void resetConflatedValuesCount(){
+        conflatedValues.set(0);
+    }
+
+    /**
+     * Offers a new value.<br>
+     * If the minimum interval has passed since the last delivery, the value is delivered immediately
+     * (on the calling thread, or posted to the main thread).
+     * Otherwise it replaces any value still waiting and is delivered as soon as the interval passes.
+     * @param value The value. Cannot be null.
+     */
+    public void offer(@NotNull T value){
+        Objects.requireNonNull(value);
+        if(pending.getAndSet(value) != null){
+            conflatedValues.incrementAndGet();
+        }
+        scheduleDelivery();
+    }
+
+    /**
+     * Drops the value waiting for delivery, if any.
+     */
+    public void clear(){
+        pending.set(null);
+    }
+
+    //Internal method to schedule delivery of the pending value.
+    //Only one delivery is in flight at a time, which also serializes consumer calls.
+    //Due values are delivered in a loop, a consumer offering values itself must not grow the stack.
+    private void scheduleDelivery(){
+        while(pending.get() != null && isDeliveryScheduled.compareAndSet(false, true)){
+            long interval = minIntervalNs;
+            long delay = 0;
+            if(interval > 0 && hasDelivered){
+                delay = lastDeliveryTime + interval - scheduler.nanoTime();
+            }
+            Handler handler = mainHandler;
+            if(handler != null){
+                //Round up, so that the value is never delivered before the interval passes
+                handler.postDelayed(deliveryTask, Math.max(0, (delay + 999_999) / 1_000_000));
+                return;
+            }
+            if(delay > 0){
+                scheduler.schedule(deliveryTask, delay, TimeUnit.NANOSECONDS);
+                return;
+            }
+            try {
+                deliverPending();
+            } catch (RuntimeException | Error e){
+                //Keep the delivery slot, the scheduler delivers a value which arrived meanwhile
+                scheduler.schedule(deliveryTask, 0, TimeUnit.NANOSECONDS);
+                throw e;
+            }
+            isDeliveryScheduled.set(false);
+        }
+    }
+
+    //Internal method to deliver the newest value on the scheduler or main thread
+    private void deliver(){
+        try {
+            deliverPending();
+        } finally {
+            isDeliveryScheduled.set(false);
+            //A value may have arrived while we were delivering
+            scheduleDelivery();
+        }
+    }
+
+    //Internal method to pass the newest value to the consumer, the caller holds the delivery slot
+    private void deliverPending(){
+        T value = pending.getAndSet(null);
+        if(value != null){
+            lastDeliveryTime = scheduler.nanoTime();
+            hasDelivered = true;
+            consumer.accept(value);
+        }
+    }
+
+}
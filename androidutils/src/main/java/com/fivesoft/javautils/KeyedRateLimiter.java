@@ -0,0 +1,318 @@
+package com.fivesoft.javautils;
+
+import com.fivesoft.javautils.time.Scheduler;
+import com.fivesoft.javautils.time.SystemScheduler;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.lang.ref.WeakReference;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * KeyedRateLimiter is a class that limits
+ * the frequency of task execution separately for each key.<br>
+ * It behaves like having one {@link RateLimiter} per key, but all keys share
+ * a single scheduler thread and keep only a few fields of state.
+ * Keys that have been idle for longer than the configured time to live are evicted,
+ * so the memory used stays bounded by the number of recently active keys.
+ * @param <K> The type of the keys.
+ */
+public final class KeyedRateLimiter<K> {
+
+    //Marks a key that has never executed its task
+    private static final long NEVER = Long.MIN_VALUE;
+
+    @NotNull
+    private final Consumer<K> task;
+    private volatile long minIntervalNs;
+    private final long idleTtlNs;
+    private final ConcurrentHashMap<K, KeyState> states = new ConcurrentHashMap<>();
+    private final AtomicLong droppedTasks = new AtomicLong(0);
+    @NotNull
+    private final Scheduler scheduler;
+    @NotNull
+    private final Scheduler.Cancellable evictionTask;
+
+    /**
+     * Creates a new KeyedRateLimiter object.
+     * @param task The task to be executed. Receives the key it is executed for.
+     * @param maxFrequency The maximum frequency of task execution per key in Hz.
+     *                     Negative or zero values will disable the rate limiting.
+     * @param idleTtlMs The time in milliseconds after which an idle key is evicted. Must be greater than 0.
+     */
+    public KeyedRateLimiter(@NotNull Consumer<K> task, float maxFrequency, long idleTtlMs){
+        this(task, maxFrequency <= 0 ? -1 : (long) (1000f / maxFrequency), idleTtlMs);
+    }
+
+    /**
+     * Creates a new KeyedRateLimiter object.
+     * @param task The task to be executed. Receives the key it is executed for.
+     * @param minIntervalMs The minimum interval between task executions for one key in milliseconds.
+     *                      Negative values will disable the rate limiting.
+     * @param idleTtlMs The time in milliseconds after which an idle key is evicted. Must be greater than 0.
+     */
+    public KeyedRateLimiter(@NotNull Consumer<K> task, long minIntervalMs, long idleTtlMs){
+        this(task, minIntervalMs, idleTtlMs, SystemScheduler.getInstance());
+    }
+
+    /**
+     * Creates a new KeyedRateLimiter object.
+     * @param task The task to be executed. Receives the key it is executed for.
+     * @param minIntervalMs The minimum interval between task executions for one key in milliseconds.
+     *                      Negative values will disable the rate limiting.
+     * @param idleTtlMs The time in milliseconds after which an idle key is evicted. Must be greater than 0.
+     * @param scheduler The scheduler used to measure time, to execute trailing tasks and to evict idle keys.
+     */
+    public KeyedRateLimiter(@NotNull Consumer<K> task, long minIntervalMs, long idleTtlMs,
+                            @NotNull Scheduler scheduler){
+        Objects.requireNonNull(task);
+        Objects.requireNonNull(scheduler);
+        if(idleTtlMs <= 0){
+            throw new IllegalArgumentException("idleTtlMs must be greater than 0");
+        }
+        this.task = task;
+        this.scheduler = scheduler;
+        this.idleTtlNs = TimeUnit.MILLISECONDS.toNanos(idleTtlMs);
+        setMinInterval(minIntervalMs);
+        long sweepPeriod = Math.max(1, idleTtlMs / 2);
+        EvictionSweep sweep = new EvictionSweep(this);
+        this.evictionTask = scheduler.scheduleWithFixedDelay(
+                sweep, sweepPeriod, sweepPeriod, TimeUnit.MILLISECONDS);
+        sweep.setCancellable(evictionTask);
+    }
+
+    /**
+     * Sets the maximum frequency of task execution per key in Hz.
+     * @param hz The maximum frequency in Hz. Negative or zero values will disable the rate limiting.
+     */
+    public void setMaxFrequency(float hz){
+        if(hz <= 0){
+            setMinInterval(-1);
+            return;
+        }
+        setMinInterval((long) (1000f / hz));
+    }
+
+    /**
+     * Sets the minimum interval between task executions for one key in milliseconds.
+     * @param ms The minimum interval in milliseconds. Negative values will disable the rate limiting.
+     */
+    public void setMinInterval(long ms){
+        minIntervalNs = ms <= 0 ? -1 : TimeUnit.MILLISECONDS.toNanos(ms);
+    }
+
+    /**
+     * Returns the max frequency of task execution per key in Hz or -1 if rate limiting is disabled.
+     * @return The max frequency in Hz.
+     */
+    public float getMaxFrequency(){
+        long interval = getMinInterval();
+        if(interval <= 0){
+            return -1;
+        }
+        return 1000f / interval;
+    }
+
+    /**
+     * Returns the minimum interval between task executions for one key in milliseconds
+     * or -1 if rate limiting is disabled.
+     * @return The minimum interval in milliseconds.
+     */
+    public long getMinInterval(){
+        long interval = minIntervalNs;
+        if(interval <= 0){
+            return -1;
+        }
+        return TimeUnit.NANOSECONDS.toMillis(interval);
+    }
+
+    /**
+     * Returns the time after which an idle key is evicted in milliseconds.
+     * @return The idle time to live in milliseconds.
+     */
+    public long getIdleTtl(){
+        return TimeUnit.NANOSECONDS.toMillis(idleTtlNs);
+    }
+
+    /**
+     * Returns the number of tasks that were dropped because they were scheduled too frequently.
+     * @return The number of dropped tasks.
+     */
+    public long getDroppedTasksCount(){
+        return droppedTasks.get();
+    }
+
+    /**
+     * Resets dropped task counter to 0.
+     */
+    public void resetDroppedTasksCount(){
+        droppedTasks.set(0);
+    }
+
+    /**
+     * Returns the number of keys currently tracked by this limiter.
+     * @return The number of tracked keys.
+     */
+    public int size(){
+        return states.size();
+    }
+
+    /**
+     * Executes the task for the given key if the minimum interval has passed
+     * since the last execution for that key.
+     * If the interval has not passed, the task will be executed on the shared scheduler thread
+     * as soon as the interval passes.
+     * If the task is already scheduled for that key, it will be dropped.
+     * @param key The key to execute the task for.
+     */
+    public void run(@NotNull K key){
+        Objects.requireNonNull(key);
+        for(;;){
+            KeyState state = getOrCreateState(key);
+            long now = scheduler.nanoTime();
+            long interval = minIntervalNs;
+            synchronized (state){
+                if(state.evicted){
+                    //The state was evicted after the lookup, retry with a fresh one
+                    continue;
+                }
+                state.lastAccessTime = now;
+                if(state.scheduled){
+                    droppedTasks.incrementAndGet();
+                    return;
+                }
+                if(interval > 0 && state.lastRunTime != NEVER && now - state.lastRunTime < interval){
+                    state.scheduled = true;
+                    long delay = state.lastRunTime + interval - now;
+                    scheduler.schedule(
+                            () -> runScheduled(key, state), delay, TimeUnit.NANOSECONDS);
+                    return;
+                }
+                state.lastRunTime = now;
+            }
+            task.accept(key);
+            return;
+        }
+    }
+
+    /**
+     * Forgets the state of the given key.
+     * A trailing execution that is already scheduled for the key will still run.
+     * @param key The key to forget.
+     */
+    public void remove(@NotNull K key){
+        KeyState state = states.remove(key);
+        if(state != null){
+            synchronized (state){
+                state.evicted = true;
+            }
+        }
+    }
+
+    /**
+     * Forgets the state of all keys.
+     */
+    public void clear(){
+        for(K key : states.keySet()){
+            remove(key);
+        }
+    }
+
+    /**
+     * Stops evicting idle keys and forgets the state of all keys.
+     * The limiter should not be used after calling this method.
+     */
+    public void close(){
+        evictionTask.cancel();
+        clear();
+    }
+
+    //Internal method to look up the state of a key, without locking on hits
+    @NotNull
+    private KeyState getOrCreateState(@NotNull K key){
+        KeyState state = states.get(key);
+        if(state == null){
+            KeyState newState = new KeyState();
+            state = states.putIfAbsent(key, newState);
+            if(state == null){
+                state = newState;
+            }
+        }
+        return state;
+    }
+
+    //Internal method to execute a trailing task on the scheduler thread
+    private void runScheduled(@NotNull K key, @NotNull KeyState state){
+        synchronized (state){
+            state.scheduled = false;
+            state.lastRunTime = scheduler.nanoTime();
+            state.lastAccessTime = state.lastRunTime;
+        }
+        task.accept(key);
+    }
+
+    //Internal method to remove the keys idle for longer than the time to live
+    private void evictIdleKeys(){
+        long now = scheduler.nanoTime();
+        long interval = minIntervalNs;
+        for(Map.Entry<K, KeyState> entry : states.entrySet()){
+            KeyState state = entry.getValue();
+            synchronized (state){
+                if(state.scheduled || now - state.lastAccessTime <= idleTtlNs){
+                    continue;
+                }
+                if(interval > 0 && state.lastRunTime != NEVER && now - state.lastRunTime < interval){
+                    //Evicting now would let the key run again before its interval has passed
+                    continue;
+                }
+                state.evicted = true;
+                states.remove(entry.getKey(), state);
+            }
+        }
+    }
+
+    //Per key state, guarded by its own monitor
+    private static final class KeyState {
+        long lastRunTime = NEVER;
+        long lastAccessTime;
+        boolean scheduled;
+        boolean evicted;
+    }
+
+    //Periodic eviction task. Holds the limiter weakly, so that a forgotten limiter
+    //does not stay reachable from the shared scheduler forever, and cancels itself once it is gone.
+    private static final class EvictionSweep implements Runnable {
+
+        private final WeakReference<KeyedRateLimiter<?>> limiter;
+        @Nullable
+        private volatile Scheduler.Cancellable cancellable;
+
+        EvictionSweep(@NotNull KeyedRateLimiter<?> limiter){
+            this.limiter = new WeakReference<>(limiter);
+        }
+
+        void setCancellable(@NotNull Scheduler.Cancellable cancellable){
+            this.cancellable = cancellable;
+        }
+
+        @Override
+        public void run() {
+            KeyedRateLimiter<?> limiter = this.limiter.get();
+            if(limiter == null){
+                Scheduler.Cancellable cancellable = this.cancellable;
+                if(cancellable != null){
+                    cancellable.cancel();
+                }
+                return;
+            }
+            limiter.evictIdleKeys();
+        }
+    }
+
+}
@@ -0,0 +1,297 @@
+package com.fivesoft.javautils;
+
+import com.fivesoft.javautils.time.Clock;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * RateBudget is a global frequency budget shared by several {@link RateLimiter}s.<br>
+ * Every attached limiter keeps its own maximum frequency, but together they never execute
+ * more often than the budget allows. The budget is split with weighted max-min fair sharing:
+ * a limiter requesting less than its weighted share keeps only what it requests,
+ * and the rest is lent to the busier limiters.
+ * Demand is estimated from the rate of {@link RateLimiter#run()} calls
+ * and the split is recalculated at most every {@value #REBALANCE_INTERVAL_MS} ms.
+ */
+public final class RateBudget {
+
+    /**
+     * Minimum time between two recalculations of the split in milliseconds.
+     */
+    public static final long REBALANCE_INTERVAL_MS = 100;
+
+    //Time constant of the request rate estimate
+    private static final double DEMAND_TIME_CONSTANT_MS = 1000;
+    //Members requesting less often than this are idle and only get what the others leave
+    private static final double IDLE_DEMAND_HZ = 0.5;
+    //Active members claim this multiple of their demand, so their share can grow when throttled
+    private static final double DEMAND_HEADROOM = 2;
+    //Frequencies closer than this are treated as equal
+    private static final double EPSILON_HZ = 1e-6;
+
+    private final List<Member> members = new ArrayList<>();
+    @NotNull
+    private final Clock clock;
+    private volatile float maxFrequency;
+    private long lastRebalanceTime = 0;
+
+    /**
+     * Creates a new RateBudget object.
+     * @param maxFrequency The combined maximum frequency of all attached limiters in Hz.
+     *                     Must be greater than 0.
+     */
+    public RateBudget(float maxFrequency){
+        this(maxFrequency, Clock.SYSTEM);
+    }
+
+    /**
+     * Creates a new RateBudget object.
+     * @param maxFrequency The combined maximum frequency of all attached limiters in Hz.
+     *                     Must be greater than 0.
+     * @param clock The clock used to estimate the demand.
+     *              Should be the clock of the scheduler used by the attached limiters.
+     */
+    public RateBudget(float maxFrequency, @NotNull Clock clock){
+        this.clock = Objects.requireNonNull(clock);
+        setMaxFrequency(maxFrequency);
+    }
+
+    /**
+     * Sets the combined maximum frequency of all attached limiters in Hz.
+     * @param hz The maximum frequency in Hz. Must be greater than 0.
+     */
+    public void setMaxFrequency(float hz){
+        if(hz <= 0){
+            throw new IllegalArgumentException("maxFrequency must be greater than 0");
+        }
+        maxFrequency = hz;
+        synchronized (this){
+            rebalance(clock.millis());
+        }
+    }
+
+    /**
+     * Returns the combined maximum frequency of all attached limiters in Hz.
+     * @return The maximum frequency in Hz.
+     */
+    public float getMaxFrequency(){
+        return maxFrequency;
+    }
+
+    /**
+     * Attaches a limiter to this budget. A limiter can be attached to one budget at a time,
+     * attaching it again replaces its previous budget or weight.
+     * @param limiter The limiter.
+     * @param weight The weight of the limiter in the split. Must be greater than 0.
+     */
+    public void attach(@NotNull RateLimiter limiter, float weight){
+        Objects.requireNonNull(limiter);
+        if(weight <= 0){
+            throw new IllegalArgumentException("weight must be greater than 0");
+        }
+        RateBudget previous = limiter.getBudget();
+        if(previous != null){
+            previous.detach(limiter);
+        }
+        Member member = new Member(this, limiter, weight);
+        synchronized (this){
+            members.add(member);
+            rebalance(clock.millis());
+        }
+        limiter.setBudgetMember(member);
+    }
+
+    /**
+     * Detaches a limiter from this budget. The limiter keeps only its own maximum frequency.
+     * @param limiter The limiter.
+     */
+    public void detach(@NotNull RateLimiter limiter){
+        synchronized (this){
+            for (int i = 0; i < members.size(); i++) {
+                if(members.get(i).limiter == limiter){
+                    members.remove(i);
+                    rebalance(clock.millis());
+                    break;
+                }
+            }
+        }
+        if(limiter.getBudget() == this){
+            limiter.setBudgetMember(null);
+        }
+    }
+
+    /**
+     * Returns the frequency currently allotted to the given limiter in Hz,
+     * or -1 if the limiter is not attached to this budget.
+     * @param limiter The limiter.
+     * @return The allotted frequency in Hz.
+     */
+    public synchronized float getShare(@NotNull RateLimiter limiter){
+        for (Member member : members) {
+            if(member.limiter == limiter){
+                return member.share;
+            }
+        }
+        return -1;
+    }
+
+    //Internal method to recalculate the split if it is stale
+    private synchronized void onRequest(@NotNull Member member, long now){
+        member.addRequest(now);
+        if(now - lastRebalanceTime >= REBALANCE_INTERVAL_MS || member.share <= 0){
+            rebalance(now);
+        }
+    }
+
+    //Internal method to split the budget with weighted max-min fairness (water filling)
+    private void rebalance(long now){
+        lastRebalanceTime = now;
+        int n = members.size();
+        if(n == 0){
+            return;
+        }
+        Member[] sorted = members.toArray(new Member[0]);
+        double activeWeight = 0;
+        for (Member member : sorted) {
+            member.updateDemand(now);
+            if(member.isActive()){
+                activeWeight += member.weight;
+            }
+        }
+        //Active members claim their demand with headroom, so throttling them does not shrink their share,
+        //and at least their fair share among the active members. Idle members claim nothing.
+        double total = maxFrequency;
+        for (Member member : sorted) {
+            member.claim = !member.isActive() ? 0 :
+                    Math.min(member.cap, Math.max(member.demand * DEMAND_HEADROOM, total * member.weight / activeWeight));
+        }
+        //First pass: serve the members with the smallest claim per weight first
+        Arrays.sort(sorted, Comparator.comparingDouble(m -> m.claim / m.weight));
+        double remaining = total;
+        double remainingWeight = 0;
+        for (Member member : sorted) {
+            remainingWeight += member.weight;
+        }
+        for (Member member : sorted) {
+            double fair = remaining * member.weight / remainingWeight;
+            remainingWeight -= member.weight;
+            member.allotted = Math.min(member.claim, fair);
+            remaining -= member.allotted;
+        }
+        //Second pass: hand what is left to all members by weight, up to their own frequency,
+        //so a lone busy member gets the whole budget and idle members can start right away
+        while(remaining > EPSILON_HZ){
+            double roomWeight = 0;
+            for (Member member : sorted) {
+                if(member.cap - member.allotted > EPSILON_HZ){
+                    roomWeight += member.weight;
+                }
+            }
+            if(roomWeight == 0){
+                break;
+            }
+            double given = 0;
+            for (Member member : sorted) {
+                if(member.cap - member.allotted > EPSILON_HZ){
+                    double extra = Math.min(member.cap - member.allotted, remaining * member.weight / roomWeight);
+                    member.allotted += extra;
+                    given += extra;
+                }
+            }
+            remaining -= given;
+        }
+        for (Member member : sorted) {
+            member.setShare((float) member.allotted);
+        }
+    }
+
+    /**
+     * Membership of a limiter in a budget.
+     */
+    static final class Member {
+
+        @NotNull
+        private final RateBudget budget;
+        @NotNull
+        private final RateLimiter limiter;
+        private final float weight;
+        //Request rate estimate in Hz and the time it was last updated
+        private double requestRate = 0;
+        private long requestRateTime = 0;
+        //Demand in Hz, the request rate capped by the limiter's own frequency
+        private double demand = 0;
+        //The limiter's own frequency, infinite if unlimited, and the split in progress, guarded by the budget
+        private double cap = Double.POSITIVE_INFINITY;
+        private double claim = 0;
+        private double allotted = 0;
+        private volatile float share = 0;
+        private volatile long intervalMs = -1;
+
+        Member(@NotNull RateBudget budget, @NotNull RateLimiter limiter, float weight){
+            this.budget = budget;
+            this.limiter = limiter;
+            this.weight = weight;
+        }
+
+        @NotNull
+        RateBudget getBudget(){
+            return budget;
+        }
+
+        /**
+         * Notifies the budget about a request of the limiter.
+         */
+        void onRequest(){
+            budget.onRequest(this, budget.clock.millis());
+        }
+
+        /**
+         * Returns the minimum interval imposed by the budget in milliseconds.
+         */
+        long getIntervalMs(){
+            return intervalMs;
+        }
+
+        private void addRequest(long now){
+            decay(now);
+            requestRate += 1000.0 / DEMAND_TIME_CONSTANT_MS;
+        }
+
+        private void updateDemand(long now){
+            decay(now);
+            float own = limiter.getMaxFrequency();
+            cap = own > 0 ? own : Double.POSITIVE_INFINITY;
+            demand = Math.min(requestRate, cap);
+        }
+
+        private boolean isActive(){
+            return demand >= IDLE_DEMAND_HZ;
+        }
+
+        //Exponential decay of the request rate estimate
+        private void decay(long now){
+            if(requestRateTime != 0){
+                requestRate *= Math.exp(-(now - requestRateTime) / DEMAND_TIME_CONSTANT_MS);
+            }
+            requestRateTime = now;
+        }
+
+        private void setShare(float share){
+            this.share = share;
+            this.intervalMs = share <= 0 ? Long.MAX_VALUE / 2 : (long) Math.ceil(1000.0 / share);
+        }
+
+        @NotNull
+        @Override
+        public String toString(){
+            return "Member{weight=" + weight + ", demand=" + demand + ", share=" + share + "}";
+        }
+    }
+
+}
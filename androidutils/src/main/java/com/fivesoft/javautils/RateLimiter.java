@@ -1,13 +1,26 @@
 package com.fivesoft.javautils;
 
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.view.Choreographer;
+
+import com.fivesoft.javautils.measure.FrequencyMeasure;
+import com.fivesoft.javautils.measure.Histogram;
+import com.fivesoft.javautils.time.Scheduler;
+import com.fivesoft.javautils.time.SystemScheduler;
+
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
+import java.util.ArrayDeque;
 import java.util.Objects;
-import java.util.concurrent.Executor;
-import java.util.concurrent.Executors;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 import java.util.concurrent.atomic.AtomicLong;
-import java.util.concurrent.atomic.AtomicReference;
 
 /**
  * RateLimiter is a class that limits
@@ -15,14 +28,45 @@ import java.util.concurrent.atomic.AtomicReference;
  */
 public final class RateLimiter implements Runnable {
 
+    //Weight of the newest sample in the average task duration
+    private static final double TASK_DURATION_SMOOTHING = 0.2;
+    //Marks that the task has never been executed
+    private static final long NEVER = Long.MIN_VALUE / 2;
+    //Durations longer than this are counted in the last histogram bucket
+    private static final long METRICS_HIGHEST_DURATION_NS = TimeUnit.MINUTES.toNanos(1);
+
     @Nullable
     private Runnable task;
     private long minIntervalMs;
-    private long lastRunTime = 0;
+    private long lastRunTime = NEVER;
     private boolean isTaskExecutionScheduled = false;
     private final AtomicLong droppedTasks = new AtomicLong(0);
-    private final Executor mDelayedExecutor = Executors.newSingleThreadExecutor();
-    private final AtomicReference<Thread> mDelayedThread = new AtomicReference<>(null);
+    private final AtomicLong executedTasks = new AtomicLong(0);
+    private final AtomicLong trailingScheduledTasks = new AtomicLong(0);
+    private long trailingDueTimeNs;
+    @Nullable
+    private volatile MetricsRecorder mMetrics;
+    @Nullable
+    private volatile RateBudget.Member mBudgetMember;
+    @NotNull
+    private final Scheduler mScheduler;
+    @Nullable
+    private Scheduler.Cancellable mTrailingFuture;
+    private final ArrayDeque<CompletableFuture<Void>> mWaiters = new ArrayDeque<>();
+    @Nullable
+    private Scheduler.Cancellable mWaiterReleaseFuture;
+    private final Runnable mWaiterReleaseTask = this::releaseWaiters;
+    private float targetDutyCycle = -1;
+    private long adaptiveMinIntervalMs;
+    private long adaptiveMaxIntervalMs;
+    private volatile double avgTaskDurationNs = -1;
+    @Nullable
+    private Handler mHandler;
+    @Nullable
+    private Choreographer mChoreographer;
+    private boolean alignToFrames = false;
+    private final Runnable mTrailingTask = this::runTrailing;
+    private final Choreographer.FrameCallback mFrameCallback = frameTimeNanos -> runTrailing();
 
     /**
      * Creates a new RateLimiter object.
@@ -30,11 +74,23 @@ public final class RateLimiter implements Runnable {
      * @param maxFrequency The maximum frequency of task execution in Hz. Must be greater than or equal to 0.
      */
     public RateLimiter(@Nullable Runnable task, float maxFrequency){
+        this(task, maxFrequency, SystemScheduler.getInstance());
+    }
+
+    /**
+     * Creates a new RateLimiter object.
+     * @param task The task to be executed.
+     * @param maxFrequency The maximum frequency of task execution in Hz. Must be greater than or equal to 0.
+     * @param scheduler The scheduler used to measure time and to execute trailing tasks.
+     */
+    public RateLimiter(@Nullable Runnable task, float maxFrequency, @NotNull Scheduler scheduler){
         Objects.requireNonNull(task);
+        Objects.requireNonNull(scheduler);
         if(task == this){
             throw new IllegalArgumentException("task cannot be this");
         }
         this.task = task;
+        this.mScheduler = scheduler;
         setMaxFrequency(maxFrequency);
     }
 
@@ -46,10 +102,25 @@ public final class RateLimiter implements Runnable {
      */
     public RateLimiter(@Nullable Runnable task,
                        long minIntervalMs){
+        this(task, minIntervalMs, SystemScheduler.getInstance());
+    }
+
+    /**
+     * Creates a new RateLimiter object.
+     * @param task The task to be executed.
+     * @param minIntervalMs The minimum interval between task executions in milliseconds.
+     *                      Negative values will disable the rate limiting.
+     * @param scheduler The scheduler used to measure time and to execute trailing tasks.
+     */
+    public RateLimiter(@Nullable Runnable task,
+                       long minIntervalMs,
+                       @NotNull Scheduler scheduler){
+        Objects.requireNonNull(scheduler);
         if(task == this){
             throw new IllegalArgumentException("task cannot be this");
         }
         this.task = task;
+        this.mScheduler = scheduler;
         setMinInterval(minIntervalMs);
     }
 
@@ -73,23 +144,115 @@ public final class RateLimiter implements Runnable {
         minIntervalMs = ms;
     }
 
+    /**
+     * Enables adaptive mode. In adaptive mode the minimum interval is tuned after every execution,
+     * so that the task takes at most the given fraction of wall time.<br>
+     * The interval follows an exponentially weighted average of the task duration divided by the duty cycle,
+     * clamped to the given frequency range. Calls to {@link #setMinInterval(long)} and
+     * {@link #setMaxFrequency(float)} are overridden by the next execution while adaptive mode is enabled.
+     * @param targetDutyCycle The fraction of wall time the task may take, in range (0, 1].
+     *                        Example: 0.2 for at most 20%.
+     * @param minFrequency The lowest frequency the interval may be tuned to in Hz. Must be greater than 0.
+     * @param maxFrequency The highest frequency the interval may be tuned to in Hz.
+     *                     Must be greater than or equal to minFrequency.
+     */
+    public synchronized void setAdaptive(float targetDutyCycle, float minFrequency, float maxFrequency){
+        if(targetDutyCycle <= 0 || targetDutyCycle > 1){
+            throw new IllegalArgumentException("targetDutyCycle must be in range (0, 1]");
+        }
+        if(minFrequency <= 0 || maxFrequency < minFrequency){
+            throw new IllegalArgumentException("Invalid frequency range: " + minFrequency + " - " + maxFrequency);
+        }
+        this.targetDutyCycle = targetDutyCycle;
+        this.adaptiveMinIntervalMs = Math.max(1, (long) (1000f / maxFrequency));
+        this.adaptiveMaxIntervalMs = Math.max(adaptiveMinIntervalMs, (long) (1000f / minFrequency));
+        //Start optimistic, at the highest allowed frequency
+        updateAdaptiveInterval();
+    }
+
+    /**
+     * Disables adaptive mode. The current minimum interval is kept.
+     */
+    public synchronized void disableAdaptive(){
+        targetDutyCycle = -1;
+    }
+
+    /**
+     * Checks if adaptive mode is enabled.
+     * @return True if adaptive mode is enabled, false otherwise.
+     * @see #setAdaptive(float, float, float)
+     */
+    public synchronized boolean isAdaptive(){
+        return targetDutyCycle > 0;
+    }
+
+    /**
+     * Returns the average duration of the task in milliseconds or -1 if the task has not been executed yet.
+     * Recent executions have more weight than older ones.
+     * @return The average task duration in milliseconds.
+     */
+    public double getAverageTaskDuration(){
+        double avg = avgTaskDurationNs;
+        if(avg < 0){
+            return -1;
+        }
+        return avg / 1_000_000.0;
+    }
+
+    /**
+     * Makes the task execute on the thread of the given looper.
+     * @param looper The looper or null to execute the task on the calling thread.
+     * @see #setLooper(Looper, boolean)
+     */
+    public void setLooper(@Nullable Looper looper){
+        setLooper(looper, false);
+    }
+
+    /**
+     * Makes the task execute on the thread of the given looper.<br>
+     * In looper mode no additional thread is used: calls made on the looper thread
+     * execute the task immediately when the interval has passed, and trailing executions
+     * are posted to the looper as a single message at the time the interval passes.
+     * Calls made on other threads are always posted to the looper.
+     * @param looper The looper or null to execute the task on the calling thread.
+     * @param alignToFrames If true, trailing executions are delivered with the first
+     *                      {@link Choreographer} frame after the interval passes.
+     *                      Use it when the task updates views.
+     */
+    public synchronized void setLooper(@Nullable Looper looper, boolean alignToFrames){
+        cancelTrailingExecution();
+        this.mHandler = looper == null ? null : new Handler(looper);
+        this.mChoreographer = null;
+        this.alignToFrames = alignToFrames;
+    }
+
+    /**
+     * Returns the looper the task is executed on or null if the task is executed on the calling thread.
+     * @return The looper.
+     */
+    @Nullable
+    public synchronized Looper getLooper(){
+        Handler handler = mHandler;
+        return handler == null ? null : handler.getLooper();
+    }
+
     /**
      * Sets the task to be executed.
-     * Changing the task will cancel the current task execution
-     * if it is scheduled and is different from the new task.
-     * This method will block until the current task is finished. (if it is running)
+     * Changing the task cancels the pending trailing execution, if any and if the new task is different.
+     * Does not wait for a running execution of the old task to finish.
      * @param task The task to be executed.
      */
-    public void setTask(@Nullable Runnable task){
+    public void setTask(@NotNull Runnable task){
         setTask(task, true);
     }
 
     /**
-     * Sets the task to be executed.
+     * Sets the task to be executed. Does not wait for a running execution of the old task to finish.
      * @param task The task to be executed.
-     * @param interruptCurrentTask If true, the current task will be interrupted immediately.
+     * @param interruptCurrentTask If true, the pending trailing execution, if any, is cancelled.
+     *                             Otherwise it runs the new task when it is due.
      */
-    public void setTask(@Nullable Runnable task, boolean interruptCurrentTask){
+    public void setTask(@NotNull Runnable task, boolean interruptCurrentTask){
         Objects.requireNonNull(task);
         if(task == this){
             throw new IllegalArgumentException("task cannot be this");
@@ -98,15 +261,9 @@ public final class RateLimiter implements Runnable {
             return;
         }
         if (interruptCurrentTask) {
-            Thread delayedThread = mDelayedThread.get();
-            if(delayedThread != null){
+            synchronized (this) {
                 //Cancel the delayed task immediately
-                delayedThread.interrupt();
-                try {
-                    delayedThread.join();
-                } catch (InterruptedException e) {
-                    //Ignore
-                }
+                cancelTrailingExecution();
             }
         }
         this.task = task;
@@ -134,6 +291,36 @@ public final class RateLimiter implements Runnable {
         return minIntervalMs;
     }
 
+    /**
+     * Returns the minimum interval between task executions in milliseconds actually applied,
+     * which also includes the limit imposed by the {@link RateBudget} the limiter is attached to,
+     * or -1 if rate limiting is disabled.
+     * @return The effective minimum interval in milliseconds.
+     */
+    public long getEffectiveMinInterval(){
+        long own = minIntervalMs;
+        RateBudget.Member member = mBudgetMember;
+        if(member == null){
+            return own <= 0 ? -1 : own;
+        }
+        long budgetInterval = member.getIntervalMs();
+        if(own <= 0){
+            return budgetInterval <= 0 ? -1 : budgetInterval;
+        }
+        return Math.max(own, budgetInterval);
+    }
+
+    /**
+     * Returns the budget this limiter draws from or null if it is not attached to any.
+     * @return The budget.
+     * @see RateBudget#attach(RateLimiter, float)
+     */
+    @Nullable
+    public RateBudget getBudget(){
+        RateBudget.Member member = mBudgetMember;
+        return member == null ? null : member.getBudget();
+    }
+
     /**
      * Returns the number of tasks that were dropped because they were scheduled too frequently.
      * @return The number of dropped tasks.
@@ -149,6 +336,132 @@ public final class RateLimiter implements Runnable {
         droppedTasks.set(0);
     }
 
+    /**
+     * Enables or disables collection of the scheduling delay and task duration histograms
+     * and of the achieved frequency. Execution counters are always collected.
+     * @param enabled True to enable, false to disable.
+     * @see #getMetrics()
+     */
+    public void setMetricsEnabled(boolean enabled){
+        if(enabled == (mMetrics != null)){
+            return;
+        }
+        mMetrics = enabled ? new MetricsRecorder(mScheduler) : null;
+    }
+
+    /**
+     * Checks if collection of the histograms and of the achieved frequency is enabled.
+     * @return True if enabled, false otherwise.
+     * @see #setMetricsEnabled(boolean)
+     */
+    public boolean isMetricsEnabled(){
+        return mMetrics != null;
+    }
+
+    /**
+     * Takes a snapshot of the execution metrics.
+     * @return The metrics.
+     */
+    @NotNull
+    public Metrics getMetrics(){
+        MetricsRecorder recorder = mMetrics;
+        return new Metrics(
+                executedTasks.get(),
+                trailingScheduledTasks.get(),
+                droppedTasks.get(),
+                recorder == null ? -1 : recorder.frequency.getFrequency(),
+                recorder == null ? null : recorder.schedulingDelay.snapshot(),
+                recorder == null ? null : recorder.taskDuration.snapshot()
+        );
+    }
+
+    /**
+     * Resets all metrics, including the dropped task counter.
+     */
+    public void resetMetrics(){
+        executedTasks.set(0);
+        trailingScheduledTasks.set(0);
+        droppedTasks.set(0);
+        MetricsRecorder recorder = mMetrics;
+        if(recorder != null){
+            recorder.reset();
+        }
+    }
+
+    /**
+     * Acquires a permit, waiting as long as needed for the minimum interval to pass.<br>
+     * A permit takes the same slot a task execution would, so permits and executions
+     * together keep to the maximum frequency. Waiting callers are served in FIFO order.
+     * @throws InterruptedException If the current thread is interrupted while waiting.
+     * @see #acquireAsync()
+     */
+    public void acquire() throws InterruptedException {
+        CompletableFuture<Void> permit = acquireAsync();
+        try {
+            permit.get();
+        } catch (InterruptedException e) {
+            if(permit.cancel(false)){
+                throw e;
+            }
+            //The permit was granted anyway, keep it and preserve the interrupt
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException | CancellationException e) {
+            //Permits are never completed exceptionally
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Acquires a permit, waiting up to the given time for the minimum interval to pass.
+     * @param timeout The maximum time to wait.
+     * @param unit The time unit of the timeout.
+     * @return True if the permit was acquired, false if the timeout elapsed first.
+     * @throws InterruptedException If the current thread is interrupted while waiting.
+     * @see #acquire()
+     */
+    public boolean tryAcquire(long timeout, @NotNull TimeUnit unit) throws InterruptedException {
+        CompletableFuture<Void> permit = acquireAsync();
+        try {
+            permit.get(Math.max(0, timeout), unit);
+            return true;
+        } catch (TimeoutException e) {
+            //A permit granted concurrently with the timeout is still a permit
+            return !permit.cancel(false);
+        } catch (InterruptedException e) {
+            if(permit.cancel(false)){
+                throw e;
+            }
+            Thread.currentThread().interrupt();
+            return true;
+        } catch (ExecutionException | CancellationException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Acquires a permit asynchronously.<br>
+     * The returned future is completed on the scheduler thread when the permit is granted,
+     * or immediately if the minimum interval has already passed and nobody else is waiting.
+     * No thread is blocked while waiting. Cancelling the future gives up the place in the queue.
+     * @return The future completed when the permit is granted.
+     */
+    @NotNull
+    public CompletableFuture<Void> acquireAsync(){
+        synchronized (this) {
+            long now = mScheduler.millis();
+            notifyBudget();
+            long interval = getEffectiveMinInterval();
+            if(mWaiters.isEmpty() && (interval <= 0 || now - lastRunTime >= interval)){
+                lastRunTime = now;
+                return CompletableFuture.completedFuture(null);
+            }
+            CompletableFuture<Void> permit = new CompletableFuture<>();
+            mWaiters.addLast(permit);
+            scheduleWaiterRelease(now);
+            return permit;
+        }
+    }
+
     /**
      * Executes the task if the minimum interval has passed since the last execution.
      * If the interval has not passed, the task will be executed as soon as the interval passes.
@@ -162,43 +475,309 @@ public final class RateLimiter implements Runnable {
                 //Task is null, do nothing
                 return;
             }
-            if(minIntervalMs <= 0){
-                task.run();
+            notifyBudget();
+            Handler handler = mHandler;
+            if(handler != null && !handler.getLooper().isCurrentThread()){
+                //Never execute the task outside the looper thread
+                scheduleTaskExecution();
                 return;
             }
-            if(System.currentTimeMillis() - lastRunTime < minIntervalMs){
+            if(handler != null && alignToFrames && mChoreographer == null){
+                //Choreographer instances are per looper thread
+                mChoreographer = Choreographer.getInstance();
+            }
+            long interval = getEffectiveMinInterval();
+            if(interval <= 0){
+                executeTask(task);
+                return;
+            }
+            if(mScheduler.millis() - lastRunTime < interval){
                 scheduleTaskExecution();
                 return;
             }
-            lastRunTime = System.currentTimeMillis();
-            isTaskExecutionScheduled = false;
+            //A trailing execution that is late would run right after this one
+            cancelTrailingExecution();
+            lastRunTime = mScheduler.millis();
+            executeTask(task);
+        }
+    }
+
+    //Internal method to set the membership in a budget, used by RateBudget
+    void setBudgetMember(@Nullable RateBudget.Member member){
+        mBudgetMember = member;
+    }
+
+    //Internal method to report a request to the budget, so that it can estimate the demand
+    private void notifyBudget(){
+        RateBudget.Member member = mBudgetMember;
+        if(member != null){
+            member.onRequest();
+        }
+    }
+
+    //Internal method to execute the task and measure its duration
+    private void executeTask(@NotNull Runnable task){
+        long start = mScheduler.nanoTime();
+        try {
             task.run();
+        } finally {
+            long end = mScheduler.nanoTime();
+            executedTasks.incrementAndGet();
+            MetricsRecorder recorder = mMetrics;
+            if(recorder != null){
+                recorder.frequency.count();
+                recorder.taskDuration.record(end - start);
+            }
+            double duration = end - start;
+            double avg = avgTaskDurationNs;
+            avgTaskDurationNs = avg < 0 ? duration :
+                    avg + TASK_DURATION_SMOOTHING * (duration - avg);
+            if(targetDutyCycle > 0){
+                updateAdaptiveInterval();
+            }
         }
     }
 
+    //Internal method to derive the minimum interval from the average task duration.
+    //A task taking d with duty cycle c needs an interval of d / c.
+    private void updateAdaptiveInterval(){
+        double avg = Math.max(0, avgTaskDurationNs);
+        long interval = (long) Math.ceil(avg / targetDutyCycle / 1_000_000.0);
+        minIntervalMs = Math.min(adaptiveMaxIntervalMs, Math.max(adaptiveMinIntervalMs, interval));
+    }
+
     //Internal method to schedule task execution
     private void scheduleTaskExecution(){
         if(isTaskExecutionScheduled){
             droppedTasks.incrementAndGet();
             return;
         }
+        long interval = getEffectiveMinInterval();
+        long delay = interval <= 0 ? 0 : lastRunTime + interval - mScheduler.millis();
+        Handler handler = mHandler;
+        if(handler == null && delay <= 0){
+            //The interval passed in the meantime, execute now instead of re-entering run()
+            Runnable task = this.task;
+            if(task != null){
+                lastRunTime = mScheduler.millis();
+                executeTask(task);
+            }
+            return;
+        }
         isTaskExecutionScheduled = true;
-        long delay = lastRunTime + minIntervalMs - System.currentTimeMillis();
-        if(delay <= 0){
-            run();
+        trailingScheduledTasks.incrementAndGet();
+        trailingDueTimeNs = mScheduler.nanoTime() + TimeUnit.MILLISECONDS.toNanos(Math.max(0, delay));
+        if(handler != null){
+            postTrailingExecution(handler, Math.max(0, delay));
         } else {
-            mDelayedExecutor.execute(() -> {
-                try { Thread.sleep(delay);} catch (InterruptedException ignore) {
-                    return;
-                }
-                synchronized (RateLimiter.this) {
-                    if (isTaskExecutionScheduled) {
-                        run();
-                    } else {
-                        droppedTasks.incrementAndGet();
+            mTrailingFuture = mScheduler.schedule(mTrailingTask, delay, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    //Internal method to schedule granting of the next permit to the waiters
+    private void scheduleWaiterRelease(long now){
+        if(mWaiterReleaseFuture != null || mWaiters.isEmpty()){
+            return;
+        }
+        long interval = getEffectiveMinInterval();
+        long delay = interval <= 0 ? 0 : Math.max(0, lastRunTime + interval - now);
+        mWaiterReleaseFuture = mScheduler.schedule(mWaiterReleaseTask, delay, TimeUnit.MILLISECONDS);
+    }
+
+    //Internal method to grant a permit to the first waiter, runs on the scheduler thread
+    private void releaseWaiters(){
+        CompletableFuture<Void> permit = null;
+        synchronized (this) {
+            mWaiterReleaseFuture = null;
+            long now = mScheduler.millis();
+            long interval = getEffectiveMinInterval();
+            if(interval <= 0 || now - lastRunTime >= interval){
+                while(permit == null && !mWaiters.isEmpty()){
+                    CompletableFuture<Void> head = mWaiters.pollFirst();
+                    //Skip the waiters that gave up
+                    if(!head.isDone()){
+                        permit = head;
                     }
                 }
-            });
+                if(permit != null){
+                    lastRunTime = now;
+                }
+            }
+            scheduleWaiterRelease(now);
+        }
+        //Complete outside the lock, dependent actions run on this thread
+        if(permit != null){
+            permit.complete(null);
+        }
+    }
+
+    //Internal method to post a trailing execution to the looper
+    private void postTrailingExecution(@NotNull Handler handler, long delay){
+        Choreographer choreographer = mChoreographer;
+        if(alignToFrames && choreographer != null){
+            choreographer.postFrameCallbackDelayed(mFrameCallback, delay);
+        } else {
+            handler.postAtTime(mTrailingTask, SystemClock.uptimeMillis() + delay);
+        }
+    }
+
+    //Internal method to cancel a scheduled trailing execution
+    private void cancelTrailingExecution(){
+        if(!isTaskExecutionScheduled){
+            return;
+        }
+        Handler handler = mHandler;
+        if(handler != null){
+            handler.removeCallbacks(mTrailingTask);
+            Choreographer choreographer = mChoreographer;
+            if(choreographer != null){
+                choreographer.removeFrameCallback(mFrameCallback);
+            }
+        }
+        Scheduler.Cancellable trailingFuture = mTrailingFuture;
+        if(trailingFuture != null){
+            trailingFuture.cancel();
+            mTrailingFuture = null;
+        }
+        isTaskExecutionScheduled = false;
+        droppedTasks.incrementAndGet();
+    }
+
+    //Internal method to execute a trailing execution on the looper or scheduler thread
+    private void runTrailing(){
+        synchronized (this) {
+            if(!isTaskExecutionScheduled){
+                return;
+            }
+            mTrailingFuture = null;
+            MetricsRecorder recorder = mMetrics;
+            if(recorder != null){
+                recorder.schedulingDelay.record(mScheduler.nanoTime() - trailingDueTimeNs);
+            }
+            Runnable task = this.task;
+            isTaskExecutionScheduled = false;
+            if(task == null){
+                return;
+            }
+            if(mHandler != null && alignToFrames && mChoreographer == null){
+                //Only the looper thread has a Choreographer
+                mChoreographer = Choreographer.getInstance();
+            }
+            long interval = getEffectiveMinInterval();
+            if(interval > 0 && mScheduler.millis() - lastRunTime < interval){
+                //The interval grew since the execution was scheduled
+                scheduleTaskExecution();
+                return;
+            }
+            lastRunTime = mScheduler.millis();
+            executeTask(task);
+        }
+    }
+
+    /**
+     * A snapshot of the execution metrics of a {@link RateLimiter}.
+     */
+    public static final class Metrics {
+
+        private final long executedCount;
+        private final long trailingScheduledCount;
+        private final long droppedCount;
+        private final double achievedFrequency;
+        @Nullable
+        private final Histogram.Snapshot schedulingDelay;
+        @Nullable
+        private final Histogram.Snapshot taskDuration;
+
+        Metrics(long executedCount, long trailingScheduledCount, long droppedCount, double achievedFrequency,
+                @Nullable Histogram.Snapshot schedulingDelay, @Nullable Histogram.Snapshot taskDuration){
+            this.executedCount = executedCount;
+            this.trailingScheduledCount = trailingScheduledCount;
+            this.droppedCount = droppedCount;
+            this.achievedFrequency = achievedFrequency;
+            this.schedulingDelay = schedulingDelay;
+            this.taskDuration = taskDuration;
+        }
+
+        /**
+         * Returns the number of task executions.
+         * @return The number of executed tasks.
+         */
+        public long getExecutedCount(){
+            return executedCount;
+        }
+
+        /**
+         * Returns the number of executions that were deferred until the interval passed.
+         * @return The number of trailing executions scheduled.
+         */
+        public long getTrailingScheduledCount(){
+            return trailingScheduledCount;
+        }
+
+        /**
+         * Returns the number of tasks that were dropped because they were scheduled too frequently.
+         * @return The number of dropped tasks.
+         */
+        public long getDroppedCount(){
+            return droppedCount;
+        }
+
+        /**
+         * Returns the frequency of task execution over the last second in Hz,
+         * or -1 if metrics collection is disabled.
+         * @return The achieved frequency in Hz.
+         */
+        public double getAchievedFrequency(){
+            return achievedFrequency;
+        }
+
+        /**
+         * Returns the histogram of delays between the time a trailing execution was due
+         * and the time it actually ran, in nanoseconds, or null if metrics collection is disabled.
+         * @return The scheduling delay histogram.
+         */
+        @Nullable
+        public Histogram.Snapshot getSchedulingDelay(){
+            return schedulingDelay;
+        }
+
+        /**
+         * Returns the histogram of task durations in nanoseconds,
+         * or null if metrics collection is disabled.
+         * @return The task duration histogram.
+         */
+        @Nullable
+        public Histogram.Snapshot getTaskDuration(){
+            return taskDuration;
+        }
+
+        @NotNull
+        @Override
+        public String toString(){
+            return "RateLimiter.Metrics{executed=" + executedCount +
+                    ", trailingScheduled=" + trailingScheduledCount +
+                    ", dropped=" + droppedCount +
+                    ", achievedFrequency=" + achievedFrequency +
+                    ", schedulingDelay=" + schedulingDelay +
+                    ", taskDuration=" + taskDuration + "}";
+        }
+    }
+
+    //Holds the optional, more expensive metrics
+    private static final class MetricsRecorder {
+
+        final FrequencyMeasure frequency;
+        final Histogram schedulingDelay = new Histogram(METRICS_HIGHEST_DURATION_NS);
+        final Histogram taskDuration = new Histogram(METRICS_HIGHEST_DURATION_NS);
+
+        MetricsRecorder(@NotNull Scheduler scheduler){
+            frequency = new FrequencyMeasure(20, 1000, scheduler);
+        }
+
+        void reset(){
+            frequency.reset();
+            schedulingDelay.reset();
+            taskDuration.reset();
         }
     }
 
@@ -0,0 +1,28 @@
+package com.fivesoft.javautils
+
+import kotlinx.coroutines.suspendCancellableCoroutine
+import kotlin.coroutines.resume
+import kotlin.coroutines.resumeWithException
+
+/**
+ * Suspends until this rate limiter grants a permit.
+ * No thread is blocked while waiting, waiting coroutines are served in FIFO order.
+ * Cancelling the calling coroutine gives up the place in the queue, so it does not delay later waiters.
+ * A permit granted at the same moment as the cancellation is still used up.
+ * @receiver The rate limiter.
+ * @see RateLimiter.acquireAsync
+ */
+suspend fun RateLimiter.awaitPermit() {
+    val permit = acquireAsync()
+    if (permit.isDone) return
+    suspendCancellableCoroutine { continuation ->
+        continuation.invokeOnCancellation { permit.cancel(false) }
+        permit.whenComplete { _, error ->
+            if (error == null) {
+                continuation.resume(Unit)
+            } else if (!permit.isCancelled) {
+                continuation.resumeWithException(error)
+            }
+        }
+    }
+}
@@ -0,0 +1,358 @@
+package com.fivesoft.javautils;
+
+import com.fivesoft.javautils.time.Scheduler;
+import com.fivesoft.javautils.time.SystemScheduler;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * SlidingWindowRateLimiter is a class that limits
+ * the number of permits handed out within any window of time,
+ * for example "at most 30 uploads per minute".<br>
+ * Unlike {@link RateLimiter}, it does not force an even spacing between executions:
+ * the permits may be used in bursts as long as the window limit holds.<br>
+ * Two variants are available:
+ * <ul>
+ *     <li>{@link #log(int, long, TimeUnit)} - exact, remembers the time of the last N permits.</li>
+ *     <li>{@link #counter(int, long, TimeUnit, int)} - approximate, remembers only per-bucket counts.
+ *     Its memory does not depend on N.</li>
+ * </ul>
+ * Both variants keep their state in fixed-size primitive arrays, so memory does not grow with traffic.
+ */
+public abstract class SlidingWindowRateLimiter {
+
+    /**
+     * Maximum number of permits within a window.
+     */
+    protected final int maxPermits;
+
+    /**
+     * Length of the window in nanoseconds.
+     */
+    protected final long windowNs;
+
+    /**
+     * Scheduler used to measure time and to wait.
+     */
+    @NotNull
+    protected final Scheduler scheduler;
+
+    private SlidingWindowRateLimiter(int maxPermits, long window, @NotNull TimeUnit unit, @NotNull Scheduler scheduler){
+        Objects.requireNonNull(unit);
+        Objects.requireNonNull(scheduler);
+        if(maxPermits < 1){
+            throw new IllegalArgumentException("maxPermits must be greater than 0");
+        }
+        if(window <= 0){
+            throw new IllegalArgumentException("window must be greater than 0");
+        }
+        this.maxPermits = maxPermits;
+        this.windowNs = unit.toNanos(window);
+        this.scheduler = scheduler;
+    }
+
+    /**
+     * Creates an exact sliding-log limiter. It keeps the time of the last {@code maxPermits} permits,
+     * so its memory is proportional to {@code maxPermits}.
+     * @param maxPermits The maximum number of permits within a window. Must be greater than 0.
+     * @param window The length of the window. Must be greater than 0.
+     * @param unit The time unit of the window.
+     * @return The limiter.
+     */
+    @NotNull
+    public static SlidingWindowRateLimiter log(int maxPermits, long window, @NotNull TimeUnit unit){
+        return log(maxPermits, window, unit, SystemScheduler.getInstance());
+    }
+
+    /**
+     * Creates an exact sliding-log limiter working with the given scheduler.
+     * @param maxPermits The maximum number of permits within a window. Must be greater than 0.
+     * @param window The length of the window. Must be greater than 0.
+     * @param unit The time unit of the window.
+     * @param scheduler The scheduler used to measure time and to wait.
+     * @return The limiter.
+     * @see #log(int, long, TimeUnit)
+     */
+    @NotNull
+    public static SlidingWindowRateLimiter log(int maxPermits, long window, @NotNull TimeUnit unit,
+                                               @NotNull Scheduler scheduler){
+        return new SlidingLog(maxPermits, window, unit, scheduler);
+    }
+
+    /**
+     * Creates an approximate sliding-counter limiter. The window is split into buckets
+     * and the bucket partially leaving the window is weighted by the part still inside it.
+     * More buckets give a better approximation at the cost of a bit more memory.
+     * @param maxPermits The maximum number of permits within a window. Must be greater than 0.
+     * @param window The length of the window. Must be greater than 0.
+     * @param unit The time unit of the window.
+     * @param buckets The number of buckets the window is split into. Must be greater than 0.
+     * @return The limiter.
+     */
+    @NotNull
+    public static SlidingWindowRateLimiter counter(int maxPermits, long window, @NotNull TimeUnit unit, int buckets){
+        return counter(maxPermits, window, unit, buckets, SystemScheduler.getInstance());
+    }
+
+    /**
+     * Creates an approximate sliding-counter limiter working with the given scheduler.
+     * @param maxPermits The maximum number of permits within a window. Must be greater than 0.
+     * @param window The length of the window. Must be greater than 0.
+     * @param unit The time unit of the window.
+     * @param buckets The number of buckets the window is split into. Must be greater than 0.
+     * @param scheduler The scheduler used to measure time and to wait.
+     * @return The limiter.
+     * @see #counter(int, long, TimeUnit, int)
+     */
+    @NotNull
+    public static SlidingWindowRateLimiter counter(int maxPermits, long window, @NotNull TimeUnit unit, int buckets,
+                                                   @NotNull Scheduler scheduler){
+        return new SlidingCounter(maxPermits, window, unit, buckets, scheduler);
+    }
+
+    /**
+     * Acquires a permit if one is available right now.
+     * @return True if the permit was acquired, false otherwise.
+     */
+    public boolean tryAcquire(){
+        return tryReserve(scheduler.nanoTime()) == 0;
+    }
+
+    /**
+     * Acquires a permit, waiting up to the given time for one to become available.
+     * @param timeout The maximum time to wait.
+     * @param unit The time unit of the timeout.
+     * @return True if the permit was acquired, false if the timeout elapsed first.
+     * @throws InterruptedException If the current thread is interrupted while waiting.
+     */
+    public boolean tryAcquire(long timeout, @NotNull TimeUnit unit) throws InterruptedException {
+        long deadline = scheduler.nanoTime() + unit.toNanos(Math.max(0, timeout));
+        for(;;){
+            long now = scheduler.nanoTime();
+            long wait = tryReserve(now);
+            if(wait == 0){
+                return true;
+            }
+            long remaining = deadline - now;
+            if(remaining <= 0 || wait > remaining){
+                //The permit cannot become available in time
+                return false;
+            }
+            park(wait);
+        }
+    }
+
+    /**
+     * Acquires a permit, waiting as long as needed for one to become available.
+     * @throws InterruptedException If the current thread is interrupted while waiting.
+     */
+    public void acquire() throws InterruptedException {
+        for(;;){
+            long wait = tryReserve(scheduler.nanoTime());
+            if(wait == 0){
+                return;
+            }
+            park(wait);
+        }
+    }
+
+    /**
+     * Returns the maximum number of permits within a window.
+     * @return The maximum number of permits.
+     */
+    public int getMaxPermits(){
+        return maxPermits;
+    }
+
+    /**
+     * Returns the length of the window in milliseconds.
+     * @return The window length in milliseconds.
+     */
+    public long getWindow(){
+        return TimeUnit.NANOSECONDS.toMillis(windowNs);
+    }
+
+    /**
+     * Returns the number of permits that can be acquired right now without waiting.
+     * @return The number of available permits.
+     */
+    public abstract int getAvailablePermits();
+
+    /**
+     * Forgets all acquired permits.
+     */
+    public abstract void reset();
+
+    /**
+     * Takes a permit if one is available at the given time.
+     * @param now The current time in nanoseconds.
+     * @return 0 if the permit was taken, otherwise the time in nanoseconds
+     * after which a permit may become available.
+     */
+    abstract long tryReserve(long now);
+
+    //Internal method to wait without spinning
+    private void park(long nanos) throws InterruptedException {
+        scheduler.sleep(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    //Exact variant. A ring holds the times of the last maxPermits permits,
+    //a new permit is allowed once the oldest of them has left the window.
+    private static final class SlidingLog extends SlidingWindowRateLimiter {
+
+        private final long[] times;
+        private int oldest = 0;
+        private int size = 0;
+
+        SlidingLog(int maxPermits, long window, @NotNull TimeUnit unit, @NotNull Scheduler scheduler){
+            super(maxPermits, window, unit, scheduler);
+            this.times = new long[maxPermits];
+        }
+
+        @Override
+        synchronized long tryReserve(long now){
+            if(size < times.length){
+                times[(oldest + size) % times.length] = now;
+                size++;
+                return 0;
+            }
+            long wait = times[oldest] + windowNs - now;
+            if(wait > 0){
+                return wait;
+            }
+            //Oldest permit left the window, reuse its slot
+            times[oldest] = now;
+            oldest = (oldest + 1) % times.length;
+            return 0;
+        }
+
+        @Override
+        public synchronized int getAvailablePermits(){
+            long now = scheduler.nanoTime();
+            int available = times.length - size;
+            for(int i = 0; i < size; i++){
+                if(now - times[(oldest + i) % times.length] >= windowNs){
+                    available++;
+                } else {
+                    //Times are ordered, the rest is still inside the window
+                    break;
+                }
+            }
+            return available;
+        }
+
+        @Override
+        public synchronized void reset(){
+            oldest = 0;
+            size = 0;
+        }
+    }
+
+    //Approximate variant. Counts permits per bucket, the bucket leaving the window
+    //contributes proportionally to the part of it still inside the window.
+    private static final class SlidingCounter extends SlidingWindowRateLimiter {
+
+        private final long bucketNs;
+        //One extra slot holds the bucket partially leaving the window
+        private final int[] counts;
+        private final long[] epochs;
+        private final long origin;
+        //Sum of the counts of the buckets fully inside the window
+        private long total = 0;
+        private long currentEpoch = 0;
+
+        SlidingCounter(int maxPermits, long window, @NotNull TimeUnit unit, int buckets,
+                       @NotNull Scheduler scheduler){
+            super(maxPermits, window, unit, scheduler);
+            this.origin = scheduler.nanoTime();
+            if(buckets < 1){
+                throw new IllegalArgumentException("buckets must be greater than 0");
+            }
+            this.bucketNs = Math.max(1, windowNs / buckets);
+            this.counts = new int[buckets + 1];
+            this.epochs = new long[buckets + 1];
+            reset();
+        }
+
+        @Override
+        synchronized long tryReserve(long now){
+            long elapsed = Math.max(0, now - origin);
+            rotate(elapsed / bucketNs);
+            int live = counts.length - 1;
+            //Fraction of the current bucket that has already passed
+            double phase = (elapsed % bucketNs) / (double) bucketNs;
+            int leaving = countOf(currentEpoch - live);
+            double estimate = total + leaving * (1 - phase);
+            if(estimate + 1 <= maxPermits){
+                int index = (int) (currentEpoch % counts.length);
+                counts[index]++;
+                total++;
+                return 0;
+            }
+            double excess = estimate + 1 - maxPermits;
+            if(leaving > 0 && excess <= leaving * (1 - phase)){
+                //The leaving bucket fades out enough within the current bucket
+                double targetPhase = 1 - (leaving * (1 - phase) - excess) / leaving;
+                return Math.max(1, (long) Math.ceil((targetPhase - phase) * bucketNs));
+            }
+            //Wait for the next bucket boundary and check again
+            return Math.max(1, bucketNs - elapsed % bucketNs);
+        }
+
+        @Override
+        public synchronized int getAvailablePermits(){
+            long elapsed = Math.max(0, scheduler.nanoTime() - origin);
+            rotate(elapsed / bucketNs);
+            double phase = (elapsed % bucketNs) / (double) bucketNs;
+            double estimate = total + countOf(currentEpoch - (counts.length - 1)) * (1 - phase);
+            return (int) Math.max(0, Math.floor(maxPermits - estimate));
+        }
+
+        @Override
+        public synchronized void reset(){
+            Arrays.fill(counts, 0);
+            Arrays.fill(epochs, -1);
+            epochs[(int) (currentEpoch % counts.length)] = currentEpoch;
+            total = 0;
+        }
+
+        //Internal method to move the window to the given bucket epoch
+        private void rotate(long epoch){
+            if(epoch <= currentEpoch){
+                return;
+            }
+            int live = counts.length - 1;
+            if(epoch - currentEpoch > live){
+                //Every stored bucket left the window
+                Arrays.fill(counts, 0);
+                Arrays.fill(epochs, -1);
+                total = 0;
+            } else {
+                for(long e = currentEpoch + 1; e <= epoch; e++){
+                    //Bucket e - live stops being fully inside the window
+                    total -= countOf(e - live);
+                    //Slot of e held bucket e - live - 1, which left the window completely
+                    int index = (int) (e % counts.length);
+                    counts[index] = 0;
+                    epochs[index] = e;
+                }
+            }
+            currentEpoch = epoch;
+            epochs[(int) (epoch % counts.length)] = epoch;
+        }
+
+        //Internal method to get the count of a bucket, 0 if the bucket is not stored
+        private int countOf(long epoch){
+            if(epoch < 0){
+                return 0;
+            }
+            int index = (int) (epoch % counts.length);
+            return epochs[index] == epoch ? counts[index] : 0;
+        }
+    }
+
+}
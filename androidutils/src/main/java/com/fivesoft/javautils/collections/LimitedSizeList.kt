@@ -1,32 +1,83 @@
 package com.fivesoft.javautils.collections
 
-import java.util.LinkedList
-
 /**
  * A list with a limited size. When the list reaches the maximum size, the oldest item is removed.
+ * Items are kept in a circular array allocated once, so adding, reading and removing at either end
+ * take constant time and do not allocate.
  * @param T The type of the items in the list.
  * @property maxSize The maximum size of the list.
  */
 class LimitedSizeList<T>(private val maxSize: Int) : Collection<T> {
 
-    private val list = LinkedList<T>()
+    init {
+        require(maxSize > 0) { "Max size must be greater than 0" }
+    }
+
+    private var items = arrayOfNulls<Any?>(maxSize)
+    //Index of the oldest item in the array
+    private var head = 0
+    private var count = 0
+    //Incremented on every change, so iterators can detect concurrent modification
+    private var modCount = 0
+    //Snapshot sharing the array, which must be copied before the next change
+    private var snapshot: List<T>? = null
 
     /**
      * Adds an item to the list. If the list reaches the maximum size, the oldest item is removed.
      * @param item The item to add.
      */
     fun add(item: T) {
-        if (list.size == maxSize) {
-            list.removeFirst() // Remove the oldest item
+        beforeChange()
+        if (count == maxSize) {
+            //Overwrite the oldest item
+            items[head] = item
+            head = wrap(head + 1)
+        } else {
+            items[wrap(head + count)] = item
+            count++
         }
-        list.addLast(item) // Add the new item at the end
+    }
+
+    /**
+     * Adds all items in the order of the collection. If the list reaches the maximum size,
+     * the oldest items are removed, so only the last [maxSize] items are kept.
+     * Not named addAll, which Java callers would resolve to the read-only [Collection] method.
+     * @param elements The items to add.
+     */
+    fun addAllLast(elements: Collection<T>) {
+        if (elements.isEmpty()) return
+        beforeChange()
+        val source = elements.toTypedArray<Any?>()
+        //Only the last maxSize items can remain
+        val skip = maxOf(0, source.size - maxSize)
+        val length = source.size - skip
+        val overflow = maxOf(0, count + length - maxSize)
+        //Drop the oldest items to make room
+        clearSlots(head, overflow)
+        head = wrap(head + overflow)
+        count -= overflow
+        //Copy in at most two parts, around the end of the array
+        val start = wrap(head + count)
+        val firstPart = minOf(length, maxSize - start)
+        System.arraycopy(source, skip, items, start, firstPart)
+        System.arraycopy(source, skip + firstPart, items, 0, length - firstPart)
+        count += length
     }
 
     /**
      * Clears the list.
      */
     fun clear() {
-        list.clear()
+        if (snapshot != null) {
+            //The snapshot keeps the old array
+            snapshot = null
+            items = arrayOfNulls(maxSize)
+        } else {
+            clearSlots(head, count)
+        }
+        head = 0
+        count = 0
+        modCount++
     }
 
     /**
@@ -35,29 +86,56 @@ class LimitedSizeList<T>(private val maxSize: Int) : Collection<T> {
      * @return The item at the specified index.
      */
     fun get(index: Int): T {
-        return list[index]
+        checkIndex(index)
+        @Suppress("UNCHECKED_CAST")
+        return items[wrap(head + index)] as T
     }
 
     /**
-     * Removes the item at the specified index.
+     * Removes the item at the specified index. Items are moved from the end closer to the index.
      * @param index The index of the item to remove.
      */
     fun remove(index: Int) {
-        list.removeAt(index)
+        checkIndex(index)
+        beforeChange()
+        if (index < count / 2) {
+            //Move the items before the index one step towards the end
+            for (i in index downTo 1) {
+                items[wrap(head + i)] = items[wrap(head + i - 1)]
+            }
+            items[head] = null
+            head = wrap(head + 1)
+        } else {
+            //Move the items after the index one step towards the start
+            for (i in index until count - 1) {
+                items[wrap(head + i)] = items[wrap(head + i + 1)]
+            }
+            items[wrap(head + count - 1)] = null
+        }
+        count--
     }
 
     /**
      * Removes the last item from the list.
+     * @throws NoSuchElementException If the list is empty.
      */
     fun removeLast() {
-        list.removeLast()
+        if (count == 0) throw NoSuchElementException()
+        beforeChange()
+        items[wrap(head + count - 1)] = null
+        count--
     }
 
     /**
      * Removes the first item from the list.
+     * @throws NoSuchElementException If the list is empty.
      */
     fun removeFirst() {
-        list.removeFirst()
+        if (count == 0) throw NoSuchElementException()
+        beforeChange()
+        items[head] = null
+        head = wrap(head + 1)
+        count--
     }
 
     /**
@@ -65,13 +143,13 @@ class LimitedSizeList<T>(private val maxSize: Int) : Collection<T> {
      * @return The number of elements in this list.
      */
     override val size: Int
-        get() = list.size
+        get() = count
 
     /**
      * Checks if the list contains any elements.
      * @return true if the list is empty, false otherwise.
      */
-    override fun isEmpty() = list.isEmpty()
+    override fun isEmpty() = count == 0
 
     /**
      * Checks if the list contains all the specified elements.
@@ -79,7 +157,7 @@ class LimitedSizeList<T>(private val maxSize: Int) : Collection<T> {
      * @return true if the list contains all the elements, false otherwise.
      */
     override fun containsAll(elements: Collection<T>): Boolean {
-        return list.containsAll(elements)
+        return elements.all { contains(it) }
     }
 
     /**
@@ -87,17 +165,78 @@ class LimitedSizeList<T>(private val maxSize: Int) : Collection<T> {
      * @param element The element to check.
      * @return true if the list contains the element, false otherwise.
      */
-    override fun contains(element: T) = list.contains(element)
+    override fun contains(element: T): Boolean {
+        for (i in 0 until count) {
+            if (items[wrap(head + i)] == element) return true
+        }
+        return false
+    }
 
     /**
-     * Returns the list as a [List].
-     * @return The list.
+     * Returns a read-only snapshot of the list, without copying the items.
+     * The snapshot shares the array until the list is changed, the first change after taking it
+     * copies the array once. Calling this again before a change returns the same snapshot.
+     * @return The snapshot.
      */
-    fun toList(): List<T> = list.toList()
+    fun toList(): List<T> {
+        snapshot?.let { return it }
+        return Snapshot<T>(items, head, count).also { snapshot = it }
+    }
 
     /**
-     * Returns iterator for the list.
+     * Returns iterator for the list. The iterator reads the array by index
+     * and throws [ConcurrentModificationException] if the list is changed while iterating.
      * @return The iterator.
      */
-    override fun iterator(): Iterator<T> = list.iterator()
-}
\ No newline at end of file
+    override fun iterator(): Iterator<T> = object : Iterator<T> {
+        private var index = 0
+        private val expectedModCount = modCount
+
+        override fun hasNext() = index < count
+
+        override fun next(): T {
+            if (modCount != expectedModCount) throw ConcurrentModificationException()
+            if (index >= count) throw NoSuchElementException()
+            return get(index++)
+        }
+    }
+
+    override fun toString() = joinToString(prefix = "[", postfix = "]")
+
+    //Detaches the snapshot, if any, and records the change
+    private fun beforeChange() {
+        if (snapshot != null) {
+            items = items.copyOf()
+            snapshot = null
+        }
+        modCount++
+    }
+
+    //Clears the slots of removed items, so they can be collected
+    private fun clearSlots(from: Int, length: Int) {
+        val firstPart = minOf(length, maxSize - from)
+        items.fill(null, from, from + firstPart)
+        items.fill(null, 0, length - firstPart)
+    }
+
+    private fun checkIndex(index: Int) {
+        if (index < 0 || index >= count) throw IndexOutOfBoundsException("Index: $index, size: $count")
+    }
+
+    private fun wrap(index: Int) = if (index >= maxSize) index - maxSize else index
+
+    //Read-only view of an array no longer changed by the list
+    private class Snapshot<T>(
+        private val items: Array<Any?>,
+        private val head: Int,
+        override val size: Int
+    ) : AbstractList<T>() {
+
+        override fun get(index: Int): T {
+            if (index < 0 || index >= size) throw IndexOutOfBoundsException("Index: $index, size: $size")
+            val i = head + index
+            @Suppress("UNCHECKED_CAST")
+            return items[if (i >= items.size) i - items.size else i] as T
+        }
+    }
+}
@@ -0,0 +1,57 @@
+package com.fivesoft.javautils.io;
+
+import com.fivesoft.javautils.measure.BitrateMeasure;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.Objects;
+
+/**
+ * Counts transferred bytes of one stream or channel into a {@link BitrateMeasure},
+ * optionally batching them locally. Not thread-safe, like the streams using it.
+ */
+final class ByteMeter {
+
+    @NotNull
+    private final BitrateMeasure measure;
+    private final long batchBytes;
+    private long pending = 0;
+    private long total = 0;
+
+    ByteMeter(@NotNull BitrateMeasure measure, long batchBytes){
+        if(batchBytes < 0){
+            throw new IllegalArgumentException("batchBytes must not be negative");
+        }
+        this.measure = Objects.requireNonNull(measure);
+        this.batchBytes = batchBytes;
+    }
+
+    //Counts the bytes of one transfer, publishing them if the batch is full
+    void add(long bytes){
+        if(bytes <= 0){
+            return;
+        }
+        total += bytes;
+        pending += bytes;
+        if(pending >= batchBytes){
+            publish();
+        }
+    }
+
+    //Publishes the batched bytes to the measure
+    void publish(){
+        if(pending > 0){
+            measure.countBytes(pending);
+            pending = 0;
+        }
+    }
+
+    long getTotal(){
+        return total;
+    }
+
+    @NotNull
+    BitrateMeasure getMeasure(){
+        return measure;
+    }
+}
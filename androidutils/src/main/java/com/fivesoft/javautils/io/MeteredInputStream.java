@@ -0,0 +1,86 @@
+package com.fivesoft.javautils.io;
+
+import com.fivesoft.javautils.measure.BitrateMeasure;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * InputStream counting the read bytes into a {@link BitrateMeasure}.<br>
+ * Bytes are counted once per read call, not per byte. With a batch size set, they are collected locally
+ * and published to the measure once the batch is full, on {@link #publish()} and on close.
+ * Bytes read again after {@link #reset()} are counted again, skipped bytes are not counted.
+ */
+public class MeteredInputStream extends FilterInputStream {
+
+    @NotNull
+    private final ByteMeter meter;
+
+    /**
+     * Creates a new stream publishing every read to the measure.
+     * @param in The stream to read from.
+     * @param measure The measure to count the bytes into.
+     */
+    public MeteredInputStream(@NotNull InputStream in, @NotNull BitrateMeasure measure) {
+        this(in, measure, 0);
+    }
+
+    /**
+     * Creates a new stream.
+     * @param in The stream to read from.
+     * @param measure The measure to count the bytes into.
+     * @param batchBytes The number of bytes collected before publishing them to the measure.
+     *                   0 publishes every read.
+     */
+    public MeteredInputStream(@NotNull InputStream in, @NotNull BitrateMeasure measure, long batchBytes) {
+        super(in);
+        this.meter = new ByteMeter(measure, batchBytes);
+    }
+
+    @Override
+    public int read() throws IOException {
+        int b = in.read();
+        if(b >= 0){
+            meter.add(1);
+        }
+        return b;
+    }
+
+    @Override
+    public int read(@NotNull byte[] b, int off, int len) throws IOException {
+        int n = in.read(b, off, len);
+        meter.add(n);
+        return n;
+    }
+
+    /**
+     * Publishes the batched bytes to the measure now.
+     */
+    public void publish(){
+        meter.publish();
+    }
+
+    /**
+     * Gets the number of bytes read through this stream.
+     */
+    public long getTotalBytes(){
+        return meter.getTotal();
+    }
+
+    /**
+     * Gets the measure the bytes are counted into.
+     */
+    @NotNull
+    public BitrateMeasure getMeasure(){
+        return meter.getMeasure();
+    }
+
+    @Override
+    public void close() throws IOException {
+        meter.publish();
+        super.close();
+    }
+}
@@ -0,0 +1,82 @@
+package com.fivesoft.javautils.io;
+
+import com.fivesoft.javautils.measure.BitrateMeasure;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * OutputStream counting the written bytes into a {@link BitrateMeasure}.<br>
+ * Bytes are counted once per write call, not per byte, and bulk writes are passed
+ * to the wrapped stream in one call. With a batch size set, bytes are collected locally
+ * and published to the measure once the batch is full, on flush and on close.
+ */
+public class MeteredOutputStream extends FilterOutputStream {
+
+    @NotNull
+    private final ByteMeter meter;
+
+    /**
+     * Creates a new stream publishing every write to the measure.
+     * @param out The stream to write to.
+     * @param measure The measure to count the bytes into.
+     */
+    public MeteredOutputStream(@NotNull OutputStream out, @NotNull BitrateMeasure measure) {
+        this(out, measure, 0);
+    }
+
+    /**
+     * Creates a new stream.
+     * @param out The stream to write to.
+     * @param measure The measure to count the bytes into.
+     * @param batchBytes The number of bytes collected before publishing them to the measure.
+     *                   0 publishes every write.
+     */
+    public MeteredOutputStream(@NotNull OutputStream out, @NotNull BitrateMeasure measure, long batchBytes) {
+        super(out);
+        this.meter = new ByteMeter(measure, batchBytes);
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        out.write(b);
+        meter.add(1);
+    }
+
+    @Override
+    public void write(@NotNull byte[] b, int off, int len) throws IOException {
+        //FilterOutputStream would write byte by byte
+        out.write(b, off, len);
+        meter.add(len);
+    }
+
+    @Override
+    public void flush() throws IOException {
+        meter.publish();
+        super.flush();
+    }
+
+    /**
+     * Gets the number of bytes written through this stream.
+     */
+    public long getTotalBytes(){
+        return meter.getTotal();
+    }
+
+    /**
+     * Gets the measure the bytes are counted into.
+     */
+    @NotNull
+    public BitrateMeasure getMeasure(){
+        return meter.getMeasure();
+    }
+
+    @Override
+    public void close() throws IOException {
+        meter.publish();
+        super.close();
+    }
+}
@@ -0,0 +1,84 @@
+package com.fivesoft.javautils.io;
+
+import com.fivesoft.javautils.measure.BitrateMeasure;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.util.Objects;
+
+/**
+ * ReadableByteChannel counting the read bytes into a {@link BitrateMeasure}.<br>
+ * Bytes are counted once per read call. With a batch size set, they are collected locally
+ * and published to the measure once the batch is full, on {@link #publish()} and on close.
+ */
+public class MeteredReadableByteChannel implements ReadableByteChannel {
+
+    @NotNull
+    private final ReadableByteChannel channel;
+    @NotNull
+    private final ByteMeter meter;
+
+    /**
+     * Creates a new channel publishing every read to the measure.
+     * @param channel The channel to read from.
+     * @param measure The measure to count the bytes into.
+     */
+    public MeteredReadableByteChannel(@NotNull ReadableByteChannel channel, @NotNull BitrateMeasure measure) {
+        this(channel, measure, 0);
+    }
+
+    /**
+     * Creates a new channel.
+     * @param channel The channel to read from.
+     * @param measure The measure to count the bytes into.
+     * @param batchBytes The number of bytes collected before publishing them to the measure.
+     *                   0 publishes every read.
+     */
+    public MeteredReadableByteChannel(@NotNull ReadableByteChannel channel, @NotNull BitrateMeasure measure, long batchBytes) {
+        this.channel = Objects.requireNonNull(channel);
+        this.meter = new ByteMeter(measure, batchBytes);
+    }
+
+    @Override
+    public int read(ByteBuffer dst) throws IOException {
+        int n = channel.read(dst);
+        meter.add(n);
+        return n;
+    }
+
+    /**
+     * Publishes the batched bytes to the measure now.
+     */
+    public void publish(){
+        meter.publish();
+    }
+
+    /**
+     * Gets the number of bytes read through this channel.
+     */
+    public long getTotalBytes(){
+        return meter.getTotal();
+    }
+
+    /**
+     * Gets the measure the bytes are counted into.
+     */
+    @NotNull
+    public BitrateMeasure getMeasure(){
+        return meter.getMeasure();
+    }
+
+    @Override
+    public boolean isOpen() {
+        return channel.isOpen();
+    }
+
+    @Override
+    public void close() throws IOException {
+        meter.publish();
+        channel.close();
+    }
+}
@@ -0,0 +1,84 @@
+package com.fivesoft.javautils.io;
+
+import com.fivesoft.javautils.measure.BitrateMeasure;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.util.Objects;
+
+/**
+ * WritableByteChannel counting the written bytes into a {@link BitrateMeasure}.<br>
+ * Bytes are counted once per write call. With a batch size set, they are collected locally
+ * and published to the measure once the batch is full, on {@link #publish()} and on close.
+ */
+public class MeteredWritableByteChannel implements WritableByteChannel {
+
+    @NotNull
+    private final WritableByteChannel channel;
+    @NotNull
+    private final ByteMeter meter;
+
+    /**
+     * Creates a new channel publishing every write to the measure.
+     * @param channel The channel to write to.
+     * @param measure The measure to count the bytes into.
+     */
+    public MeteredWritableByteChannel(@NotNull WritableByteChannel channel, @NotNull BitrateMeasure measure) {
+        this(channel, measure, 0);
+    }
+
+    /**
+     * Creates a new channel.
+     * @param channel The channel to write to.
+     * @param measure The measure to count the bytes into.
+     * @param batchBytes The number of bytes collected before publishing them to the measure.
+     *                   0 publishes every write.
+     */
+    public MeteredWritableByteChannel(@NotNull WritableByteChannel channel, @NotNull BitrateMeasure measure, long batchBytes) {
+        this.channel = Objects.requireNonNull(channel);
+        this.meter = new ByteMeter(measure, batchBytes);
+    }
+
+    @Override
+    public int write(ByteBuffer src) throws IOException {
+        int n = channel.write(src);
+        meter.add(n);
+        return n;
+    }
+
+    /**
+     * Publishes the batched bytes to the measure now.
+     */
+    public void publish(){
+        meter.publish();
+    }
+
+    /**
+     * Gets the number of bytes written through this channel.
+     */
+    public long getTotalBytes(){
+        return meter.getTotal();
+    }
+
+    /**
+     * Gets the measure the bytes are counted into.
+     */
+    @NotNull
+    public BitrateMeasure getMeasure(){
+        return meter.getMeasure();
+    }
+
+    @Override
+    public boolean isOpen() {
+        return channel.isOpen();
+    }
+
+    @Override
+    public void close() throws IOException {
+        meter.publish();
+        channel.close();
+    }
+}
@@ -0,0 +1,124 @@
+package com.fivesoft.javautils.measure;
+
+import androidx.annotation.NonNull;
+
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+import java.util.function.DoubleSupplier;
+
+/**
+ * Condition of an alarm on a value of a measure, with hysteresis.<br>
+ * An alarm is raised when the value has stayed beyond the enter threshold for the hold duration,
+ * and cleared when it has stayed back within the exit threshold for the hold duration.
+ * The gap between the thresholds keeps the alarm from flapping around a single value.<br>
+ * Example: {@code AlarmRule.above("bitrate", bitrate::getBitrate, 20e6, 18e6, 1, TimeUnit.SECONDS)}.
+ * NaN values leave the alarm unchanged. Measures returning -1 when they have no data should be
+ * mapped to NaN in the supplier, so an idle measure does not raise a "below" alarm.
+ */
+public final class AlarmRule {
+
+    private final String name;
+    private final DoubleSupplier value;
+    private final boolean above;
+    private final double enterThreshold;
+    private final double exitThreshold;
+    private final long holdNanos;
+
+    private AlarmRule(@NonNull String name, @NonNull DoubleSupplier value, boolean above,
+                      double enterThreshold, double exitThreshold, long hold, @NonNull TimeUnit unit) {
+        if(Double.isNaN(enterThreshold) || Double.isNaN(exitThreshold))
+            throw new IllegalArgumentException("Thresholds must not be NaN");
+        if(above ? exitThreshold > enterThreshold : exitThreshold < enterThreshold)
+            throw new IllegalArgumentException("Exit threshold must not be beyond the enter threshold");
+        if(hold < 0)
+            throw new IllegalArgumentException("Hold duration must not be negative");
+        this.name = Objects.requireNonNull(name);
+        this.value = Objects.requireNonNull(value);
+        this.above = above;
+        this.enterThreshold = enterThreshold;
+        this.exitThreshold = exitThreshold;
+        this.holdNanos = unit.toNanos(hold);
+    }
+
+    /**
+     * Creates a rule raised when the value is above the enter threshold.
+     * @param name The name of the rule.
+     * @param value The value to watch, for example {@code bitrate::getBitrate}. Called on the dispatcher thread.
+     * @param enterThreshold The value must be above this to raise the alarm.
+     * @param exitThreshold The value must be at or below this to clear the alarm. Must not be above the enter threshold.
+     * @param hold How long the value must stay beyond a threshold before the alarm changes.
+     * @param unit The time unit of the hold duration.
+     * @return The rule.
+     */
+    @NonNull
+    public static AlarmRule above(@NonNull String name, @NonNull DoubleSupplier value,
+                                  double enterThreshold, double exitThreshold, long hold, @NonNull TimeUnit unit){
+        return new AlarmRule(name, value, true, enterThreshold, exitThreshold, hold, unit);
+    }
+
+    /**
+     * Creates a rule raised when the value is below the enter threshold.
+     * @param name The name of the rule.
+     * @param value The value to watch, for example the average FPS. Called on the dispatcher thread.
+     * @param enterThreshold The value must be below this to raise the alarm.
+     * @param exitThreshold The value must be at or above this to clear the alarm. Must not be below the enter threshold.
+     * @param hold How long the value must stay beyond a threshold before the alarm changes.
+     * @param unit The time unit of the hold duration.
+     * @return The rule.
+     */
+    @NonNull
+    public static AlarmRule below(@NonNull String name, @NonNull DoubleSupplier value,
+                                  double enterThreshold, double exitThreshold, long hold, @NonNull TimeUnit unit){
+        return new AlarmRule(name, value, false, enterThreshold, exitThreshold, hold, unit);
+    }
+
+    @NonNull
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Returns true if the rule is raised above the enter threshold, false if below.
+     */
+    public boolean isAbove() {
+        return above;
+    }
+
+    public double getEnterThreshold() {
+        return enterThreshold;
+    }
+
+    public double getExitThreshold() {
+        return exitThreshold;
+    }
+
+    /**
+     * Gets the hold duration in nanoseconds.
+     */
+    public long getHoldNanos() {
+        return holdNanos;
+    }
+
+    //Reads the watched value
+    double read(){
+        return value.getAsDouble();
+    }
+
+    //Whether the value is beyond the enter threshold
+    boolean entered(double value){
+        return above ? value > enterThreshold : value < enterThreshold;
+    }
+
+    //Whether the value is back within the exit threshold
+    boolean exited(double value){
+        return above ? value <= exitThreshold : value >= exitThreshold;
+    }
+
+    @NonNull
+    @Override
+    public String toString() {
+        return "AlarmRule{" + name + (above ? " above " : " below ") + enterThreshold
+                + ", exit " + exitThreshold + ", hold " + holdNanos + " ns}";
+    }
+
+}
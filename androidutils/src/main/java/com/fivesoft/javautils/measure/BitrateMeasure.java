@@ -2,14 +2,50 @@ package com.fivesoft.javautils.measure;
 
 import androidx.annotation.NonNull;
 
-import java.util.Locale;
+import com.fivesoft.javautils.time.Clock;
+
+import java.io.IOException;
 
 public class BitrateMeasure extends FrequencyMeasure {
 
+    private static final double[] BITRATE_SCALES = {1, 1_000, 1_000_000, 1_000_000_000};
+    private static final String[] BITRATE_UNITS = {" bps", " kbps", " Mbps", " Gbps"};
+
     public BitrateMeasure(int bufferSize, long interval) {
         super(bufferSize, interval);
     }
 
+    public BitrateMeasure(int bufferSize, long interval, @NonNull Clock clock) {
+        super(bufferSize, interval, clock);
+    }
+
+    //Constructor of the EWMA mode
+    BitrateMeasure(@NonNull EwmaRate ewma) {
+        super(ewma);
+    }
+
+    /**
+     * Creates a measure in EWMA mode.
+     * {@link #getBitrate()} returns the average with a time constant of one interval.
+     * @param interval The interval of the measure. (in milliseconds)
+     * @see FrequencyMeasure#ewma(long)
+     */
+    @NonNull
+    public static BitrateMeasure ewma(long interval){
+        return ewma(interval, Clock.SYSTEM);
+    }
+
+    /**
+     * Creates a measure in EWMA mode.
+     * @param interval The interval of the measure. (in milliseconds)
+     * @param clock The clock used to measure time.
+     * @see #ewma(long)
+     */
+    @NonNull
+    public static BitrateMeasure ewma(long interval, @NonNull Clock clock){
+        return new BitrateMeasure(new EwmaRate(interval, clock));
+    }
+
     public void countBit(){
         count(1);
     }
@@ -33,29 +69,50 @@ public class BitrateMeasure extends FrequencyMeasure {
     /**
      * Gets the average bitrate over the last interval in a human readable format.<br>
      * Example: 123.45 kbps
-     * @return The average bitrate, or -1 if no bits have been recorded.
+     * @return The average bitrate, or N/A if no bits have been recorded.
      */
     @NonNull
     public String getReadableBitrate(){
-        return toReadableBitrate(getBitrate());
+        return appendReadableBitrate(new StringBuilder(16)).toString();
     }
 
+    /**
+     * Appends the average bitrate in a human readable format, without allocating.
+     * @param sb The destination.
+     * @return The destination.
+     * @see #getReadableBitrate()
+     */
     @NonNull
-    private static String toReadableBitrate(double bitrate){
-        if(bitrate == -1) {
-            return "N/A";
-        }
-        else {
-            if(bitrate < 1000){
-                return String.format(Locale.US, "%.2f bps", bitrate);
-            } else if(bitrate < 1000000){
-                return String.format(Locale.US, "%.2f kbps", bitrate / 1000);
-            } else if(bitrate < 1000000000){
-                return String.format(Locale.US, "%.2f Mbps", bitrate / 1000000);
-            } else {
-                return String.format(Locale.US, "%.2f Gbps", bitrate / 1000000000);
-            }
+    public StringBuilder appendReadableBitrate(@NonNull StringBuilder sb){
+        try {
+            appendReadableBitrate((Appendable) sb);
+        } catch (IOException e){
+            //StringBuilder does not throw
+            throw new IllegalStateException(e);
         }
+        return sb;
+    }
+
+    /**
+     * Appends the average bitrate in a human readable format, without allocating.
+     * @param out The destination.
+     * @throws IOException If appending fails.
+     * @see #getReadableBitrate()
+     */
+    public void appendReadableBitrate(@NonNull Appendable out) throws IOException {
+        appendReadable(out, getBitrate(), BITRATE_SCALES, BITRATE_UNITS);
+    }
+
+    /**
+     * Writes the average bitrate in a human readable format into a char array, without allocating.
+     * @param dst The destination.
+     * @param offset The index of the first char to write.
+     * @return The number of written chars.
+     * @throws IndexOutOfBoundsException If the array is too small.
+     * @see #getReadableBitrate()
+     */
+    public int writeReadableBitrate(@NonNull char[] dst, int offset){
+        return writeReadable(dst, offset, getBitrate(), BITRATE_SCALES, BITRATE_UNITS) - offset;
     }
 
 }
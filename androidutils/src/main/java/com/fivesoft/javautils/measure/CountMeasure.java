@@ -1,52 +1,82 @@
 package com.fivesoft.javautils.measure;
 
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.fivesoft.javautils.time.Clock;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
 import java.util.Arrays;
+import java.util.Collection;
+import java.util.Objects;
+import java.util.concurrent.atomic.LongAdder;
 
+/**
+ * Counts units over a sliding interval.<br>
+ * The interval is split into probes. Counting goes to the probe of the current time,
+ * probes older than the interval are forgotten.<br>
+ * The measure is safe to use from many threads: counting is lock-free and adds to a striped
+ * counter, so concurrent producers do not contend with each other. Only moving to the next probe,
+ * which happens at most once per probe duration, is done under a short lock.<br>
+ * Reading the count takes constant time regardless of the buffer size: the sum of the closed probes
+ * is kept up to date while moving to the next probe, probes leaving the interval subtract themselves.
+ */
 public class CountMeasure {
 
+    //Counts of the closed probes and the probe numbers they belong to, guarded by lock
     private final long[] buffer;
-    private final double probeDuration;
+    private final long[] probeNumbers;
+    //Sum of the closed probes inside the interval, guarded by lock
+    private long closedSum = 0;
+    private final long probeDuration;
     private final long interval;
-    private volatile long lastProbeTime = -1;
-    private int currentProbeIndex = 0;
+    private final Object lock = new Object();
+    private volatile Probe currentProbe;
+    private volatile long origin;
+    private volatile boolean hasProbes = false;
+    @Nullable
+    private volatile ProbeListener probeListener;
+    private final Clock clock;
 
     public CountMeasure(int bufferSize, long interval) {
+        this(bufferSize, interval, Clock.SYSTEM);
+    }
+
+    /**
+     * Creates a new measure.
+     * @param bufferSize The number of probes the interval is split into.
+     * @param interval The interval of the measure. (in milliseconds)
+     * @param clock The clock used to measure time.
+     */
+    public CountMeasure(int bufferSize, long interval, @NonNull Clock clock) {
+        if(bufferSize < 1)
+            throw new IllegalArgumentException("Buffer size must be greater than 0");
+        if(interval < 1)
+            throw new IllegalArgumentException("Interval must be greater than 0");
+        this.clock = Objects.requireNonNull(clock);
         this.buffer = new long[bufferSize];
-        //Calculate time for one probe.
-        this.probeDuration = (interval / (double) buffer.length);
+        this.probeNumbers = new long[bufferSize];
+        this.probeDuration = Probes.duration(interval, bufferSize);
         this.interval = interval;
-        Arrays.fill(buffer, -1);
+        reset();
     }
 
     public void count(long units){
-        //Initial probe
-        if(lastProbeTime == -1){
-            lastProbeTime = System.currentTimeMillis();
-            buffer[0] = units;
-            currentProbeIndex = 0;
-            return;
-        }
-
-        //Time since last probe. Last probe has index = bufferIndex
-        long dif = System.currentTimeMillis() - lastProbeTime;
-
-        if(dif < probeDuration){
-            //Add to current probe
-            buffer[currentProbeIndex] = Math.max(buffer[currentProbeIndex], 0) + units;
-        } else {
-            //Position indicates how many probes we have to skip
-            int pos = (int) Math.floor(dif / probeDuration);
-            //Fill skipped probes with -1
-            for (int i = 1; i < pos; i++) {
-                currentProbeIndex = (currentProbeIndex + 1) % buffer.length;
-                buffer[currentProbeIndex] = -1;
-            }
-            currentProbeIndex += pos;
-            currentProbeIndex %= buffer.length;
-            //Add to new probe
-            buffer[currentProbeIndex] = units;
-            lastProbeTime = System.currentTimeMillis();
-        }
+        Probe probe = currentProbe;
+        long probeNumber = probeNumberAt(clock.nanoTime());
+        if(probe.number < probeNumber)
+            probe = rotate(probeNumber);
+        probe.count.add(units);
+        //The probe may have been closed while adding, its sum could miss these units
+        if(probe.closed)
+            addLate(probe);
+        if(!hasProbes)
+            hasProbes = true;
     }
 
     public void count(){
@@ -55,24 +85,57 @@ public class CountMeasure {
 
     /**
      * Gets count of the last interval.
+     * @return The count, or -1 if nothing has been counted since creation or the last reset.
      */
     public long getCount(){
-        count(0);
-        boolean hasProbe = false;
-        long sum = 0;
-        for (long l : buffer) {
-            if(l != -1) {
-                sum += l;
-                hasProbe = true;
-            }
-        }
-        return hasProbe ? sum : -1;
+        if(!hasProbes)
+            return -1;
+        Probe probe = currentProbe;
+        long probeNumber = probeNumberAt(clock.nanoTime());
+        if(probe.number < probeNumber)
+            probe = rotate(probeNumber);
+        return probe.closedSum + probe.count.sum();
+    }
+
+    /**
+     * Takes an immutable copy of the count of the last interval.
+     * Snapshots of measures with the same interval can be merged, for example across processes.
+     */
+    @NonNull
+    public Snapshot snapshot(){
+        return new Snapshot(getCount(), interval);
     }
 
     public void reset(){
-        lastProbeTime = -1;
-        currentProbeIndex = 0;
-        Arrays.fill(buffer, -1);
+        synchronized (lock) {
+            origin = clock.nanoTime();
+            Arrays.fill(buffer, 0);
+            Arrays.fill(probeNumbers, -1);
+            closedSum = 0;
+            currentProbe = new Probe(0, 0);
+            hasProbes = false;
+        }
+    }
+
+    /**
+     * Moves the measure to the current time, so a probe whose time has passed is closed
+     * even if nothing has been counted since. See {@link ProbeListener}.
+     */
+    public void flush(){
+        long probeNumber = probeNumberAt(clock.nanoTime());
+        if(currentProbe.number < probeNumber)
+            rotate(probeNumber);
+    }
+
+    /**
+     * Sets the listener notified with the count of every closed probe.
+     * Probes with nothing counted are not reported.
+     * Units counted by a thread racing with the closing of their probe are reported afterwards,
+     * as another sample with the start time of that probe.
+     * @param listener The listener, or null to remove it.
+     */
+    public void setProbeListener(@Nullable ProbeListener listener) {
+        this.probeListener = listener;
     }
 
     /**
@@ -89,4 +152,242 @@ public class CountMeasure {
         return interval;
     }
 
+    /**
+     * Gets the clock used to measure time.
+     */
+    @NonNull
+    public Clock getClock() {
+        return clock;
+    }
+
+    //Number of the probe the given time belongs to
+    private long probeNumberAt(long nanoTime){
+        return Probes.numberAt(nanoTime, origin, probeDuration);
+    }
+
+    //Closes the current probe and opens the given one.
+    //Units added to the probe after it was summed are folded in later by addLate.
+    @NonNull
+    private Probe rotate(long probeNumber){
+        synchronized (lock) {
+            Probe probe = currentProbe;
+            if(probe.number >= probeNumber)
+                return probe;
+            int size = buffer.length;
+            //Marked before summing, so a producer adding after the sum sees the mark
+            probe.closed = true;
+            long value = probe.count.sum();
+            probe.folded = value;
+            ProbeListener listener = probeListener;
+            if(listener != null && value != 0)
+                listener.onProbeClosed(origin + probe.number * probeDuration, 1, value, value, value);
+            //Oldest probe number still inside the interval of the new probe
+            long oldest = probeNumber - size + 1;
+            if(probe.number < oldest){
+                //Every stored probe left the interval
+                Arrays.fill(probeNumbers, -1);
+                closedSum = 0;
+            } else {
+                //Probes numbered below the oldest one leave the interval.
+                //The ones before probe.number - size + 1 already left in earlier rotations.
+                for (long number = probe.number - size + 1; number < oldest; number++) {
+                    int index = (int) (number % size);
+                    if(number >= 0 && probeNumbers[index] == number){
+                        closedSum -= buffer[index];
+                        probeNumbers[index] = -1;
+                    }
+                }
+                int index = (int) (probe.number % size);
+                buffer[index] = value;
+                probeNumbers[index] = probe.number;
+                closedSum += value;
+            }
+            Probe next = new Probe(probeNumber, closedSum);
+            currentProbe = next;
+            return next;
+        }
+    }
+
+    //Adds the units counted into a closed probe after it was summed
+    private void addLate(@NonNull Probe probe){
+        synchronized (lock) {
+            long late = probe.count.sum() - probe.folded;
+            //Another producer may have folded them already
+            if(late == 0)
+                return;
+            probe.folded += late;
+            int index = (int) (probe.number % buffer.length);
+            //Units of a probe which already left the interval are not counted anymore
+            if(probeNumbers[index] == probe.number){
+                buffer[index] += late;
+                closedSum += late;
+                currentProbe.closedSum = closedSum;
+            }
+            ProbeListener listener = probeListener;
+            if(listener != null)
+                listener.onProbeClosed(origin + probe.number * probeDuration, 1, late, late, late);
+        }
+    }
+
+    //The probe being counted into
+    private static final class Probe {
+
+        final long number;
+        //Sum of the closed probes inside the interval, written under lock
+        volatile long closedSum;
+        final LongAdder count = new LongAdder();
+        //Set under lock before the probe is summed
+        volatile boolean closed = false;
+        //Part of the count already added to the closed probes, guarded by lock
+        long folded = 0;
+
+        Probe(long number, long closedSum) {
+            this.number = number;
+            this.closedSum = closedSum;
+        }
+    }
+
+    /**
+     * An immutable copy of the count of a {@link CountMeasure} over its interval.
+     */
+    public static final class Snapshot {
+
+        //Version of the serialized snapshot format
+        private static final int FORMAT_VERSION = 1;
+
+        private final long count;
+        private final long interval;
+
+        /**
+         * Creates a new snapshot.
+         * @param count The count, or -1 if nothing has been counted.
+         * @param interval The interval of the count. (in milliseconds)
+         */
+        public Snapshot(long count, long interval) {
+            if(interval < 1)
+                throw new IllegalArgumentException("Interval must be greater than 0");
+            this.count = Math.max(-1, count);
+            this.interval = interval;
+        }
+
+        /**
+         * Gets the count, or -1 if nothing has been counted.
+         */
+        public long getCount() {
+            return count;
+        }
+
+        /**
+         * Gets the interval of the count. (in milliseconds)
+         */
+        public long getInterval() {
+            return interval;
+        }
+
+        /**
+         * Gets the average frequency over the interval. (in units per second)
+         * @return The frequency, or -1 if nothing has been counted.
+         */
+        public double getFrequency(){
+            return count < 0 ? -1 : count / (double) interval * 1000.0;
+        }
+
+        /**
+         * Merges this snapshot with another one of the same interval.
+         * @param other The other snapshot.
+         * @return A new snapshot with the sum of both counts.
+         * @throws IllegalArgumentException If the intervals differ.
+         */
+        @NonNull
+        public Snapshot merge(@NonNull Snapshot other){
+            if(other.interval != interval)
+                throw new IllegalArgumentException("Cannot merge snapshots of different intervals");
+            if(other.count < 0)
+                return this;
+            if(count < 0)
+                return other;
+            return new Snapshot(count + other.count, interval);
+        }
+
+        /**
+         * Merges many snapshots of the same interval at once.
+         * @param snapshots The snapshots. Must not be empty.
+         * @return A new snapshot with the sum of all counts.
+         * @throws IllegalArgumentException If there are no snapshots or the intervals differ.
+         */
+        @NonNull
+        public static Snapshot merge(@NonNull Collection<Snapshot> snapshots){
+            if(snapshots.isEmpty())
+                throw new IllegalArgumentException("No snapshots to merge");
+            long interval = snapshots.iterator().next().interval;
+            long count = -1;
+            for (Snapshot snapshot : snapshots) {
+                if(snapshot.interval != interval)
+                    throw new IllegalArgumentException("Cannot merge snapshots of different intervals");
+                if(snapshot.count >= 0)
+                    count = Math.max(count, 0) + snapshot.count;
+            }
+            return new Snapshot(count, interval);
+        }
+
+        /**
+         * Writes the snapshot in the compact binary form.
+         * @param out The destination.
+         * @throws IOException If writing fails.
+         */
+        public void writeTo(@NonNull OutputStream out) throws IOException {
+            out.write(FORMAT_VERSION);
+            Varint.writeSigned(out, count);
+            Varint.writeUnsigned(out, interval);
+        }
+
+        /**
+         * Encodes the snapshot in the compact binary form.
+         */
+        @NonNull
+        public byte[] toByteArray(){
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            try {
+                writeTo(out);
+            } catch (IOException e){
+                //ByteArrayOutputStream does not throw
+                throw new UncheckedIOException(e);
+            }
+            return out.toByteArray();
+        }
+
+        /**
+         * Reads a snapshot written by {@link #writeTo(OutputStream)}.
+         * @param in The source.
+         * @return The snapshot.
+         * @throws IOException If reading fails or the data is malformed.
+         */
+        @NonNull
+        public static Snapshot readFrom(@NonNull InputStream in) throws IOException {
+            Varint.readVersion(in, FORMAT_VERSION);
+            long count = Varint.readSigned(in);
+            long interval = Varint.readUnsigned(in);
+            if(interval < 1)
+                throw new IOException("Malformed count snapshot");
+            return new Snapshot(count, interval);
+        }
+
+        /**
+         * Decodes a snapshot encoded by {@link #toByteArray()}.
+         * @param bytes The encoded snapshot.
+         * @return The snapshot.
+         * @throws IOException If the data is malformed.
+         */
+        @NonNull
+        public static Snapshot fromByteArray(@NonNull byte[] bytes) throws IOException {
+            return readFrom(new ByteArrayInputStream(bytes));
+        }
+
+        @NonNull
+        @Override
+        public String toString() {
+            return "CountMeasure.Snapshot{count=" + count + ", interval=" + interval + "}";
+        }
+    }
+
 }
@@ -0,0 +1,95 @@
+package com.fivesoft.javautils.measure;
+
+import androidx.annotation.NonNull;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+
+/**
+ * Appends the snapshots of a {@link MeasureRegistry} to a CSV file.<br>
+ * Every sample is written as one line: {@code time,name,labels,value}, where labels are
+ * written as {@code key=value} pairs separated by semicolons.
+ * A header line is written when the file is empty.
+ */
+public class CsvMeasureReporter implements MeasureReporter, Closeable {
+
+    private final Writer writer;
+
+    /**
+     * Creates a new reporter appending to the given file.
+     * @param file The file. Created if it does not exist.
+     * @throws IOException If the file cannot be opened.
+     */
+    public CsvMeasureReporter(@NonNull File file) throws IOException {
+        boolean empty = !file.exists() || file.length() == 0;
+        this.writer = new BufferedWriter(new OutputStreamWriter(
+                new FileOutputStream(file, true), StandardCharsets.UTF_8));
+        if(empty){
+            writer.write("time,name,labels,value\n");
+            writer.flush();
+        }
+    }
+
+    /**
+     * @throws UncheckedIOException If writing to the file fails.
+     */
+    @Override
+    public synchronized void report(@NonNull MeasureSnapshot snapshot) {
+        try {
+            StringBuilder line = new StringBuilder();
+            for (MeasureSnapshot.Sample sample : snapshot.getSamples()) {
+                line.setLength(0);
+                line.append(snapshot.getTimeMillis()).append(',');
+                appendField(line, sample.getName());
+                line.append(',');
+                StringBuilder labels = new StringBuilder();
+                for (Map.Entry<String, String> label : sample.getLabels().entrySet()) {
+                    if(labels.length() > 0)
+                        labels.append(';');
+                    labels.append(label.getKey()).append('=').append(label.getValue());
+                }
+                appendField(line, labels);
+                line.append(',').append(sample.getValue()).append('\n');
+                writer.append(line);
+            }
+            writer.flush();
+        } catch (IOException e){
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        writer.close();
+    }
+
+    //Appends a field, quoted if needed
+    private static void appendField(@NonNull StringBuilder sb, @NonNull CharSequence field){
+        boolean quote = false;
+        for (int i = 0; i < field.length() && !quote; i++) {
+            char c = field.charAt(i);
+            quote = c == ',' || c == '"' || c == '\n' || c == '\r';
+        }
+        if(!quote){
+            sb.append(field);
+            return;
+        }
+        sb.append('"');
+        for (int i = 0; i < field.length(); i++) {
+            char c = field.charAt(i);
+            if(c == '"')
+                sb.append('"');
+            sb.append(c);
+        }
+        sb.append('"');
+    }
+
+}
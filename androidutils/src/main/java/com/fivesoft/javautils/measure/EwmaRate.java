@@ -0,0 +1,170 @@
+package com.fivesoft.javautils.measure;
+
+import androidx.annotation.NonNull;
+
+import com.fivesoft.javautils.time.Clock;
+
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Exponentially weighted moving average of a rate, in the style of the Unix load average.<br>
+ * Three averages are kept, with time constants of 1, 5 and 15 intervals.
+ * The averages are updated {@value #TICKS_PER_INTERVAL} times per interval,
+ * lazily on counting or reading, so no timer is needed.<br>
+ * The memory is constant and does not depend on the interval or the traffic.
+ * Counting is lock-free, so it is safe to count from many threads.
+ */
+public final class EwmaRate {
+
+    /**
+     * Number of updates of the averages per interval.
+     */
+    public static final int TICKS_PER_INTERVAL = 12;
+
+    private static final double ALPHA_1 = 1 - Math.exp(-1.0 / TICKS_PER_INTERVAL);
+    private static final double ALPHA_5 = 1 - Math.exp(-1.0 / (5 * TICKS_PER_INTERVAL));
+    private static final double ALPHA_15 = 1 - Math.exp(-1.0 / (15 * TICKS_PER_INTERVAL));
+
+    private final LongAdder uncounted = new LongAdder();
+    private final AtomicLong lastTick = new AtomicLong();
+    private final long tickDuration;
+    private final long interval;
+    private final Clock clock;
+    //Rates in units per nanosecond, written only by the thread winning the tick
+    private volatile double rate1 = 0;
+    private volatile double rate5 = 0;
+    private volatile double rate15 = 0;
+    private volatile boolean initialized = false;
+    private volatile boolean hasCounts = false;
+
+    public EwmaRate(long interval) {
+        this(interval, Clock.SYSTEM);
+    }
+
+    /**
+     * Creates a new rate.
+     * @param interval The interval of the rate. (in milliseconds)
+     * @param clock The clock used to measure time.
+     */
+    public EwmaRate(long interval, @NonNull Clock clock) {
+        if(interval < 1)
+            throw new IllegalArgumentException("Interval must be greater than 0");
+        this.clock = Objects.requireNonNull(clock);
+        this.interval = interval;
+        this.tickDuration = Math.max(1, interval * 1_000_000 / TICKS_PER_INTERVAL);
+        reset();
+    }
+
+    public void count(long units){
+        tickIfNecessary();
+        uncounted.add(units);
+        if(!hasCounts)
+            hasCounts = true;
+    }
+
+    public void count(){
+        count(1);
+    }
+
+    /**
+     * Gets the average rate with a time constant of one interval. (in units per second)
+     * @return The rate, or -1 if nothing has been counted since creation or the last reset.
+     */
+    public double getOneIntervalRate(){
+        return getRate(1);
+    }
+
+    /**
+     * Gets the average rate with a time constant of five intervals. (in units per second)
+     * @return The rate, or -1 if nothing has been counted since creation or the last reset.
+     */
+    public double getFiveIntervalRate(){
+        return getRate(5);
+    }
+
+    /**
+     * Gets the average rate with a time constant of fifteen intervals. (in units per second)
+     * @return The rate, or -1 if nothing has been counted since creation or the last reset.
+     */
+    public double getFifteenIntervalRate(){
+        return getRate(15);
+    }
+
+    /**
+     * Checks if anything has been counted since creation or the last reset.
+     */
+    public boolean hasCounts(){
+        return hasCounts;
+    }
+
+    public void reset(){
+        synchronized (lastTick) {
+            lastTick.set(clock.nanoTime());
+            uncounted.reset();
+            rate1 = 0;
+            rate5 = 0;
+            rate15 = 0;
+            initialized = false;
+            hasCounts = false;
+        }
+    }
+
+    /**
+     * Gets the interval of the rate. (in milliseconds)
+     */
+    public long getInterval(){
+        return interval;
+    }
+
+    /**
+     * Gets the clock used to measure time.
+     */
+    @NonNull
+    public Clock getClock() {
+        return clock;
+    }
+
+    //Rate with the given time constant in intervals, in units per second
+    private double getRate(int intervals){
+        if(!hasCounts)
+            return -1;
+        tickIfNecessary();
+        double rate = intervals == 1 ? rate1 : intervals == 5 ? rate5 : rate15;
+        return rate * 1_000_000_000.0;
+    }
+
+    //Updates the averages for every tick that passed.
+    //Only the thread winning the CAS updates them, the others keep counting.
+    private void tickIfNecessary(){
+        long last = lastTick.get();
+        long age = clock.nanoTime() - last;
+        if(age < tickDuration)
+            return;
+        long ticks = age / tickDuration;
+        if(!lastTick.compareAndSet(last, last + ticks * tickDuration))
+            return;
+        synchronized (lastTick) {
+            //Units counted so far belong to the first tick, the rest of the ticks were idle
+            double instantRate = uncounted.sumThenReset() / (double) tickDuration;
+            if(initialized){
+                rate1 += ALPHA_1 * (instantRate - rate1);
+                rate5 += ALPHA_5 * (instantRate - rate5);
+                rate15 += ALPHA_15 * (instantRate - rate15);
+            } else {
+                rate1 = instantRate;
+                rate5 = instantRate;
+                rate15 = instantRate;
+                initialized = true;
+            }
+            if(ticks > 1){
+                //Decay of the idle ticks in closed form
+                rate1 *= Math.pow(1 - ALPHA_1, ticks - 1);
+                rate5 *= Math.pow(1 - ALPHA_5, ticks - 1);
+                rate15 *= Math.pow(1 - ALPHA_15, ticks - 1);
+            }
+        }
+    }
+
+}
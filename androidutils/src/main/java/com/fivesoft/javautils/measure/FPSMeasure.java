@@ -2,15 +2,82 @@ package com.fivesoft.javautils.measure;
 
 import android.os.SystemClock;
 
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.fivesoft.javautils.time.Clock;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Objects;
 
+/**
+ * Measures frames per second over the last frames.<br>
+ * Besides the average FPS, every frame time is recorded in a fixed-size {@link Histogram},
+ * so percentiles of the frame time and the number of slow, janky and frozen frames are available too.
+ * The frame statistics cover all frames since the last reset, use {@link #takeFrameStats()}
+ * to read them window by window.
+ */
 public class FPSMeasure {
 
+    /**
+     * Frames taking longer than this are counted as slow. (16.6 ms, one frame at 60 Hz)
+     */
+    public static final long SLOW_FRAME_NANOS = 16_600_000L;
+
+    /**
+     * Frames taking longer than this are counted as janky. (33 ms, two frames at 60 Hz)
+     */
+    public static final long JANKY_FRAME_NANOS = 33_000_000L;
+
+    /**
+     * Frames taking longer than this are counted as frozen. (700 ms)
+     */
+    public static final long FROZEN_FRAME_NANOS = 700_000_000L;
+
+    //Frame times above this are not told apart from each other, except for the maximum
+    private static final long MAX_TRACKED_FRAME_NANOS = 10_000_000_000L;
+
     private final long[] buffer;
     private volatile long lastFrameTime = -1;
     private volatile int bufferIndex = 0;
+    //Sum and number of the recorded deltas in the buffer, kept up to date on every frame
+    private long deltaSum = 0;
+    private int deltaCount = 0;
+    //Frame statistics since the last reset, guarded by this
+    private final Histogram frameTimes = new Histogram(MAX_TRACKED_FRAME_NANOS);
+    private long slowFrames = 0;
+    private long jankyFrames = 0;
+    private long frozenFrames = 0;
+    //Frames of the probe being collected for the listener, guarded by this
+    @Nullable
+    private ProbeListener probeListener;
+    private long probeStart = 0;
+    private int probeCount = 0;
+    private long probeSum = 0;
+    private long probeMin = 0;
+    private long probeMax = 0;
+    private final Clock clock;
 
     public FPSMeasure(int bufferSize) {
+        this(bufferSize, SystemClock::elapsedRealtimeNanos);
+    }
+
+    /**
+     * Creates a new measure.
+     * @param bufferSize The number of frames to average over.
+     * @param clock The clock used to measure frame times.
+     */
+    public FPSMeasure(int bufferSize, @NonNull Clock clock) {
+        this.clock = Objects.requireNonNull(clock);
         if(bufferSize < 1)
             throw new IllegalArgumentException("Buffer size must be greater than 0");
         this.buffer = new long[bufferSize];
@@ -18,7 +85,7 @@ public class FPSMeasure {
     }
 
     /**
-     * Resets the calculator buffer.<br>
+     * Resets the calculator buffer and the frame statistics.<br>
      * After calling this method, the next call to {@link #onFrame()} or {@link #getAverageFPS()} will return -1.
      */
 
@@ -26,6 +93,10 @@ public class FPSMeasure {
         lastFrameTime = -1;
         bufferIndex = 0;
         Arrays.fill(buffer, -1);
+        deltaSum = 0;
+        deltaCount = 0;
+        probeCount = 0;
+        resetFrameStats();
     }
 
     /**
@@ -33,41 +104,157 @@ public class FPSMeasure {
      * @return The time in nanoseconds since the last frame was rendered, or -1 if this is the first frame.
      */
 
-    public synchronized long onFrame(){
-        long now = SystemClock.elapsedRealtimeNanos();
-        long delta = now - lastFrameTime;
+    public long onFrame(){
+        return onFrame(clock.nanoTime());
+    }
+
+    /**
+     * Notifies calculator about frame rendered at the given time, for example the vsync time
+     * passed to a {@code Choreographer.FrameCallback}. Frame times should come from one clock.
+     * @param frameTimeNanos The time of the frame in nanoseconds.
+     * @return The time in nanoseconds since the last frame was rendered, or -1 if this is the first frame.
+     */
+
+    public synchronized long onFrame(long frameTimeNanos){
+        long now = frameTimeNanos;
+        long last = lastFrameTime;
         lastFrameTime = now;
 
-        if(delta < 0){
+        long delta = now - last;
+        if(last == -1 || delta < 0){
             return -1;
         }
 
         if(bufferIndex >= buffer.length)
             bufferIndex = 0;
 
+        long old = buffer[bufferIndex];
+        if(old >= 0){
+            deltaSum -= old;
+            deltaCount--;
+        }
         buffer[bufferIndex] = delta;
+        deltaSum += delta;
+        deltaCount++;
         bufferIndex++;
+
+        frameTimes.record(delta);
+        if(delta > SLOW_FRAME_NANOS)
+            slowFrames++;
+        if(delta > JANKY_FRAME_NANOS)
+            jankyFrames++;
+        if(delta > FROZEN_FRAME_NANOS)
+            frozenFrames++;
+        if(probeListener != null)
+            addToProbe(last, delta);
         return delta;
     }
 
     /**
-     * Returns the average FPS over the last buffer.
+     * Forgets the time of the last frame, so the next frame does not record a delta.
+     * Call this when frames are paused on purpose, so the pause is not counted as a long frame.
+     */
+
+    public synchronized void skipFrame(){
+        lastFrameTime = -1;
+    }
+
+    /**
+     * Returns the average FPS over the last buffer. Takes constant time regardless of the buffer size.
      * @return The average FPS, or -1 if no frames have been recorded.
      */
 
-    public double getAverageFPS(){
-        double sum = 0;
-        double count = 0;
-        for(long delta : buffer){
-            if(delta < 0)
-                continue;
-            sum += delta;
-            count++;
-        }
-        if(count == 0)
+    public synchronized double getAverageFPS(){
+        if(deltaCount == 0)
             return -1;
 
-        return 1_000_000_000.0 / (sum / count);
+        return 1_000_000_000.0 / ((double) deltaSum / deltaCount);
+    }
+
+    /**
+     * Gets the frame time below which the given percentage of frames fall.
+     * Covers all frames since the last reset. Does not allocate.
+     * @param percentile The percentile, in range [0, 100]. Example: 99 for p99.
+     * @return The frame time in nanoseconds, or -1 if no frames have been recorded.
+     */
+
+    public synchronized long getFrameTimeAtPercentile(double percentile){
+        return frameTimes.getValueAtPercentile(percentile);
+    }
+
+    /**
+     * Gets the longest frame time since the last reset.
+     * @return The frame time in nanoseconds, or -1 if no frames have been recorded.
+     */
+
+    public synchronized long getMaxFrameTime(){
+        return frameTimes.getMax();
+    }
+
+    /**
+     * Gets the number of frames longer than {@link #SLOW_FRAME_NANOS} since the last reset.
+     */
+
+    public synchronized long getSlowFrameCount(){
+        return slowFrames;
+    }
+
+    /**
+     * Gets the number of frames longer than {@link #JANKY_FRAME_NANOS} since the last reset.
+     */
+
+    public synchronized long getJankyFrameCount(){
+        return jankyFrames;
+    }
+
+    /**
+     * Gets the number of frames longer than {@link #FROZEN_FRAME_NANOS} since the last reset.
+     */
+
+    public synchronized long getFrozenFrameCount(){
+        return frozenFrames;
+    }
+
+    /**
+     * Takes a copy of the frame statistics since the last reset.
+     */
+
+    @NonNull
+    public synchronized FrameStats getFrameStats(){
+        return new FrameStats(frameTimes.snapshot(), slowFrames, jankyFrames, frozenFrames);
+    }
+
+    /**
+     * Takes a copy of the frame statistics and resets them, in one step.
+     * Calling this periodically gives the statistics of every period with no frame lost between them.
+     */
+
+    @NonNull
+    public synchronized FrameStats takeFrameStats(){
+        FrameStats stats = getFrameStats();
+        resetFrameStats();
+        return stats;
+    }
+
+    /**
+     * Resets the frame statistics only. The average FPS is not affected.
+     */
+
+    public synchronized void resetFrameStats(){
+        frameTimes.reset();
+        slowFrames = 0;
+        jankyFrames = 0;
+        frozenFrames = 0;
+    }
+
+    /**
+     * Sets the listener notified every time a full buffer of frames has been recorded,
+     * with the frame times of those frames in nanoseconds as the samples of the probe.
+     * @param listener The listener, or null to remove it.
+     */
+    public synchronized void setProbeListener(@Nullable ProbeListener listener){
+        this.probeListener = listener;
+        probeCount = 0;
     }
 
     /**
@@ -78,4 +265,212 @@ public class FPSMeasure {
         return buffer.length;
     }
 
+    //Adds a frame to the probe of the listener, closing the probe when it holds a full buffer
+    private void addToProbe(long frameStart, long delta){
+        if(probeCount == 0){
+            probeStart = frameStart;
+            probeSum = 0;
+            probeMin = delta;
+            probeMax = delta;
+        } else {
+            if(delta < probeMin)
+                probeMin = delta;
+            if(delta > probeMax)
+                probeMax = delta;
+        }
+        probeCount++;
+        probeSum += delta;
+        if(probeCount == buffer.length){
+            probeCount = 0;
+            probeListener.onProbeClosed(probeStart, buffer.length, probeSum, probeMin, probeMax);
+        }
+    }
+
+    /**
+     * An immutable copy of the frame statistics of a {@link FPSMeasure}.<br>
+     * Frame statistics can be merged, for example across processes, and encoded in a compact binary form.
+     */
+    public static final class FrameStats {
+
+        //Version of the serialized format
+        private static final int FORMAT_VERSION = 1;
+
+        private final Histogram.Snapshot frameTimes;
+        private final long slowFrames;
+        private final long jankyFrames;
+        private final long frozenFrames;
+
+        FrameStats(@NonNull Histogram.Snapshot frameTimes, long slowFrames, long jankyFrames, long frozenFrames) {
+            this.frameTimes = frameTimes;
+            this.slowFrames = slowFrames;
+            this.jankyFrames = jankyFrames;
+            this.frozenFrames = frozenFrames;
+        }
+
+        /**
+         * Gets the number of recorded frames.
+         */
+        public long getFrameCount() {
+            return frameTimes.getCount();
+        }
+
+        /**
+         * Gets the frame time below which the given percentage of frames fall.
+         * @param percentile The percentile, in range [0, 100]. Example: 99 for p99.
+         * @return The frame time in nanoseconds, or -1 if no frames have been recorded.
+         */
+        public long getFrameTimeAtPercentile(double percentile) {
+            return frameTimes.getValueAtPercentile(percentile);
+        }
+
+        /**
+         * Gets the mean frame time in nanoseconds, or -1 if no frames have been recorded.
+         */
+        public double getMeanFrameTime() {
+            return frameTimes.getMean();
+        }
+
+        /**
+         * Gets the longest frame time in nanoseconds, or -1 if no frames have been recorded.
+         */
+        public long getMaxFrameTime() {
+            return frameTimes.getMax();
+        }
+
+        /**
+         * Gets the number of frames longer than {@link #SLOW_FRAME_NANOS}.
+         */
+        public long getSlowFrameCount() {
+            return slowFrames;
+        }
+
+        /**
+         * Gets the number of frames longer than {@link #JANKY_FRAME_NANOS}.
+         */
+        public long getJankyFrameCount() {
+            return jankyFrames;
+        }
+
+        /**
+         * Gets the number of frames longer than {@link #FROZEN_FRAME_NANOS}.
+         */
+        public long getFrozenFrameCount() {
+            return frozenFrames;
+        }
+
+        /**
+         * Gets the frame time histogram.
+         */
+        @NonNull
+        public Histogram.Snapshot getFrameTimes() {
+            return frameTimes;
+        }
+
+        /**
+         * Gets the average FPS over all recorded frames, or -1 if no frames have been recorded.
+         */
+        public double getAverageFPS() {
+            double mean = frameTimes.getMean();
+            return mean <= 0 ? -1 : 1_000_000_000.0 / mean;
+        }
+
+        /**
+         * Merges these statistics with other ones.
+         * @param other The other statistics.
+         * @return New statistics holding the frames of both.
+         */
+        @NonNull
+        public FrameStats merge(@NonNull FrameStats other){
+            return new FrameStats(frameTimes.merge(other.frameTimes), slowFrames + other.slowFrames,
+                    jankyFrames + other.jankyFrames, frozenFrames + other.frozenFrames);
+        }
+
+        /**
+         * Merges many statistics at once, in time linear in the total number of histogram buckets.
+         * @param stats The statistics.
+         * @return New statistics holding the frames of all of them, empty if there are none.
+         */
+        @NonNull
+        public static FrameStats merge(@NonNull Collection<FrameStats> stats){
+            List<Histogram.Snapshot> histograms = new ArrayList<>(stats.size());
+            long slow = 0;
+            long janky = 0;
+            long frozen = 0;
+            for (FrameStats s : stats) {
+                histograms.add(s.frameTimes);
+                slow += s.slowFrames;
+                janky += s.jankyFrames;
+                frozen += s.frozenFrames;
+            }
+            return new FrameStats(Histogram.Snapshot.merge(histograms), slow, janky, frozen);
+        }
+
+        /**
+         * Writes the statistics in the compact binary form.
+         * @param out The destination.
+         * @throws IOException If writing fails.
+         */
+        public void writeTo(@NonNull OutputStream out) throws IOException {
+            out.write(FORMAT_VERSION);
+            Varint.writeUnsigned(out, slowFrames);
+            Varint.writeUnsigned(out, jankyFrames);
+            Varint.writeUnsigned(out, frozenFrames);
+            frameTimes.writeTo(out);
+        }
+
+        /**
+         * Encodes the statistics in the compact binary form.
+         */
+        @NonNull
+        public byte[] toByteArray(){
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            try {
+                writeTo(out);
+            } catch (IOException e){
+                //ByteArrayOutputStream does not throw
+                throw new UncheckedIOException(e);
+            }
+            return out.toByteArray();
+        }
+
+        /**
+         * Reads statistics written by {@link #writeTo(OutputStream)}.
+         * @param in The source.
+         * @return The statistics.
+         * @throws IOException If reading fails or the data is malformed.
+         */
+        @NonNull
+        public static FrameStats readFrom(@NonNull InputStream in) throws IOException {
+            Varint.readVersion(in, FORMAT_VERSION);
+            long slow = Varint.readUnsigned(in);
+            long janky = Varint.readUnsigned(in);
+            long frozen = Varint.readUnsigned(in);
+            return new FrameStats(Histogram.Snapshot.readFrom(in), slow, janky, frozen);
+        }
+
+        /**
+         * Decodes statistics encoded by {@link #toByteArray()}.
+         * @param bytes The encoded statistics.
+         * @return The statistics.
+         * @throws IOException If the data is malformed.
+         */
+        @NonNull
+        public static FrameStats fromByteArray(@NonNull byte[] bytes) throws IOException {
+            return readFrom(new ByteArrayInputStream(bytes));
+        }
+
+        @NonNull
+        @Override
+        public String toString() {
+            return "FPSMeasure.FrameStats{frames=" + getFrameCount() +
+                    ", p50=" + getFrameTimeAtPercentile(50) +
+                    ", p90=" + getFrameTimeAtPercentile(90) +
+                    ", p99=" + getFrameTimeAtPercentile(99) +
+                    ", max=" + getMaxFrameTime() +
+                    ", slow=" + slowFrames +
+                    ", janky=" + jankyFrames +
+                    ", frozen=" + frozenFrames + "}";
+        }
+    }
+
 }
@@ -0,0 +1,162 @@
+package com.fivesoft.javautils.measure;
+
+import androidx.annotation.NonNull;
+
+import java.io.IOException;
+
+/**
+ * Formats doubles with a fixed number of decimal places without allocating,
+ * for readable values refreshed every frame. Rounds half up on the decimal form of the value,
+ * like {@code String.format("%.2f")}, so 1.005 is written as 1.01 although the double
+ * is slightly below it. From 2<sup>48</sup> scaled, where doubles have no digits to spare, the last digit
+ * may differ from it by one. Values whose scaled magnitude does not fit a long are written in
+ * the {@link Double#toString(double)} form, which allocates.
+ */
+final class FixedPointFormat {
+
+    private static final long[] POWERS_OF_TEN = {
+            1L, 10L, 100L, 1_000L, 10_000L, 100_000L, 1_000_000L, 10_000_000L, 100_000_000L, 1_000_000_000L
+    };
+
+    //Below this, the doubles are at least 16 times finer than a tie, so the double nearest to a tie
+    //is written as the tie in the shortest decimal form
+    private static final double EXACT_TIE_LIMIT = 1L << 48;
+
+    private FixedPointFormat() {
+    }
+
+    /**
+     * Appends a value with the given number of decimal places.
+     * @param out The destination.
+     * @param value The value.
+     * @param decimals The number of decimal places, in range [0, 9].
+     */
+    static void append(@NonNull Appendable out, double value, int decimals) throws IOException {
+        if(Double.isNaN(value) || Double.isInfinite(value)){
+            out.append(special(value));
+            return;
+        }
+        long scale = POWERS_OF_TEN[decimals];
+        double magnitude = Math.abs(value);
+        if(magnitude * scale >= Long.MAX_VALUE / 2){
+            out.append(Double.toString(value));
+            return;
+        }
+        long scaled = roundHalfUp(magnitude, scale);
+        if(isNegative(value))
+            out.append('-');
+        long integer = scaled / scale;
+        for (long divisor = highestPowerOfTen(integer); divisor > 0; divisor /= 10) {
+            out.append((char) ('0' + integer / divisor % 10));
+        }
+        if(decimals > 0){
+            out.append('.');
+            long fraction = scaled % scale;
+            for (long divisor = scale / 10; divisor > 0; divisor /= 10) {
+                out.append((char) ('0' + fraction / divisor % 10));
+            }
+        }
+    }
+
+    /**
+     * Appends a value with the given number of decimal places.
+     * @param sb The destination.
+     * @param value The value.
+     * @param decimals The number of decimal places, in range [0, 9].
+     */
+    static void append(@NonNull StringBuilder sb, double value, int decimals){
+        try {
+            append((Appendable) sb, value, decimals);
+        } catch (IOException e){
+            //StringBuilder does not throw
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Writes a value with the given number of decimal places into a char array.
+     * @param dst The destination.
+     * @param offset The index of the first char to write.
+     * @param value The value.
+     * @param decimals The number of decimal places, in range [0, 9].
+     * @return The index after the last written char.
+     * @throws IndexOutOfBoundsException If the array is too small.
+     */
+    static int write(@NonNull char[] dst, int offset, double value, int decimals){
+        if(Double.isNaN(value) || Double.isInfinite(value))
+            return write(dst, offset, special(value));
+        long scale = POWERS_OF_TEN[decimals];
+        double magnitude = Math.abs(value);
+        if(magnitude * scale >= Long.MAX_VALUE / 2)
+            return write(dst, offset, Double.toString(value));
+        long scaled = roundHalfUp(magnitude, scale);
+        int i = offset;
+        if(isNegative(value))
+            dst[i++] = '-';
+        long integer = scaled / scale;
+        for (long divisor = highestPowerOfTen(integer); divisor > 0; divisor /= 10) {
+            dst[i++] = (char) ('0' + integer / divisor % 10);
+        }
+        if(decimals > 0){
+            dst[i++] = '.';
+            long fraction = scaled % scale;
+            for (long divisor = scale / 10; divisor > 0; divisor /= 10) {
+                dst[i++] = (char) ('0' + fraction / divisor % 10);
+            }
+        }
+        return i;
+    }
+
+    /**
+     * Writes a string into a char array.
+     * @return The index after the last written char.
+     * @throws IndexOutOfBoundsException If the array is too small.
+     */
+    static int write(@NonNull char[] dst, int offset, @NonNull String s){
+        if(offset < 0 || offset + s.length() > dst.length)
+            throw new IndexOutOfBoundsException("Not enough space for " + s.length() + " chars at " + offset);
+        s.getChars(0, s.length(), dst, offset);
+        return offset + s.length();
+    }
+
+    @NonNull
+    private static String special(double value){
+        return Double.isNaN(value) ? "NaN" : value > 0 ? "Infinity" : "-Infinity";
+    }
+
+    //Rounds magnitude * scale half up. The double nearest to a tie like 1.005 may lie on either side of it,
+    //so the value is compared with the double nearest to each tie, which is a tie when they are equal.
+    private static long roundHalfUp(double magnitude, long scale){
+        double product = magnitude * scale;
+        long scaled = (long) product;
+        if(product >= EXACT_TIE_LIMIT){
+            //Too coarse for exact ties, round the product
+            return product - scaled >= 0.5 ? scaled + 1 : scaled;
+        }
+        //The product may be rounded across an integer, the comparisons below correct it
+        while(scaled > 0 && magnitude < tie(scaled - 1, scale))
+            scaled--;
+        while(magnitude >= tie(scaled, scale))
+            scaled++;
+        return scaled;
+    }
+
+    //Double nearest to (scaled + 0.5) / scale, the division of exact integers is correctly rounded
+    private static double tie(long scaled, long scale){
+        return (2 * scaled + 1) / (2.0 * scale);
+    }
+
+    //Includes -0.0 and values rounded to zero, written as -0.00 like String.format does
+    private static boolean isNegative(double value){
+        return Double.doubleToRawLongBits(value) < 0;
+    }
+
+    //Highest power of ten not greater than the value, 1 for 0
+    private static long highestPowerOfTen(long value){
+        long power = 1;
+        while(power <= value / 10)
+            power *= 10;
+        return power;
+    }
+
+}
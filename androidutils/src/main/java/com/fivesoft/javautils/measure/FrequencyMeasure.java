@@ -1,11 +1,90 @@
 package com.fivesoft.javautils.measure;
 
-import java.util.Locale;
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
 
+import com.fivesoft.javautils.time.Clock;
+
+import java.io.IOException;
+
+/**
+ * Measures frequency over a sliding interval.<br>
+ * Instances created with {@link #ewma(long)} work in EWMA mode: instead of a buffer of probes
+ * they keep an {@link EwmaRate}, with constant memory and 1, 5 and 15 interval averages.
+ * They close no probes, so they cannot feed a {@link ProbeListener}.
+ */
 public class FrequencyMeasure extends CountMeasure {
 
+    static final String NOT_AVAILABLE = "N/A";
+    private static final double[] FREQUENCY_SCALES = {0.001, 1, 1_000, 1_000_000};
+    private static final String[] FREQUENCY_UNITS = {" mHz", " Hz", " KHz", " MHz"};
+
+    @Nullable
+    private final EwmaRate ewma;
+
     public FrequencyMeasure(int bufferSize, long interval) {
         super(bufferSize, interval);
+        this.ewma = null;
+    }
+
+    public FrequencyMeasure(int bufferSize, long interval, @NonNull Clock clock) {
+        super(bufferSize, interval, clock);
+        this.ewma = null;
+    }
+
+    //Constructor of the EWMA mode, the buffer is not used
+    FrequencyMeasure(@NonNull EwmaRate ewma) {
+        super(1, ewma.getInterval(), ewma.getClock());
+        this.ewma = ewma;
+    }
+
+    /**
+     * Creates a measure in EWMA mode.
+     * {@link #getFrequency()} returns the average with a time constant of one interval.
+     * @param interval The interval of the measure. (in milliseconds)
+     */
+    @NonNull
+    public static FrequencyMeasure ewma(long interval){
+        return ewma(interval, Clock.SYSTEM);
+    }
+
+    /**
+     * Creates a measure in EWMA mode.
+     * @param interval The interval of the measure. (in milliseconds)
+     * @param clock The clock used to measure time.
+     * @see #ewma(long)
+     */
+    @NonNull
+    public static FrequencyMeasure ewma(long interval, @NonNull Clock clock){
+        return new FrequencyMeasure(new EwmaRate(interval, clock));
+    }
+
+    @Override
+    public void count(long units) {
+        if(ewma != null)
+            ewma.count(units);
+        else
+            super.count(units);
+    }
+
+    /**
+     * Gets count of the last interval. In EWMA mode, the count is estimated from the average frequency.
+     * @return The count, or -1 if nothing has been counted since creation or the last reset.
+     */
+    @Override
+    public long getCount() {
+        if(ewma == null)
+            return super.getCount();
+        double rate = ewma.getOneIntervalRate();
+        return rate < 0 ? -1 : Math.round(rate * getInterval() / 1000.0);
+    }
+
+    @Override
+    public void reset() {
+        super.reset();
+        //Called by the super constructor before the field is set
+        if(ewma != null)
+            ewma.reset();
     }
 
     /**
@@ -13,25 +92,115 @@ public class FrequencyMeasure extends CountMeasure {
      * @return The average frequency, or -1 if no beats have been recorded.
      */
     public double getFrequency(){
-        return getCount() / (double) getInterval() * 1000.0;
+        if(ewma != null)
+            return ewma.getOneIntervalRate();
+        long count = getCount();
+        if(count < 0)
+            return -1;
+        return count / (double) getInterval() * 1000.0;
+    }
+
+    /**
+     * {@inheritDoc}
+     * @throws UnsupportedOperationException If the measure is in EWMA mode, which has no probes.
+     */
+    @Override
+    public void setProbeListener(@Nullable ProbeListener listener) {
+        if(ewma != null && listener != null)
+            throw new UnsupportedOperationException("A measure in EWMA mode has no probes");
+        super.setProbeListener(listener);
     }
 
+    /**
+     * Gets the EWMA rate of a measure in EWMA mode, with the 5 and 15 interval averages.
+     * @return The rate, or null if the measure is not in EWMA mode.
+     */
+    @Nullable
+    public EwmaRate getEwma() {
+        return ewma;
+    }
+
+    /**
+     * Gets the average frequency over the last interval in a human readable format.<br>
+     * Example: 123.45 Hz
+     * @return The average frequency, or N/A if no beats have been recorded.
+     */
     public String getReadableFrequency(){
-        double frequency = getFrequency();
-        if(frequency == -1) {
-            return "N/A";
+        return appendReadableFrequency(new StringBuilder(16)).toString();
+    }
+
+    /**
+     * Appends the average frequency in a human readable format, without allocating.
+     * @param sb The destination.
+     * @return The destination.
+     * @see #getReadableFrequency()
+     */
+    @NonNull
+    public StringBuilder appendReadableFrequency(@NonNull StringBuilder sb){
+        try {
+            appendReadableFrequency((Appendable) sb);
+        } catch (IOException e){
+            //StringBuilder does not throw
+            throw new IllegalStateException(e);
         }
-        else {
-            if(frequency < 1){
-                return String.format(Locale.US, "%.2f mHz", frequency * 1000);
-            } else if(frequency < 1000){
-                return String.format(Locale.US, "%.2f Hz", frequency);
-            } else if(frequency < 1000000){
-                return String.format(Locale.US, "%.2f KHz", frequency / 1000);
-            } else {
-                return String.format(Locale.US, "%.2f MHz", frequency / 1000000);
-            }
+        return sb;
+    }
+
+    /**
+     * Appends the average frequency in a human readable format, without allocating.
+     * @param out The destination.
+     * @throws IOException If appending fails.
+     * @see #getReadableFrequency()
+     */
+    public void appendReadableFrequency(@NonNull Appendable out) throws IOException {
+        appendReadable(out, getFrequency(), FREQUENCY_SCALES, FREQUENCY_UNITS);
+    }
+
+    /**
+     * Writes the average frequency in a human readable format into a char array, without allocating.
+     * @param dst The destination.
+     * @param offset The index of the first char to write.
+     * @return The number of written chars.
+     * @throws IndexOutOfBoundsException If the array is too small.
+     * @see #getReadableFrequency()
+     */
+    public int writeReadableFrequency(@NonNull char[] dst, int offset){
+        return writeReadable(dst, offset, getFrequency(), FREQUENCY_SCALES, FREQUENCY_UNITS) - offset;
+    }
+
+    //Appends the value scaled to the largest unit it reaches, with 2 decimal places
+    static void appendReadable(@NonNull Appendable out, double value,
+                               @NonNull double[] scales, @NonNull String[] units) throws IOException {
+        if(value == -1){
+            out.append(NOT_AVAILABLE);
+            return;
         }
+        int unit = unitOf(value, scales);
+        FixedPointFormat.append(out, inUnit(value, scales[unit]), 2);
+        out.append(units[unit]);
+    }
+
+    //Writes the value scaled to the largest unit it reaches, with 2 decimal places
+    static int writeReadable(@NonNull char[] dst, int offset, double value,
+                             @NonNull double[] scales, @NonNull String[] units){
+        if(value == -1)
+            return FixedPointFormat.write(dst, offset, NOT_AVAILABLE);
+        int unit = unitOf(value, scales);
+        offset = FixedPointFormat.write(dst, offset, inUnit(value, scales[unit]), 2);
+        return FixedPointFormat.write(dst, offset, units[unit]);
+    }
+
+    //Multiplies by the inverse of fractional scales, 0.999995 / 0.001 is not 999.995 but 999.99499...
+    private static double inUnit(double value, double scale){
+        return scale < 1 ? value * (1 / scale) : value / scale;
+    }
+
+    //Largest unit the value reaches, NaN reaches all of them like in the former String.format code
+    private static int unitOf(double value, @NonNull double[] scales){
+        int unit = 0;
+        while(unit + 1 < scales.length && !(value < scales[unit + 1]))
+            unit++;
+        return unit;
     }
 
 }
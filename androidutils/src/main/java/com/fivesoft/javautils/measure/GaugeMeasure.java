@@ -0,0 +1,316 @@
+package com.fivesoft.javautils.measure;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.fivesoft.javautils.time.Clock;
+
+import java.util.Arrays;
+import java.util.Objects;
+
+/**
+ * Tracks a sampled value, for example buffer occupancy or jitter, over a sliding interval.<br>
+ * The interval is split into probes like in {@link CountMeasure}. Every probe keeps the number,
+ * sum, minimum and maximum of its samples and the sum of squared deviations from its mean
+ * (Welford), in primitive arrays. Moving to the next probe, at most once per probe duration,
+ * merges the closed probes inside the interval again (Chan et al.), so no error builds up from adding
+ * and subtracting probes and the variance does not suffer from cancellation. The minimum and maximum
+ * come from monotonic deques of the closed probes, so every read takes constant time regardless
+ * of the buffer size.<br>
+ * All methods are synchronized.
+ */
+public class GaugeMeasure {
+
+    //Closed probes, a probe number of -1 marks an empty slot
+    private final long[] numbers;
+    private final long[] counts;
+    private final double[] sums;
+    //Sums of squared deviations from the mean of the probe
+    private final double[] deviations;
+    private final double[] mins;
+    private final double[] maxs;
+    //Probe numbers with increasing minimums and decreasing maximums, as rings
+    private final long[] minDeque;
+    private final long[] maxDeque;
+    private int minHead = 0;
+    private int minSize = 0;
+    private int maxHead = 0;
+    private int maxSize = 0;
+    //Statistics of the closed probes inside the interval, merged on every rotation
+    private long closedCount = 0;
+    private double closedSum = 0;
+    private double closedDeviation = 0;
+    //The probe being recorded into
+    private long currentNumber = 0;
+    private long currentCount = 0;
+    private double currentSum = 0;
+    private double currentDeviation = 0;
+    private double currentMin = Double.NaN;
+    private double currentMax = Double.NaN;
+
+    @Nullable
+    private ProbeListener probeListener;
+    private final long probeDuration;
+    private final long interval;
+    private long origin;
+    private final Clock clock;
+
+    public GaugeMeasure(int bufferSize, long interval) {
+        this(bufferSize, interval, Clock.SYSTEM);
+    }
+
+    /**
+     * Creates a new measure.
+     * @param bufferSize The number of probes the interval is split into.
+     * @param interval The interval of the measure. (in milliseconds)
+     * @param clock The clock used to measure time.
+     */
+    public GaugeMeasure(int bufferSize, long interval, @NonNull Clock clock) {
+        if(bufferSize < 1)
+            throw new IllegalArgumentException("Buffer size must be greater than 0");
+        if(interval < 1)
+            throw new IllegalArgumentException("Interval must be greater than 0");
+        this.clock = Objects.requireNonNull(clock);
+        this.numbers = new long[bufferSize];
+        this.counts = new long[bufferSize];
+        this.sums = new double[bufferSize];
+        this.deviations = new double[bufferSize];
+        this.mins = new double[bufferSize];
+        this.maxs = new double[bufferSize];
+        this.minDeque = new long[bufferSize];
+        this.maxDeque = new long[bufferSize];
+        this.probeDuration = Probes.duration(interval, bufferSize);
+        this.interval = interval;
+        reset();
+    }
+
+    /**
+     * Records a sample. NaN values are ignored.
+     * @param value The value.
+     */
+    public synchronized void record(double value){
+        if(Double.isNaN(value))
+            return;
+        rotateTo(clock.nanoTime());
+        if(currentCount == 0){
+            currentMin = value;
+            currentMax = value;
+        } else {
+            if(value < currentMin)
+                currentMin = value;
+            if(value > currentMax)
+                currentMax = value;
+        }
+        //Welford's update of the squared deviations
+        double oldMean = currentCount == 0 ? 0 : currentSum / currentCount;
+        currentCount++;
+        currentSum += value;
+        currentDeviation += (value - oldMean) * (value - currentSum / currentCount);
+    }
+
+    /**
+     * Gets the number of samples of the last interval.
+     */
+    public synchronized long getCount(){
+        rotateTo(clock.nanoTime());
+        return closedCount + currentCount;
+    }
+
+    /**
+     * Gets the lowest sample of the last interval, or NaN if there are no samples.
+     */
+    public synchronized double getMin(){
+        rotateTo(clock.nanoTime());
+        double min = minSize == 0 ? Double.NaN : mins[slotOf(minDeque[minHead])];
+        if(currentCount > 0 && (Double.isNaN(min) || currentMin < min))
+            min = currentMin;
+        return min;
+    }
+
+    /**
+     * Gets the highest sample of the last interval, or NaN if there are no samples.
+     */
+    public synchronized double getMax(){
+        rotateTo(clock.nanoTime());
+        double max = maxSize == 0 ? Double.NaN : maxs[slotOf(maxDeque[maxHead])];
+        if(currentCount > 0 && (Double.isNaN(max) || currentMax > max))
+            max = currentMax;
+        return max;
+    }
+
+    /**
+     * Gets the mean of the samples of the last interval, or NaN if there are no samples.
+     */
+    public synchronized double getMean(){
+        rotateTo(clock.nanoTime());
+        long count = closedCount + currentCount;
+        return count == 0 ? Double.NaN : (closedSum + currentSum) / count;
+    }
+
+    /**
+     * Gets the population standard deviation of the samples of the last interval,
+     * or NaN if there are no samples.
+     */
+    public synchronized double getStandardDeviation(){
+        rotateTo(clock.nanoTime());
+        long count = closedCount + currentCount;
+        if(count == 0)
+            return Double.NaN;
+        double deviation = merge(closedCount, closedSum, closedDeviation, currentCount, currentSum, currentDeviation);
+        return Math.sqrt(Math.max(0, deviation / count));
+    }
+
+    public synchronized void reset(){
+        origin = clock.nanoTime();
+        Arrays.fill(numbers, -1);
+        minHead = 0;
+        minSize = 0;
+        maxHead = 0;
+        maxSize = 0;
+        closedCount = 0;
+        closedSum = 0;
+        closedDeviation = 0;
+        currentNumber = 0;
+        clearCurrent();
+    }
+
+    /**
+     * Moves the measure to the current time, so a probe whose time has passed is closed
+     * even if no value has been recorded since. See {@link ProbeListener}.
+     */
+    public synchronized void flush(){
+        rotateTo(clock.nanoTime());
+    }
+
+    /**
+     * Sets the listener notified with the statistics of every closed probe.
+     * Probes with no samples are not reported.
+     * @param listener The listener, or null to remove it.
+     */
+    public synchronized void setProbeListener(@Nullable ProbeListener listener) {
+        this.probeListener = listener;
+    }
+
+    /**
+     * Gets size of the buffer.
+     */
+    public int getBufferSize() {
+        return numbers.length;
+    }
+
+    /**
+     * Gets the interval of the measure. (in milliseconds)
+     */
+    public long getInterval(){
+        return interval;
+    }
+
+    /**
+     * Gets the clock used to measure time.
+     */
+    @NonNull
+    public Clock getClock() {
+        return clock;
+    }
+
+    //Moves to the probe of the given time, closing the current probe and expiring the old ones
+    private void rotateTo(long nanoTime){
+        long number = Probes.numberAt(nanoTime, origin, probeDuration);
+        if(number <= currentNumber)
+            return;
+        int size = numbers.length;
+        if(currentCount > 0 && probeListener != null)
+            probeListener.onProbeClosed(origin + currentNumber * probeDuration,
+                    currentCount, currentSum, currentMin, currentMax);
+        //Oldest probe number still inside the interval of the new probe
+        long oldest = number - size + 1;
+        if(currentNumber < oldest){
+            //Every stored probe left the interval
+            Arrays.fill(numbers, -1);
+            minSize = 0;
+            maxSize = 0;
+        } else {
+            //The ones before currentNumber - size + 1 already left in earlier rotations
+            for (long n = Math.max(0, currentNumber - size + 1); n < oldest; n++) {
+                int slot = slotOf(n);
+                if(numbers[slot] == n)
+                    numbers[slot] = -1;
+            }
+            while(minSize > 0 && minDeque[minHead] < oldest){
+                minHead = (minHead + 1) % size;
+                minSize--;
+            }
+            while(maxSize > 0 && maxDeque[maxHead] < oldest){
+                maxHead = (maxHead + 1) % size;
+                maxSize--;
+            }
+            if(currentCount > 0)
+                closeCurrent();
+        }
+        mergeClosed();
+        currentNumber = number;
+        clearCurrent();
+    }
+
+    //Merges the statistics of the closed probes inside the interval
+    private void mergeClosed(){
+        long count = 0;
+        double sum = 0;
+        double deviation = 0;
+        for (int slot = 0; slot < numbers.length; slot++) {
+            if(numbers[slot] == -1)
+                continue;
+            deviation = merge(count, sum, deviation, counts[slot], sums[slot], deviations[slot]);
+            count += counts[slot];
+            sum += sums[slot];
+        }
+        closedCount = count;
+        closedSum = sum;
+        closedDeviation = deviation;
+    }
+
+    //Sum of squared deviations of two groups of samples together (Chan et al.)
+    private static double merge(long countA, double sumA, double deviationA,
+                                long countB, double sumB, double deviationB){
+        if(countA == 0)
+            return deviationB;
+        if(countB == 0)
+            return deviationA;
+        double delta = sumB / countB - sumA / countA;
+        return deviationA + deviationB + delta * delta * ((double) countA * countB / (countA + countB));
+    }
+
+    //Stores the current probe and pushes it to the deques
+    private void closeCurrent(){
+        int size = numbers.length;
+        int slot = slotOf(currentNumber);
+        numbers[slot] = currentNumber;
+        counts[slot] = currentCount;
+        sums[slot] = currentSum;
+        deviations[slot] = currentDeviation;
+        mins[slot] = currentMin;
+        maxs[slot] = currentMax;
+        //Probes with a higher minimum than the new one can never be the minimum again
+        while(minSize > 0 && mins[slotOf(minDeque[(minHead + minSize - 1) % size])] >= currentMin)
+            minSize--;
+        minDeque[(minHead + minSize) % size] = currentNumber;
+        minSize++;
+        while(maxSize > 0 && maxs[slotOf(maxDeque[(maxHead + maxSize - 1) % size])] <= currentMax)
+            maxSize--;
+        maxDeque[(maxHead + maxSize) % size] = currentNumber;
+        maxSize++;
+    }
+
+    private void clearCurrent(){
+        currentCount = 0;
+        currentSum = 0;
+        currentDeviation = 0;
+        currentMin = Double.NaN;
+        currentMax = Double.NaN;
+    }
+
+    private int slotOf(long number){
+        return (int) (number % numbers.length);
+    }
+
+}
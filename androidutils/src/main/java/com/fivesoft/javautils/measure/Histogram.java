@@ -0,0 +1,452 @@
+package com.fivesoft.javautils.measure;
+
+import androidx.annotation.NonNull;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.util.Collection;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A histogram of non-negative long values, for example durations in nanoseconds.<br>
+ * Values are counted in log-linear buckets: every power of two is split into 16 linear sub-buckets,
+ * so the relative error of a reported value is below 6.25% while the memory stays fixed.
+ * Values greater than the highest trackable value are counted in the last bucket,
+ * the maximum is always tracked exactly.<br>
+ * Recording is lock-free and does not allocate, so it is safe to call from many threads
+ * and from hot paths.
+ */
+public final class Histogram {
+
+    private static final int SUB_BUCKET_BITS = 4;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    //Buckets needed for the whole long range
+    private static final int MAX_BUCKETS = bucketIndex(Long.MAX_VALUE) + 1;
+    //Version of the serialized snapshot format
+    private static final int FORMAT_VERSION = 1;
+
+    private final AtomicLongArray counts;
+    private final long highestTrackableValue;
+    private final AtomicLong count = new AtomicLong(0);
+    private final AtomicLong sum = new AtomicLong(0);
+    private final AtomicLong max = new AtomicLong(-1);
+    private final AtomicLong min = new AtomicLong(Long.MAX_VALUE);
+
+    /**
+     * Creates a new histogram.
+     * @param highestTrackableValue The highest value that can be told apart from greater values.
+     *                              Determines the number of buckets. Must be greater than 0.
+     */
+    public Histogram(long highestTrackableValue) {
+        if(highestTrackableValue < 1)
+            throw new IllegalArgumentException("Highest trackable value must be greater than 0");
+        this.highestTrackableValue = highestTrackableValue;
+        this.counts = new AtomicLongArray(bucketIndex(highestTrackableValue) + 1);
+    }
+
+    /**
+     * Records a value. Negative values are recorded as 0.
+     * @param value The value.
+     */
+    public void record(long value){
+        if(value < 0)
+            value = 0;
+        counts.incrementAndGet(Math.min(bucketIndex(value), counts.length() - 1));
+        count.incrementAndGet();
+        sum.addAndGet(value);
+        long m = max.get();
+        while(value > m && !max.compareAndSet(m, value))
+            m = max.get();
+        m = min.get();
+        while(value < m && !min.compareAndSet(m, value))
+            m = min.get();
+    }
+
+    /**
+     * Clears all recorded values.<br>
+     * Values recorded concurrently with the reset may be partially kept.
+     */
+    public void reset(){
+        for (int i = 0; i < counts.length(); i++) {
+            counts.set(i, 0);
+        }
+        count.set(0);
+        sum.set(0);
+        max.set(-1);
+        min.set(Long.MAX_VALUE);
+    }
+
+    /**
+     * Gets the number of recorded values.
+     */
+    public long getCount(){
+        return count.get();
+    }
+
+    /**
+     * Gets the highest recorded value, or -1 if no values have been recorded.
+     */
+    public long getMax(){
+        return max.get();
+    }
+
+    /**
+     * Gets the lowest recorded value, or -1 if no values have been recorded.
+     */
+    public long getMin(){
+        long m = min.get();
+        return m == Long.MAX_VALUE ? -1 : m;
+    }
+
+    /**
+     * Gets the mean of the recorded values, or -1 if no values have been recorded.
+     */
+    public double getMean(){
+        long c = count.get();
+        return c == 0 ? -1 : sum.get() / (double) c;
+    }
+
+    /**
+     * Gets the value below which the given percentage of recorded values fall.
+     * Does not allocate.
+     * @param percentile The percentile, in range [0, 100]. Example: 99 for p99.
+     * @return The value at the percentile, or -1 if no values have been recorded.
+     */
+    public long getValueAtPercentile(double percentile){
+        long total = 0;
+        for (int i = 0; i < counts.length(); i++) {
+            total += counts.get(i);
+        }
+        if(total == 0)
+            return -1;
+        long rank = rankOf(percentile, total);
+        long seen = 0;
+        for (int i = 0; i < counts.length(); i++) {
+            seen += counts.get(i);
+            if(seen >= rank)
+                return valueOf(i, getMin(), max.get());
+        }
+        return max.get();
+    }
+
+    /**
+     * Gets the number of recorded values greater than the given value.
+     * Values sharing a bucket with the given value are not counted,
+     * so the result may be lower by up to one bucket.
+     * @param value The value.
+     * @return The number of greater values.
+     */
+    public long getCountAbove(long value){
+        if(value < 0)
+            return count.get();
+        long above = 0;
+        for (int i = Math.min(bucketIndex(value), counts.length() - 1) + 1; i < counts.length(); i++) {
+            above += counts.get(i);
+        }
+        return above;
+    }
+
+    /**
+     * Gets the highest value that can be told apart from greater values.
+     */
+    public long getHighestTrackableValue() {
+        return highestTrackableValue;
+    }
+
+    /**
+     * Takes an immutable copy of the histogram.
+     */
+    @NonNull
+    public Snapshot snapshot(){
+        long[] copy = new long[counts.length()];
+        for (int i = 0; i < copy.length; i++) {
+            copy[i] = counts.get(i);
+        }
+        return new Snapshot(copy, count.get(), sum.get(), getMin(), max.get());
+    }
+
+    //Sum of the recorded values
+    long getSum(){
+        return sum.get();
+    }
+
+    //Number of buckets
+    int getBucketCount(){
+        return counts.length();
+    }
+
+    //Number of values recorded in the bucket
+    long getCountAt(int index){
+        return counts.get(index);
+    }
+
+    //Index of the bucket holding the value
+    static int bucketIndex(long value){
+        if(value < SUB_BUCKETS)
+            return (int) value;
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        int shift = exponent - SUB_BUCKET_BITS;
+        //(value >>> shift) is in range [SUB_BUCKETS, 2 * SUB_BUCKETS)
+        return SUB_BUCKETS + shift * SUB_BUCKETS + (int) (value >>> shift) - SUB_BUCKETS;
+    }
+
+    //Lowest value counted in the bucket
+    static long bucketLowerBound(int index){
+        if(index < SUB_BUCKETS)
+            return index;
+        int shift = (index - SUB_BUCKETS) / SUB_BUCKETS;
+        int sub = (index - SUB_BUCKETS) % SUB_BUCKETS;
+        return (long) (SUB_BUCKETS + sub) << shift;
+    }
+
+    //Highest value counted in the bucket
+    static long bucketUpperBound(int index){
+        if(index < SUB_BUCKETS)
+            return index;
+        int shift = (index - SUB_BUCKETS) / SUB_BUCKETS;
+        return bucketLowerBound(index) + (1L << shift) - 1;
+    }
+
+    //Rank (1-based) of the value at the percentile
+    static long rankOf(double percentile, long total){
+        double p = Math.max(0, Math.min(100, percentile));
+        return Math.max(1, (long) Math.ceil(p / 100.0 * total));
+    }
+
+    //Representative value of the bucket, kept within the recorded range
+    static long valueOf(int index, long min, long max){
+        long value = bucketUpperBound(index);
+        if(max >= 0 && value > max)
+            value = max;
+        if(min >= 0 && value < min)
+            value = min;
+        return value;
+    }
+
+    /**
+     * An immutable copy of a {@link Histogram}.<br>
+     * Snapshots can be merged, also across processes: bucket boundaries do not depend
+     * on the highest trackable value, so snapshots of differently sized histograms merge too.
+     * {@link #writeTo(OutputStream)} encodes only the non-empty buckets, as varints.
+     */
+    public static final class Snapshot {
+
+        private final long[] counts;
+        private final long count;
+        private final long sum;
+        private final long min;
+        private final long max;
+
+        Snapshot(@NonNull long[] counts, long count, long sum, long min, long max) {
+            this.counts = counts;
+            this.count = count;
+            this.sum = sum;
+            this.min = min;
+            this.max = max;
+        }
+
+        /**
+         * Gets the number of recorded values.
+         */
+        public long getCount() {
+            return count;
+        }
+
+        /**
+         * Gets the highest recorded value, or -1 if no values have been recorded.
+         */
+        public long getMax() {
+            return max;
+        }
+
+        /**
+         * Gets the lowest recorded value, or -1 if no values have been recorded.
+         */
+        public long getMin() {
+            return min;
+        }
+
+        /**
+         * Gets the mean of the recorded values, or -1 if no values have been recorded.
+         */
+        public double getMean(){
+            return count == 0 ? -1 : sum / (double) count;
+        }
+
+        /**
+         * Gets the value below which the given percentage of recorded values fall.
+         * @param percentile The percentile, in range [0, 100]. Example: 99 for p99.
+         * @return The value at the percentile, or -1 if no values have been recorded.
+         */
+        public long getValueAtPercentile(double percentile){
+            long total = 0;
+            for (long c : counts) {
+                total += c;
+            }
+            if(total == 0)
+                return -1;
+            long rank = rankOf(percentile, total);
+            long seen = 0;
+            for (int i = 0; i < counts.length; i++) {
+                seen += counts[i];
+                if(seen >= rank)
+                    return valueOf(i, min, max);
+            }
+            return max;
+        }
+
+        /**
+         * Merges this snapshot with another one.
+         * @param other The other snapshot.
+         * @return A new snapshot holding the values of both.
+         */
+        @NonNull
+        public Snapshot merge(@NonNull Snapshot other){
+            long[] merged = new long[Math.max(counts.length, other.counts.length)];
+            addCounts(merged, counts);
+            addCounts(merged, other.counts);
+            return new Snapshot(merged, count + other.count, sum + other.sum,
+                    minOf(min, other.min), Math.max(max, other.max));
+        }
+
+        /**
+         * Merges many snapshots at once, in time linear in the total number of buckets.
+         * @param snapshots The snapshots.
+         * @return A new snapshot holding the values of all of them, empty if there are none.
+         */
+        @NonNull
+        public static Snapshot merge(@NonNull Collection<Snapshot> snapshots){
+            int length = 0;
+            for (Snapshot snapshot : snapshots) {
+                length = Math.max(length, snapshot.counts.length);
+            }
+            long[] merged = new long[length];
+            long count = 0;
+            long sum = 0;
+            long min = -1;
+            long max = -1;
+            for (Snapshot snapshot : snapshots) {
+                addCounts(merged, snapshot.counts);
+                count += snapshot.count;
+                sum += snapshot.sum;
+                min = minOf(min, snapshot.min);
+                max = Math.max(max, snapshot.max);
+            }
+            return new Snapshot(merged, count, sum, min, max);
+        }
+
+        /**
+         * Writes the snapshot in the compact binary form.
+         * @param out The destination.
+         * @throws IOException If writing fails.
+         */
+        public void writeTo(@NonNull OutputStream out) throws IOException {
+            out.write(FORMAT_VERSION);
+            Varint.writeUnsigned(out, count);
+            Varint.writeUnsigned(out, sum);
+            Varint.writeSigned(out, min);
+            Varint.writeSigned(out, max);
+            Varint.writeUnsigned(out, counts.length);
+            int nonEmpty = 0;
+            for (long c : counts) {
+                if(c != 0)
+                    nonEmpty++;
+            }
+            Varint.writeUnsigned(out, nonEmpty);
+            int previous = 0;
+            for (int i = 0; i < counts.length; i++) {
+                if(counts[i] == 0)
+                    continue;
+                //Index relative to the previous non-empty bucket, usually a single byte
+                Varint.writeUnsigned(out, i - previous);
+                Varint.writeUnsigned(out, counts[i]);
+                previous = i;
+            }
+        }
+
+        /**
+         * Encodes the snapshot in the compact binary form.
+         */
+        @NonNull
+        public byte[] toByteArray(){
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            try {
+                writeTo(out);
+            } catch (IOException e){
+                //ByteArrayOutputStream does not throw
+                throw new UncheckedIOException(e);
+            }
+            return out.toByteArray();
+        }
+
+        /**
+         * Reads a snapshot written by {@link #writeTo(OutputStream)}.
+         * @param in The source.
+         * @return The snapshot.
+         * @throws IOException If reading fails or the data is malformed.
+         */
+        @NonNull
+        public static Snapshot readFrom(@NonNull InputStream in) throws IOException {
+            Varint.readVersion(in, FORMAT_VERSION);
+            long count = Varint.readUnsigned(in);
+            long sum = Varint.readUnsigned(in);
+            long min = Varint.readSigned(in);
+            long max = Varint.readSigned(in);
+            long length = Varint.readUnsigned(in);
+            long nonEmpty = Varint.readUnsigned(in);
+            if(length > MAX_BUCKETS || nonEmpty > length)
+                throw new IOException("Malformed histogram snapshot");
+            long[] counts = new long[(int) length];
+            long index = 0;
+            for (long i = 0; i < nonEmpty; i++) {
+                index += Varint.readUnsigned(in);
+                if(index >= length)
+                    throw new IOException("Malformed histogram snapshot");
+                counts[(int) index] = Varint.readUnsigned(in);
+            }
+            return new Snapshot(counts, count, sum, min, max);
+        }
+
+        /**
+         * Decodes a snapshot encoded by {@link #toByteArray()}.
+         * @param bytes The encoded snapshot.
+         * @return The snapshot.
+         * @throws IOException If the data is malformed.
+         */
+        @NonNull
+        public static Snapshot fromByteArray(@NonNull byte[] bytes) throws IOException {
+            return readFrom(new ByteArrayInputStream(bytes));
+        }
+
+        private static void addCounts(@NonNull long[] target, @NonNull long[] counts){
+            for (int i = 0; i < counts.length; i++) {
+                target[i] += counts[i];
+            }
+        }
+
+        //Lower of two minimums, -1 meaning no values
+        private static long minOf(long a, long b){
+            if(a < 0)
+                return b;
+            if(b < 0)
+                return a;
+            return Math.min(a, b);
+        }
+
+        @NonNull
+        @Override
+        public String toString() {
+            return "Histogram.Snapshot{count=" + count +
+                    ", mean=" + getMean() +
+                    ", p50=" + getValueAtPercentile(50) +
+                    ", p99=" + getValueAtPercentile(99) +
+                    ", max=" + max + "}";
+        }
+    }
+
+}
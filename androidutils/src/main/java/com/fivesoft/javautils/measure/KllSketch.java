@@ -0,0 +1,232 @@
+package com.fivesoft.javautils.measure;
+
+import androidx.annotation.NonNull;
+
+import java.util.Arrays;
+
+/**
+ * KLL quantile sketch of double values (Karnin, Lang, Liberty).<br>
+ * Values are kept in levels, an item at level h stands for 2^h values. A full level is compacted:
+ * sorted, and every other item, starting at a random one of the first two, is promoted to the next level.
+ * Level capacities shrink by 2/3 towards the lower levels, so the memory stays bounded
+ * by about 3k items plus a few items per level, while the rank error is about 1.65% at k = 200.<br>
+ * Not thread-safe, {@link QuantileMeasure} synchronizes the access.
+ */
+final class KllSketch {
+
+    private static final double CAPACITY_FACTOR = 2.0 / 3.0;
+
+    private final int k;
+    private double[][] levels = new double[0][];
+    private int[] sizes = new int[0];
+    private int levelCount = 0;
+    private int size = 0;
+    private int maxSize = 0;
+    private long count = 0;
+    private double min = Double.NaN;
+    private double max = Double.NaN;
+    private double sum = 0;
+    private long random;
+
+    KllSketch(int k, long seed) {
+        if(k < 8)
+            throw new IllegalArgumentException("k must be at least 8");
+        this.k = k;
+        this.random = seed == 0 ? 0x9E3779B97F4A7C15L : seed;
+        reset();
+    }
+
+    void update(double value){
+        append(0, value);
+        size++;
+        count++;
+        sum += value;
+        if(count == 1){
+            min = value;
+            max = value;
+        } else {
+            if(value < min)
+                min = value;
+            if(value > max)
+                max = value;
+        }
+        if(size >= maxSize)
+            compress();
+    }
+
+    void reset(){
+        levels = new double[][]{levels.length > 0 ? levels[0] : new double[k]};
+        sizes = new int[1];
+        levelCount = 1;
+        size = 0;
+        count = 0;
+        min = Double.NaN;
+        max = Double.NaN;
+        sum = 0;
+        updateMaxSize();
+    }
+
+    long getCount(){
+        return count;
+    }
+
+    double getMin(){
+        return min;
+    }
+
+    double getMax(){
+        return max;
+    }
+
+    double getSum(){
+        return sum;
+    }
+
+    //Number of non-empty levels, an upper bound for the runs added by addRuns
+    int getLevelCount(){
+        return levelCount;
+    }
+
+    //Copies the non-empty levels as sorted runs with their weights, returns the new offset
+    int addRuns(@NonNull double[][] runs, @NonNull long[] weights, int offset){
+        for (int h = 0; h < levelCount; h++) {
+            if(sizes[h] == 0)
+                continue;
+            double[] run = Arrays.copyOf(levels[h], sizes[h]);
+            Arrays.sort(run);
+            runs[offset] = run;
+            weights[offset] = 1L << h;
+            offset++;
+        }
+        return offset;
+    }
+
+    //Capacity of a level, the top level has capacity k
+    private int capacity(int level){
+        int depth = levelCount - level - 1;
+        return Math.max(2, (int) Math.ceil(k * Math.pow(CAPACITY_FACTOR, depth)));
+    }
+
+    private void updateMaxSize(){
+        int total = 0;
+        for (int h = 0; h < levelCount; h++) {
+            total += capacity(h);
+        }
+        maxSize = total;
+    }
+
+    private void append(int level, double value){
+        double[] items = levels[level];
+        if(sizes[level] == items.length){
+            items = Arrays.copyOf(items, Math.max(8, items.length * 2));
+            levels[level] = items;
+        }
+        items[sizes[level]++] = value;
+    }
+
+    //Compacts the lowest full level into the next one
+    private void compress(){
+        for (int h = 0; h < levelCount; h++) {
+            if(sizes[h] < capacity(h))
+                continue;
+            if(h + 1 == levelCount)
+                addLevel();
+            compact(h);
+            return;
+        }
+    }
+
+    private void addLevel(){
+        levels = Arrays.copyOf(levels, levelCount + 1);
+        sizes = Arrays.copyOf(sizes, levelCount + 1);
+        levels[levelCount] = new double[Math.max(8, k / 2)];
+        levelCount++;
+        updateMaxSize();
+    }
+
+    //Promotes every other item of the level to the next level, keeping one item if the size is odd
+    private void compact(int level){
+        double[] items = levels[level];
+        int n = sizes[level];
+        Arrays.sort(items, 0, n);
+        int even = n & ~1;
+        for (int i = nextRandomBit(); i < even; i += 2) {
+            append(level + 1, items[i]);
+        }
+        if(n != even)
+            items[0] = items[n - 1];
+        sizes[level] = n - even;
+        size -= even / 2;
+    }
+
+    //Xorshift random bit, does not allocate
+    private int nextRandomBit(){
+        long x = random;
+        x ^= x << 13;
+        x ^= x >>> 7;
+        x ^= x << 17;
+        random = x;
+        return (int) (x & 1);
+    }
+
+    /**
+     * Finds the value at the given rank in sorted weighted runs.
+     * @param runs Sorted runs of values.
+     * @param weights Weight of every value of the run with the same index.
+     * @param runCount The number of runs.
+     * @param rank The rank, 1-based.
+     * @return The smallest value whose rank is at least the given rank, NaN if the runs are empty.
+     */
+    static double valueAtRank(@NonNull double[][] runs, @NonNull long[] weights, int runCount, long rank){
+        int total = 0;
+        for (int i = 0; i < runCount; i++) {
+            total += runs[i].length;
+        }
+        if(total == 0)
+            return Double.NaN;
+        double[] candidates = new double[total];
+        int offset = 0;
+        for (int i = 0; i < runCount; i++) {
+            System.arraycopy(runs[i], 0, candidates, offset, runs[i].length);
+            offset += runs[i].length;
+        }
+        Arrays.sort(candidates);
+        //Binary search for the first candidate reaching the rank
+        int low = 0;
+        int high = total - 1;
+        while(low < high){
+            int mid = (low + high) >>> 1;
+            if(rankOf(runs, weights, runCount, candidates[mid]) >= rank)
+                high = mid;
+            else
+                low = mid + 1;
+        }
+        return candidates[low];
+    }
+
+    /**
+     * Gets the total weight of the values lower than or equal to the given value.
+     */
+    static long rankOf(@NonNull double[][] runs, @NonNull long[] weights, int runCount, double value){
+        long rank = 0;
+        for (int i = 0; i < runCount; i++) {
+            rank += weights[i] * upperBound(runs[i], value);
+        }
+        return rank;
+    }
+
+    //Number of values in the sorted run lower than or equal to the value
+    private static int upperBound(@NonNull double[] run, double value){
+        int low = 0;
+        int high = run.length;
+        while(low < high){
+            int mid = (low + high) >>> 1;
+            if(run[mid] <= value)
+                low = mid + 1;
+            else
+                high = mid;
+        }
+        return low;
+    }
+
+}
@@ -0,0 +1,277 @@
+package com.fivesoft.javautils.measure;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.fivesoft.javautils.time.Clock;
+
+import java.util.Objects;
+
+/**
+ * Measures durations, for example of request handling or decoding, over a sliding interval.<br>
+ * Usage:
+ * <pre>
+ *     long t = measure.start();
+ *     decode();
+ *     measure.stop(t);
+ * </pre>
+ * The interval is split into probes, every probe records durations into its own {@link Histogram}.
+ * Probes older than the interval are forgotten, so percentiles, mean, max and count
+ * describe the last interval only.<br>
+ * Recording is lock-free and does not allocate, so it is safe to call from many threads
+ * and from hot paths. Only moving to the next probe, which happens at most once
+ * per probe duration, is done under a short lock.
+ */
+public class LatencyMeasure {
+
+    /**
+     * Default highest duration that can be told apart from longer durations. (1 minute in nanoseconds)
+     */
+    public static final long DEFAULT_HIGHEST_TRACKABLE_NANOS = 60_000_000_000L;
+
+    private final Histogram[] buffer;
+    private final long probeDuration;
+    private final long interval;
+    private final Object lock = new Object();
+    private volatile long currentProbe = 0;
+    private volatile long origin;
+    @Nullable
+    private volatile ProbeListener probeListener;
+    private final Clock clock;
+
+    public LatencyMeasure(int bufferSize, long interval) {
+        this(bufferSize, interval, DEFAULT_HIGHEST_TRACKABLE_NANOS, Clock.SYSTEM);
+    }
+
+    /**
+     * Creates a new measure.
+     * @param bufferSize The number of probes the interval is split into.
+     * @param interval The interval of the measure. (in milliseconds)
+     * @param highestTrackableNanos The highest duration that can be told apart from longer durations.
+     *                              The maximum is always tracked exactly.
+     * @param clock The clock used to measure time.
+     */
+    public LatencyMeasure(int bufferSize, long interval, long highestTrackableNanos, @NonNull Clock clock) {
+        if(bufferSize < 1)
+            throw new IllegalArgumentException("Buffer size must be greater than 0");
+        if(interval < 1)
+            throw new IllegalArgumentException("Interval must be greater than 0");
+        this.clock = Objects.requireNonNull(clock);
+        this.buffer = new Histogram[bufferSize];
+        for (int i = 0; i < bufferSize; i++) {
+            buffer[i] = new Histogram(highestTrackableNanos);
+        }
+        this.probeDuration = Probes.duration(interval, bufferSize);
+        this.interval = interval;
+        reset();
+    }
+
+    /**
+     * Starts measuring a duration.
+     * @return The start time, to be passed to {@link #stop(long)}.
+     */
+    public long start(){
+        return clock.nanoTime();
+    }
+
+    /**
+     * Stops measuring a duration and records it.
+     * @param startTime The start time returned by {@link #start()}.
+     * @return The recorded duration in nanoseconds.
+     */
+    public long stop(long startTime){
+        long now = clock.nanoTime();
+        long duration = Math.max(0, now - startTime);
+        record(duration, now);
+        return duration;
+    }
+
+    /**
+     * Records a duration measured elsewhere.
+     * @param nanos The duration in nanoseconds. Negative values are recorded as 0.
+     */
+    public void record(long nanos){
+        record(nanos, clock.nanoTime());
+    }
+
+    /**
+     * Gets the number of durations recorded in the last interval.
+     */
+    public long getCount(){
+        rotateTo(clock.nanoTime());
+        long count = 0;
+        for (Histogram histogram : buffer) {
+            count += histogram.getCount();
+        }
+        return count;
+    }
+
+    /**
+     * Gets the mean duration of the last interval.
+     * @return The mean in nanoseconds, or -1 if no durations have been recorded.
+     */
+    public double getMean(){
+        rotateTo(clock.nanoTime());
+        long count = 0;
+        long sum = 0;
+        for (Histogram histogram : buffer) {
+            count += histogram.getCount();
+            sum += histogram.getSum();
+        }
+        return count == 0 ? -1 : sum / (double) count;
+    }
+
+    /**
+     * Gets the longest duration of the last interval.
+     * @return The duration in nanoseconds, or -1 if no durations have been recorded.
+     */
+    public long getMax(){
+        rotateTo(clock.nanoTime());
+        long max = -1;
+        for (Histogram histogram : buffer) {
+            max = Math.max(max, histogram.getMax());
+        }
+        return max;
+    }
+
+    /**
+     * Gets the duration below which the given percentage of durations of the last interval fall.
+     * Does not allocate.
+     * @param percentile The percentile, in range [0, 100]. Example: 99 for p99.
+     * @return The duration in nanoseconds, or -1 if no durations have been recorded.
+     */
+    public long getValueAtPercentile(double percentile){
+        rotateTo(clock.nanoTime());
+        int buckets = buffer[0].getBucketCount();
+        long total = 0;
+        long min = Long.MAX_VALUE;
+        long max = -1;
+        for (Histogram histogram : buffer) {
+            for (int i = 0; i < buckets; i++) {
+                total += histogram.getCountAt(i);
+            }
+            long m = histogram.getMin();
+            if(m >= 0)
+                min = Math.min(min, m);
+            max = Math.max(max, histogram.getMax());
+        }
+        if(total == 0)
+            return -1;
+        long rank = Histogram.rankOf(percentile, total);
+        long seen = 0;
+        for (int i = 0; i < buckets; i++) {
+            for (Histogram histogram : buffer) {
+                seen += histogram.getCountAt(i);
+            }
+            if(seen >= rank)
+                return Histogram.valueOf(i, min == Long.MAX_VALUE ? -1 : min, max);
+        }
+        return max;
+    }
+
+    /**
+     * Takes a copy of the durations recorded in the last interval.
+     */
+    @NonNull
+    public Histogram.Snapshot snapshot(){
+        rotateTo(clock.nanoTime());
+        long[] counts = new long[buffer[0].getBucketCount()];
+        long count = 0;
+        long sum = 0;
+        long min = Long.MAX_VALUE;
+        long max = -1;
+        for (Histogram histogram : buffer) {
+            for (int i = 0; i < counts.length; i++) {
+                counts[i] += histogram.getCountAt(i);
+            }
+            count += histogram.getCount();
+            sum += histogram.getSum();
+            long m = histogram.getMin();
+            if(m >= 0)
+                min = Math.min(min, m);
+            max = Math.max(max, histogram.getMax());
+        }
+        return new Histogram.Snapshot(counts, count, sum, min == Long.MAX_VALUE ? -1 : min, max);
+    }
+
+    public void reset(){
+        synchronized (lock) {
+            origin = clock.nanoTime();
+            currentProbe = 0;
+            for (Histogram histogram : buffer) {
+                histogram.reset();
+            }
+        }
+    }
+
+    /**
+     * Moves the measure to the current time, so a probe whose time has passed is closed
+     * even if no duration has been recorded since. See {@link ProbeListener}.
+     */
+    public void flush(){
+        rotateTo(clock.nanoTime());
+    }
+
+    /**
+     * Sets the listener notified with the durations of every closed probe, in nanoseconds.
+     * Probes with no durations are not reported. A duration recorded by a thread racing with the closing
+     * of its probe still counts for the interval, but may be missing from the report.
+     * @param listener The listener, or null to remove it.
+     */
+    public void setProbeListener(@Nullable ProbeListener listener) {
+        this.probeListener = listener;
+    }
+
+    /**
+     * Gets size of the buffer.
+     */
+    public int getBufferSize() {
+        return buffer.length;
+    }
+
+    /**
+     * Gets the interval of the measure. (in milliseconds)
+     */
+    public long getInterval(){
+        return interval;
+    }
+
+    /**
+     * Gets the clock used to measure time.
+     */
+    @NonNull
+    public Clock getClock() {
+        return clock;
+    }
+
+    //Records the duration into the probe of the given time
+    private void record(long nanos, long now){
+        rotateTo(now);
+        buffer[(int) (currentProbe % buffer.length)].record(nanos);
+    }
+
+    //Moves to the probe of the given time, clearing the probes that left the interval.
+    //Durations recorded into a probe while it is cleared may be lost, which can only
+    //happen to a recorder preempted for longer than the whole interval.
+    private void rotateTo(long nanoTime){
+        long number = Probes.numberAt(nanoTime, origin, probeDuration);
+        if(number <= currentProbe)
+            return;
+        synchronized (lock) {
+            long current = currentProbe;
+            if(number <= current)
+                return;
+            ProbeListener listener = probeListener;
+            Histogram closed = buffer[(int) (current % buffer.length)];
+            if(listener != null && closed.getCount() > 0)
+                listener.onProbeClosed(origin + current * probeDuration, closed.getCount(),
+                        closed.getSum(), closed.getMin(), closed.getMax());
+            //The slot of a new probe held the probe leaving the interval
+            for (long n = Math.max(current + 1, number - buffer.length + 1); n <= number; n++) {
+                buffer[(int) (n % buffer.length)].reset();
+            }
+            currentProbe = number;
+        }
+    }
+
+}
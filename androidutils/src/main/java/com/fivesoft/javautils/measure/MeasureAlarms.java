@@ -0,0 +1,207 @@
+package com.fivesoft.javautils.measure;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.fivesoft.javautils.time.Scheduler;
+import com.fivesoft.javautils.time.SystemScheduler;
+
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Shared dispatcher of alarms on measures, replacing a polling thread per watched measure.<br>
+ * {@link #watch(AlarmRule, Listener)} returns an {@link Alarm}, which is a {@link ProbeListener}:
+ * attach it to the measure with {@code measure.setProbeListener(alarm)}, combined with other listeners
+ * through {@link ProbeListener#all(ProbeListener...)} if needed. Every closed probe, or full buffer of frames
+ * for a {@link FPSMeasure}, queues one evaluation of the rule on the scheduler. Evaluations queued
+ * while one is pending are coalesced. The only timers are a single one at the end of a hold and,
+ * while an alarm is raised, one checking back every hold duration (at least 1 s) so the alarm clears
+ * even if the measure goes quiet. A measure with no alarm raised causes no wake-ups of its own.<br>
+ * Rules and listeners run on the scheduler thread, one at a time, so they should be short.
+ */
+public class MeasureAlarms {
+
+    /**
+     * Listener notified when an alarm is raised or cleared.
+     */
+    public interface Listener {
+
+        /**
+         * Called on the scheduler thread when the state of an alarm changes.
+         * @param alarm The alarm.
+         * @param raised True if the alarm has been raised, false if it has been cleared.
+         * @param value The value that changed the state.
+         */
+        void onAlarmChanged(@NonNull Alarm alarm, boolean raised, double value);
+
+    }
+
+    //Shortest delay between the checks of a raised alarm
+    private static final long RECHECK_NANOS = 1_000_000_000L;
+
+    private final Scheduler scheduler;
+
+    public MeasureAlarms() {
+        this(SystemScheduler.getInstance());
+    }
+
+    /**
+     * Creates a new dispatcher.
+     * @param scheduler The scheduler running the evaluations and measuring the hold durations.
+     */
+    public MeasureAlarms(@NonNull Scheduler scheduler) {
+        this.scheduler = Objects.requireNonNull(scheduler);
+    }
+
+    /**
+     * Creates an alarm for the rule. The alarm is evaluated once it is attached to a measure
+     * or when {@link Alarm#evaluate()} is called.
+     * @param rule The rule.
+     * @param listener The listener notified when the alarm is raised or cleared.
+     * @return The alarm, to be attached to the measure.
+     */
+    @NonNull
+    public Alarm watch(@NonNull AlarmRule rule, @NonNull Listener listener){
+        return new Alarm(rule, listener);
+    }
+
+    /**
+     * Gets the scheduler running the evaluations.
+     */
+    @NonNull
+    public Scheduler getScheduler() {
+        return scheduler;
+    }
+
+    /**
+     * State of one {@link AlarmRule}, updated by the {@link MeasureAlarms} that created it.
+     */
+    public final class Alarm implements ProbeListener {
+
+        private final AlarmRule rule;
+        private final Listener listener;
+        private final AtomicBoolean queued = new AtomicBoolean();
+        private final Runnable evaluation = this::runEvaluation;
+        //Guarded by this
+        private boolean raised = false;
+        private boolean closed = false;
+        //Time since the value has been beyond the threshold to cross, -1 if it is not
+        private long beyondSince = -1;
+        @Nullable
+        private Scheduler.Cancellable holdTimer;
+
+        Alarm(@NonNull AlarmRule rule, @NonNull Listener listener) {
+            this.rule = Objects.requireNonNull(rule);
+            this.listener = Objects.requireNonNull(listener);
+        }
+
+        @Override
+        public void onProbeClosed(long startNanos, long count, double sum, double min, double max) {
+            evaluate();
+        }
+
+        /**
+         * Queues an evaluation of the rule, unless one is already queued.
+         * Useful for measures which do not close probes, for example after reading an {@link EwmaRate}.
+         */
+        public void evaluate(){
+            if(queued.compareAndSet(false, true))
+                scheduler.schedule(evaluation, 0, TimeUnit.NANOSECONDS);
+        }
+
+        /**
+         * Returns true if the alarm is raised.
+         */
+        public synchronized boolean isRaised() {
+            return raised;
+        }
+
+        @NonNull
+        public AlarmRule getRule() {
+            return rule;
+        }
+
+        /**
+         * Stops the alarm: pending evaluations are dropped and the listener is not notified anymore.
+         * Detach the alarm from the measure too.
+         */
+        public synchronized void close(){
+            closed = true;
+            cancelHoldTimer();
+        }
+
+        private void runEvaluation(){
+            queued.set(false);
+            evaluateNow();
+        }
+
+        private void evaluateNow(){
+            double value = rule.read();
+            boolean nowRaised;
+            synchronized (this) {
+                if(closed || Double.isNaN(value))
+                    return;
+                boolean changed = update(value);
+                //A measure going quiet closes no probes, so a raised alarm checks back by itself
+                if(raised && holdTimer == null)
+                    holdTimer = scheduler.schedule(this::onHoldTimer,
+                            Math.max(rule.getHoldNanos(), RECHECK_NANOS), TimeUnit.NANOSECONDS);
+                if(!changed)
+                    return;
+                nowRaised = raised;
+            }
+            try {
+                listener.onAlarmChanged(this, nowRaised, value);
+            } catch (RuntimeException e){
+                //A failing listener must not stop the evaluations of other alarms
+            }
+        }
+
+        //Moves the state machine, returns true if the alarm was raised or cleared
+        private boolean update(double value){
+            boolean beyond = raised ? rule.exited(value) : rule.entered(value);
+            if(!beyond){
+                beyondSince = -1;
+                cancelHoldTimer();
+                return false;
+            }
+            long now = scheduler.nanoTime();
+            if(beyondSince == -1)
+                beyondSince = now;
+            long remaining = rule.getHoldNanos() - (now - beyondSince);
+            if(remaining > 0){
+                //Confirm at the end of the hold, even if the measure goes quiet
+                if(holdTimer == null)
+                    holdTimer = scheduler.schedule(this::onHoldTimer, remaining, TimeUnit.NANOSECONDS);
+                return false;
+            }
+            raised = !raised;
+            beyondSince = -1;
+            cancelHoldTimer();
+            return true;
+        }
+
+        private void onHoldTimer(){
+            synchronized (this) {
+                holdTimer = null;
+            }
+            evaluateNow();
+        }
+
+        private void cancelHoldTimer(){
+            if(holdTimer != null){
+                holdTimer.cancel();
+                holdTimer = null;
+            }
+        }
+
+        @NonNull
+        @Override
+        public String toString() {
+            return "Alarm{" + rule.getName() + ", raised=" + isRaised() + "}";
+        }
+    }
+
+}
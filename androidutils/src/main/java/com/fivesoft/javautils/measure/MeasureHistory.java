@@ -0,0 +1,282 @@
+package com.fivesoft.javautils.measure;
+
+import androidx.annotation.NonNull;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * History of a measure at several resolutions, for example 1 s x 300, 1 min x 180 and 1 h x 48.<br>
+ * Attach it to a measure with {@code measure.setProbeListener(history)}. Every closed probe is rolled
+ * into one bucket of every resolution right away, so no samples are logged and nothing is recomputed later.
+ * A measure closes its probes when it is used, call its {@code flush()} periodically if it may go quiet.
+ * Every resolution is a fixed-size ring of primitive arrays holding the number of samples, their sum,
+ * minimum and maximum per bucket. The default resolutions take about 21 KB.<br>
+ * Reads return {@link Series} views of the rings, without copying.
+ */
+public class MeasureHistory implements ProbeListener {
+
+    private final Resolution[] resolutions;
+    private final Level[] levels;
+
+    /**
+     * Creates a new history with the default resolutions: 1 s x 300, 1 min x 180 and 1 h x 48.
+     */
+    public MeasureHistory() {
+        this(new Resolution(1, TimeUnit.SECONDS, 300),
+                new Resolution(1, TimeUnit.MINUTES, 180),
+                new Resolution(1, TimeUnit.HOURS, 48));
+    }
+
+    /**
+     * Creates a new history.
+     * @param resolutions The resolutions to keep. Must not be empty.
+     */
+    public MeasureHistory(@NonNull Resolution... resolutions) {
+        if(resolutions.length == 0)
+            throw new IllegalArgumentException("At least one resolution is required");
+        this.resolutions = resolutions.clone();
+        this.levels = new Level[resolutions.length];
+        for (int i = 0; i < resolutions.length; i++) {
+            levels[i] = new Level(resolutions[i]);
+        }
+    }
+
+    @Override
+    public synchronized void onProbeClosed(long startNanos, long count, double sum, double min, double max) {
+        for (Level level : levels) {
+            level.add(startNanos, count, sum, min, max);
+        }
+    }
+
+    /**
+     * Gets the number of resolutions.
+     */
+    public int getResolutionCount(){
+        return resolutions.length;
+    }
+
+    /**
+     * Gets a resolution.
+     * @param index The index of the resolution, in order of creation.
+     */
+    @NonNull
+    public Resolution getResolution(int index){
+        return resolutions[index];
+    }
+
+    /**
+     * Gets a view of the buckets of a resolution, ending at the newest bucket.
+     * The view reads the live ring: buckets overwritten after creating the view read as empty.
+     * @param index The index of the resolution, in order of creation.
+     * @return The view.
+     */
+    @NonNull
+    public Series getSeries(int index){
+        Level level = levels[index];
+        synchronized (this) {
+            return new Series(level, level.newest);
+        }
+    }
+
+    /**
+     * Forgets all buckets.
+     */
+    public synchronized void clear(){
+        for (Level level : levels) {
+            level.clear();
+        }
+    }
+
+    /**
+     * Duration and number of buckets of one resolution of a {@link MeasureHistory}.
+     */
+    public static final class Resolution {
+
+        private final long durationNanos;
+        private final int capacity;
+
+        /**
+         * Creates a new resolution.
+         * @param duration The duration of one bucket. Should not be shorter than a probe of the measure.
+         * @param unit The time unit of the duration.
+         * @param capacity The number of buckets kept.
+         */
+        public Resolution(long duration, @NonNull TimeUnit unit, int capacity) {
+            if(duration <= 0)
+                throw new IllegalArgumentException("Duration must be greater than 0");
+            if(capacity < 1)
+                throw new IllegalArgumentException("Capacity must be greater than 0");
+            this.durationNanos = unit.toNanos(duration);
+            this.capacity = capacity;
+        }
+
+        /**
+         * Gets the duration of one bucket in nanoseconds.
+         */
+        public long getDurationNanos() {
+            return durationNanos;
+        }
+
+        /**
+         * Gets the number of buckets kept.
+         */
+        public int getCapacity() {
+            return capacity;
+        }
+    }
+
+    /**
+     * A view of the buckets of one resolution, from the oldest (index 0) to the newest.
+     * Reads go to the ring of the history, no data is copied.
+     * Empty buckets have a count of 0, a sum of 0 and NaN minimum, maximum and mean.
+     */
+    public final class Series {
+
+        private final Level level;
+        //Bucket number of the last index
+        private final long newest;
+
+        Series(@NonNull Level level, long newest) {
+            this.level = level;
+            this.newest = newest;
+        }
+
+        /**
+         * Gets the number of buckets, equal to the capacity of the resolution,
+         * or 0 if nothing has been added yet.
+         */
+        public int size(){
+            return newest == Long.MIN_VALUE ? 0 : level.numbers.length;
+        }
+
+        /**
+         * Gets the start time of a bucket, in nanoseconds of the measure's clock.
+         * @param index The index of the bucket.
+         */
+        public long getStartNanos(int index){
+            return numberOf(index) * level.durationNanos;
+        }
+
+        /**
+         * Gets the number of samples in a bucket.
+         * @param index The index of the bucket.
+         */
+        public long getCount(int index){
+            synchronized (MeasureHistory.this) {
+                int slot = slotOf(index);
+                return slot < 0 ? 0 : level.counts[slot];
+            }
+        }
+
+        /**
+         * Gets the sum of the samples in a bucket, for a count measure the total count of the bucket.
+         * @param index The index of the bucket.
+         */
+        public double getSum(int index){
+            synchronized (MeasureHistory.this) {
+                int slot = slotOf(index);
+                return slot < 0 ? 0 : level.sums[slot];
+            }
+        }
+
+        /**
+         * Gets the lowest sample in a bucket.
+         * @param index The index of the bucket.
+         */
+        public double getMin(int index){
+            synchronized (MeasureHistory.this) {
+                int slot = slotOf(index);
+                return slot < 0 ? Double.NaN : level.mins[slot];
+            }
+        }
+
+        /**
+         * Gets the highest sample in a bucket.
+         * @param index The index of the bucket.
+         */
+        public double getMax(int index){
+            synchronized (MeasureHistory.this) {
+                int slot = slotOf(index);
+                return slot < 0 ? Double.NaN : level.maxs[slot];
+            }
+        }
+
+        /**
+         * Gets the mean of the samples in a bucket.
+         * @param index The index of the bucket.
+         */
+        public double getMean(int index){
+            synchronized (MeasureHistory.this) {
+                int slot = slotOf(index);
+                return slot < 0 ? Double.NaN : level.sums[slot] / level.counts[slot];
+            }
+        }
+
+        private long numberOf(int index){
+            if(index < 0 || index >= size())
+                throw new IndexOutOfBoundsException("Index: " + index + ", size: " + size());
+            return newest - (level.numbers.length - 1) + index;
+        }
+
+        //Slot of the bucket, -1 if the bucket is empty or was overwritten
+        private int slotOf(int index){
+            long number = numberOf(index);
+            int slot = (int) Math.floorMod(number, (long) level.numbers.length);
+            return level.numbers[slot] == number ? slot : -1;
+        }
+    }
+
+    //Ring of buckets of one resolution
+    private static final class Level {
+
+        final long durationNanos;
+        final long[] numbers;
+        final long[] counts;
+        final double[] sums;
+        final double[] mins;
+        final double[] maxs;
+        long newest = Long.MIN_VALUE;
+
+        Level(@NonNull Resolution resolution) {
+            this.durationNanos = resolution.durationNanos;
+            int capacity = resolution.capacity;
+            this.numbers = new long[capacity];
+            this.counts = new long[capacity];
+            this.sums = new double[capacity];
+            this.mins = new double[capacity];
+            this.maxs = new double[capacity];
+            clear();
+        }
+
+        void add(long startNanos, long count, double sum, double min, double max){
+            long number = Math.floorDiv(startNanos, durationNanos);
+            //Probes older than the ring are dropped
+            if(newest != Long.MIN_VALUE && number <= newest - numbers.length)
+                return;
+            int slot = (int) Math.floorMod(number, (long) numbers.length);
+            if(numbers[slot] != number){
+                numbers[slot] = number;
+                counts[slot] = count;
+                sums[slot] = sum;
+                mins[slot] = min;
+                maxs[slot] = max;
+            } else {
+                counts[slot] += count;
+                sums[slot] += sum;
+                if(min < mins[slot])
+                    mins[slot] = min;
+                if(max > maxs[slot])
+                    maxs[slot] = max;
+            }
+            if(number > newest)
+                newest = number;
+        }
+
+        void clear(){
+            Arrays.fill(numbers, Long.MIN_VALUE);
+            newest = Long.MIN_VALUE;
+        }
+    }
+
+}
@@ -0,0 +1,396 @@
+package com.fivesoft.javautils.measure;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.fivesoft.javautils.time.Scheduler;
+import com.fivesoft.javautils.time.SystemScheduler;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.function.DoubleSupplier;
+
+/**
+ * Registry of named measures.<br>
+ * Measures are registered by name and optional labels, for example
+ * {@code register("decode_latency", labels("codec", "h264"), measure)}.
+ * {@link #snapshot()} reads all of them at once, and {@link #start(long, TimeUnit)} takes
+ * snapshots on a schedule and passes them to the added {@link MeasureReporter}s.
+ */
+public final class MeasureRegistry {
+
+    /**
+     * Handler of the exceptions thrown by reporters.
+     */
+    public interface ErrorHandler {
+
+        /**
+         * Called on the reporting thread when a reporter throws. The other reporters are still called.
+         * @param reporter The failing reporter.
+         * @param e The exception.
+         */
+        void onReporterError(@NonNull MeasureReporter reporter, @NonNull RuntimeException e);
+
+    }
+
+    /**
+     * Default error handler, printing the exception to the standard error stream,
+     * which Android forwards to the log.
+     */
+    public static final ErrorHandler PRINT_STACK_TRACE = (reporter, e) -> e.printStackTrace();
+
+    //Percentiles reported for histograms
+    private static final double[] QUANTILES = {0.5, 0.9, 0.99};
+
+    //Registered measures by name and labels, guarded by this
+    private final TreeMap<Key, Entry> entries = new TreeMap<>();
+    private final List<MeasureReporter> reporters = new CopyOnWriteArrayList<>();
+    private final Scheduler scheduler;
+    @Nullable
+    private Scheduler.Cancellable reporting;
+    @NonNull
+    private volatile ErrorHandler errorHandler = PRINT_STACK_TRACE;
+
+    public MeasureRegistry() {
+        this(SystemScheduler.getInstance());
+    }
+
+    /**
+     * Creates a new registry.
+     * @param scheduler The scheduler used to take snapshots periodically.
+     */
+    public MeasureRegistry(@NonNull Scheduler scheduler) {
+        this.scheduler = Objects.requireNonNull(scheduler);
+    }
+
+    /**
+     * Creates labels from key and value pairs.
+     * @param keysAndValues Keys and values, alternately.
+     * @return The labels.
+     */
+    @NonNull
+    public static Map<String, String> labels(@NonNull String... keysAndValues){
+        if(keysAndValues.length % 2 != 0)
+            throw new IllegalArgumentException("Keys and values must come in pairs");
+        Map<String, String> labels = new TreeMap<>();
+        for (int i = 0; i < keysAndValues.length; i += 2) {
+            labels.put(keysAndValues[i], keysAndValues[i + 1]);
+        }
+        return labels;
+    }
+
+    /**
+     * Registers a count measure. Frequency and bitrate measures report their frequency and bitrate.
+     * @param name The name of the measure.
+     * @param labels The labels of the measure.
+     * @param measure The measure.
+     * @throws IllegalArgumentException If a measure with the same name and labels is already registered.
+     */
+    public void register(@NonNull String name, @NonNull Map<String, String> labels, @NonNull CountMeasure measure){
+        Objects.requireNonNull(measure);
+        Source source;
+        if(measure instanceof BitrateMeasure)
+            source = (n, l, out) -> out.add(sample(n, l, orNaN(((BitrateMeasure) measure).getBitrate())));
+        else if(measure instanceof FrequencyMeasure)
+            source = (n, l, out) -> out.add(sample(n, l, orNaN(((FrequencyMeasure) measure).getFrequency())));
+        else
+            source = (n, l, out) -> out.add(sample(n, l, orNaN(measure.getCount())));
+        add(name, labels, measure, source);
+    }
+
+    /**
+     * Registers an FPS measure. Reports the average FPS, the frame time percentiles in seconds
+     * and the numbers of slow, janky and frozen frames.
+     * @param name The name of the measure.
+     * @param labels The labels of the measure.
+     * @param measure The measure.
+     * @throws IllegalArgumentException If a measure with the same name and labels is already registered.
+     */
+    public void register(@NonNull String name, @NonNull Map<String, String> labels, @NonNull FPSMeasure measure){
+        Objects.requireNonNull(measure);
+        add(name, labels, measure, (n, l, out) -> {
+            FPSMeasure.FrameStats stats = measure.getFrameStats();
+            out.add(sample(n, l, orNaN(measure.getAverageFPS())));
+            addQuantiles(n + "_frame_time_seconds", l, stats.getFrameTimes(), out);
+            out.add(sample(n + "_slow_frames", l, stats.getSlowFrameCount()));
+            out.add(sample(n + "_janky_frames", l, stats.getJankyFrameCount()));
+            out.add(sample(n + "_frozen_frames", l, stats.getFrozenFrameCount()));
+        });
+    }
+
+    /**
+     * Registers a latency measure. Reports the percentiles, the maximum in seconds
+     * and the number of durations of the last interval.
+     * @param name The name of the measure.
+     * @param labels The labels of the measure.
+     * @param measure The measure.
+     * @throws IllegalArgumentException If a measure with the same name and labels is already registered.
+     */
+    public void register(@NonNull String name, @NonNull Map<String, String> labels, @NonNull LatencyMeasure measure){
+        Objects.requireNonNull(measure);
+        add(name, labels, measure, (n, l, out) -> addQuantiles(n + "_seconds", l, measure.snapshot(), out));
+    }
+
+    /**
+     * Registers an EWMA rate. Reports the 1, 5 and 15 interval averages, told apart by the "window" label.
+     * @param name The name of the measure.
+     * @param labels The labels of the measure.
+     * @param rate The rate.
+     * @throws IllegalArgumentException If a measure with the same name and labels is already registered.
+     */
+    public void register(@NonNull String name, @NonNull Map<String, String> labels, @NonNull EwmaRate rate){
+        Objects.requireNonNull(rate);
+        add(name, labels, rate, (n, l, out) -> {
+            out.add(sample(n, with(l, "window", "1"), orNaN(rate.getOneIntervalRate())));
+            out.add(sample(n, with(l, "window", "5"), orNaN(rate.getFiveIntervalRate())));
+            out.add(sample(n, with(l, "window", "15"), orNaN(rate.getFifteenIntervalRate())));
+        });
+    }
+
+    /**
+     * Registers a value read from elsewhere, for example a queue length.
+     * The value is reported as it is, negative values included. Return NaN when there is no value.
+     * @param name The name of the value.
+     * @param labels The labels of the value.
+     * @param gauge The function reading the value.
+     * @throws IllegalArgumentException If a measure with the same name and labels is already registered.
+     */
+    public void register(@NonNull String name, @NonNull Map<String, String> labels, @NonNull DoubleSupplier gauge){
+        Objects.requireNonNull(gauge);
+        add(name, labels, gauge, (n, l, out) -> out.add(sample(n, l, gauge.getAsDouble())));
+    }
+
+    public void register(@NonNull String name, @NonNull CountMeasure measure){
+        register(name, Collections.emptyMap(), measure);
+    }
+
+    public void register(@NonNull String name, @NonNull FPSMeasure measure){
+        register(name, Collections.emptyMap(), measure);
+    }
+
+    public void register(@NonNull String name, @NonNull LatencyMeasure measure){
+        register(name, Collections.emptyMap(), measure);
+    }
+
+    public void register(@NonNull String name, @NonNull EwmaRate rate){
+        register(name, Collections.emptyMap(), rate);
+    }
+
+    public void register(@NonNull String name, @NonNull DoubleSupplier gauge){
+        register(name, Collections.emptyMap(), gauge);
+    }
+
+    /**
+     * Removes a measure from the registry.
+     * @param name The name of the measure.
+     * @param labels The labels of the measure.
+     * @return True if the measure was registered.
+     */
+    public synchronized boolean unregister(@NonNull String name, @NonNull Map<String, String> labels){
+        return entries.remove(new Key(name, labels)) != null;
+    }
+
+    /**
+     * Gets the measure registered with the given name and labels.
+     * @return The measure, or null if there is none.
+     */
+    @Nullable
+    public synchronized Object get(@NonNull String name, @NonNull Map<String, String> labels){
+        Entry entry = entries.get(new Key(name, labels));
+        return entry == null ? null : entry.measure;
+    }
+
+    /**
+     * Gets the number of registered measures.
+     */
+    public synchronized int size(){
+        return entries.size();
+    }
+
+    /**
+     * Reads all registered measures at once.
+     * Measures are read one after another under the registry lock,
+     * so no measure is added or removed in the middle of the snapshot.
+     */
+    @NonNull
+    public synchronized MeasureSnapshot snapshot(){
+        List<MeasureSnapshot.Sample> samples = new ArrayList<>(entries.size());
+        long time = System.currentTimeMillis();
+        for (Entry entry : entries.values()) {
+            entry.source.sample(entry.name, entry.labels, samples);
+        }
+        return new MeasureSnapshot(time, samples);
+    }
+
+    public void addReporter(@NonNull MeasureReporter reporter){
+        reporters.add(Objects.requireNonNull(reporter));
+    }
+
+    public void removeReporter(@NonNull MeasureReporter reporter){
+        reporters.remove(reporter);
+    }
+
+    /**
+     * Sets the handler of the exceptions thrown by reporters.
+     * @param handler The handler, {@link #PRINT_STACK_TRACE} by default.
+     */
+    public void setErrorHandler(@NonNull ErrorHandler handler){
+        errorHandler = Objects.requireNonNull(handler);
+    }
+
+    /**
+     * Takes a snapshot and passes it to all reporters now.
+     * A reporter throwing an exception does not stop the others, the exception is passed to the error handler.
+     * @see #setErrorHandler(ErrorHandler)
+     */
+    public void report(){
+        if(reporters.isEmpty())
+            return;
+        MeasureSnapshot snapshot = snapshot();
+        for (MeasureReporter reporter : reporters) {
+            try {
+                reporter.report(snapshot);
+            } catch (RuntimeException e){
+                //A failing reporter must not stop the others or the schedule
+                errorHandler.onReporterError(reporter, e);
+            }
+        }
+    }
+
+    /**
+     * Starts reporting periodically. Replaces the previous schedule, if any.
+     * @param period The time between two reports.
+     * @param unit The time unit of the period.
+     */
+    public synchronized void start(long period, @NonNull TimeUnit unit){
+        stop();
+        reporting = scheduler.scheduleWithFixedDelay(this::report, period, period, unit);
+    }
+
+    /**
+     * Stops periodic reporting.
+     */
+    public synchronized void stop(){
+        if(reporting != null){
+            reporting.cancel();
+            reporting = null;
+        }
+    }
+
+    //Internal method to add an entry
+    private synchronized void add(@NonNull String name, @NonNull Map<String, String> labels,
+                                  @NonNull Object measure, @NonNull Source source){
+        Key key = new Key(name, labels);
+        if(entries.containsKey(key))
+            throw new IllegalArgumentException("Measure already registered: " + name + key.labels);
+        entries.put(key, new Entry(name, key.labels, measure, source));
+    }
+
+    //Adds the quantiles, the maximum and the count of a histogram of nanoseconds, in seconds
+    private static void addQuantiles(@NonNull String name, @NonNull Map<String, String> labels,
+                                     @NonNull Histogram.Snapshot histogram, @NonNull List<MeasureSnapshot.Sample> out){
+        for (double quantile : QUANTILES) {
+            out.add(sample(name, with(labels, "quantile", String.valueOf(quantile)),
+                    seconds(histogram.getValueAtPercentile(quantile * 100))));
+        }
+        out.add(sample(name + "_max", labels, seconds(histogram.getMax())));
+        out.add(sample(name + "_count", labels, histogram.getCount()));
+    }
+
+    @NonNull
+    private static MeasureSnapshot.Sample sample(@NonNull String name, @NonNull Map<String, String> labels, double value){
+        return new MeasureSnapshot.Sample(name, labels, value);
+    }
+
+    //Measures return -1 when they have no data, other values of gauges are kept as they are
+    private static double orNaN(double value){
+        return value == -1 ? Double.NaN : value;
+    }
+
+    private static double seconds(long nanos){
+        return nanos == -1 ? Double.NaN : nanos / 1_000_000_000.0;
+    }
+
+    @NonNull
+    private static Map<String, String> with(@NonNull Map<String, String> labels, @NonNull String key, @NonNull String value){
+        Map<String, String> result = new TreeMap<>(labels);
+        result.put(key, value);
+        return Collections.unmodifiableMap(result);
+    }
+
+
+    //Reads a measure into samples
+    private interface Source {
+        void sample(@NonNull String name, @NonNull Map<String, String> labels, @NonNull List<MeasureSnapshot.Sample> out);
+    }
+
+    //Name and sorted labels, ordered by name first so entries of one name are next to each other
+    private static final class Key implements Comparable<Key> {
+
+        final String name;
+        final Map<String, String> labels;
+
+        Key(@NonNull String name, @NonNull Map<String, String> labels) {
+            this.name = Objects.requireNonNull(name);
+            this.labels = Collections.unmodifiableMap(new TreeMap<>(labels));
+        }
+
+        @Override
+        public int compareTo(@NonNull Key other) {
+            int result = name.compareTo(other.name);
+            if(result != 0)
+                return result;
+            //Both label maps iterate in key order
+            Iterator<Map.Entry<String, String>> a = labels.entrySet().iterator();
+            Iterator<Map.Entry<String, String>> b = other.labels.entrySet().iterator();
+            while(a.hasNext() && b.hasNext()){
+                Map.Entry<String, String> x = a.next();
+                Map.Entry<String, String> y = b.next();
+                result = x.getKey().compareTo(y.getKey());
+                if(result == 0)
+                    result = x.getValue().compareTo(y.getValue());
+                if(result != 0)
+                    return result;
+            }
+            return Boolean.compare(a.hasNext(), b.hasNext());
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if(this == o)
+                return true;
+            if(!(o instanceof Key))
+                return false;
+            Key key = (Key) o;
+            return name.equals(key.name) && labels.equals(key.labels);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * name.hashCode() + labels.hashCode();
+        }
+    }
+
+    private static final class Entry {
+
+        final String name;
+        final Map<String, String> labels;
+        final Object measure;
+        final Source source;
+
+        Entry(@NonNull String name, @NonNull Map<String, String> labels, @NonNull Object measure, @NonNull Source source) {
+            this.name = name;
+            this.labels = labels;
+            this.measure = measure;
+            this.source = source;
+        }
+    }
+
+}
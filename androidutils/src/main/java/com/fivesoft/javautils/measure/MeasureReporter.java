@@ -0,0 +1,16 @@
+package com.fivesoft.javautils.measure;
+
+import androidx.annotation.NonNull;
+
+/**
+ * Receives the snapshots taken by a {@link MeasureRegistry}.
+ */
+public interface MeasureReporter {
+
+    /**
+     * Called with every snapshot taken by the registry, on the thread of its scheduler.
+     * @param snapshot The snapshot of all registered measures.
+     */
+    void report(@NonNull MeasureSnapshot snapshot);
+
+}
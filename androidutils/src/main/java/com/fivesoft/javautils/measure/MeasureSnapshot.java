@@ -0,0 +1,94 @@
+package com.fivesoft.javautils.measure;
+
+import androidx.annotation.NonNull;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Values of all measures registered in a {@link MeasureRegistry}, read at one point in time.<br>
+ * Every measure gives one or more samples, for example a frequency gives one sample
+ * and an {@link FPSMeasure} gives the average FPS, the frame time percentiles and the jank counts.
+ */
+public final class MeasureSnapshot {
+
+    private final long timeMillis;
+    private final List<Sample> samples;
+
+    MeasureSnapshot(long timeMillis, @NonNull List<Sample> samples) {
+        this.timeMillis = timeMillis;
+        this.samples = Collections.unmodifiableList(samples);
+    }
+
+    /**
+     * Gets the wall clock time of the snapshot. (in milliseconds since the epoch)
+     */
+    public long getTimeMillis() {
+        return timeMillis;
+    }
+
+    /**
+     * Gets the samples, ordered by measure name.
+     */
+    @NonNull
+    public List<Sample> getSamples() {
+        return samples;
+    }
+
+    @NonNull
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder("MeasureSnapshot{time=").append(timeMillis);
+        for (Sample sample : samples) {
+            sb.append("\n  ").append(sample);
+        }
+        return sb.append("\n}").toString();
+    }
+
+    /**
+     * A single value of a measure.
+     */
+    public static final class Sample {
+
+        private final String name;
+        private final Map<String, String> labels;
+        private final double value;
+
+        Sample(@NonNull String name, @NonNull Map<String, String> labels, double value) {
+            this.name = name;
+            this.labels = labels;
+            this.value = value;
+        }
+
+        /**
+         * Gets the name of the sample.
+         */
+        @NonNull
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * Gets the labels of the sample, sorted by key.
+         */
+        @NonNull
+        public Map<String, String> getLabels() {
+            return labels;
+        }
+
+        /**
+         * Gets the value, or {@link Double#NaN} if the measure has no data yet.
+         */
+        public double getValue() {
+            return value;
+        }
+
+        @NonNull
+        @Override
+        public String toString() {
+            return labels.isEmpty() ? name + " = " + value : name + labels + " = " + value;
+        }
+    }
+
+}
@@ -0,0 +1,42 @@
+package com.fivesoft.javautils.measure;
+
+import androidx.annotation.NonNull;
+
+/**
+ * Listener notified when a measure closes a probe, for example to keep a {@link MeasureHistory}.<br>
+ * Called on the thread that moved the measure to the next probe, while the measure is locked,
+ * so it must be quick and must not call back into the measure.<br>
+ * Probes are closed when recording, counting or reading moves the measure past them. A measure which
+ * went quiet keeps its last probe from the listener until it is moved on by its {@code flush()},
+ * for example called by the schedule reading a history.
+ */
+public interface ProbeListener {
+
+    /**
+     * Called when a probe with at least one sample is closed.
+     * A {@link CountMeasure} reports the count of the probe as a single sample.
+     * @param startNanos The start time of the probe, in nanoseconds of the measure's clock.
+     * @param count The number of samples in the probe.
+     * @param sum The sum of the samples.
+     * @param min The lowest sample.
+     * @param max The highest sample.
+     */
+    void onProbeClosed(long startNanos, long count, double sum, double min, double max);
+
+    /**
+     * Combines listeners, so one measure can feed several of them,
+     * for example a {@link MeasureHistory} and a {@link MeasureAlarms.Alarm}.
+     * @param listeners The listeners, notified in order.
+     * @return The combined listener.
+     */
+    @NonNull
+    static ProbeListener all(@NonNull ProbeListener... listeners){
+        ProbeListener[] copy = listeners.clone();
+        return (startNanos, count, sum, min, max) -> {
+            for (ProbeListener listener : copy) {
+                listener.onProbeClosed(startNanos, count, sum, min, max);
+            }
+        };
+    }
+
+}
@@ -0,0 +1,34 @@
+package com.fivesoft.javautils.measure;
+
+/**
+ * Probe arithmetic shared by the measures splitting their interval into a ring of probes.
+ * Probes are numbered from the origin of the measure, probe n covering
+ * [origin + n * duration, origin + (n + 1) * duration).
+ */
+final class Probes {
+
+    private Probes() {
+    }
+
+    /**
+     * Gets the duration of one probe.
+     * @param interval The interval of the measure. (in milliseconds)
+     * @param bufferSize The number of probes the interval is split into.
+     * @return The duration in nanoseconds, at least 1.
+     */
+    static long duration(long interval, int bufferSize){
+        return Math.max(1, interval * 1_000_000 / bufferSize);
+    }
+
+    /**
+     * Gets the number of the probe a time belongs to. Times before the origin belong to probe 0.
+     * @param nanoTime The time, in nanoseconds of the measure's clock.
+     * @param origin The start of probe 0.
+     * @param duration The duration of one probe.
+     * @return The probe number.
+     */
+    static long numberAt(long nanoTime, long origin, long duration){
+        return Math.max(0, nanoTime - origin) / duration;
+    }
+
+}
@@ -0,0 +1,176 @@
+package com.fivesoft.javautils.measure;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Serves the last snapshot of a {@link MeasureRegistry} over HTTP in the Prometheus text format.<br>
+ * The server listens on the loopback address only, so it is reachable from the device itself
+ * or through {@code adb forward}. Every request is answered with the last reported snapshot,
+ * regardless of its path. Connections are handled one at a time on a single daemon thread.
+ */
+public class PrometheusMeasureReporter implements MeasureReporter, Closeable {
+
+    private static final int READ_TIMEOUT_MS = 2000;
+
+    private final ServerSocket serverSocket;
+    private final Thread thread;
+    @Nullable
+    private volatile MeasureSnapshot lastSnapshot;
+
+    /**
+     * Creates a new reporter and starts the server.
+     * @param port The port to listen on, or 0 for any free port.
+     * @throws IOException If the server cannot be started.
+     */
+    public PrometheusMeasureReporter(int port) throws IOException {
+        this.serverSocket = new ServerSocket(port, 0, InetAddress.getLoopbackAddress());
+        this.thread = new Thread(this::serve, "PrometheusMeasureReporter");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    @Override
+    public void report(@NonNull MeasureSnapshot snapshot) {
+        lastSnapshot = snapshot;
+    }
+
+    /**
+     * Gets the port the server listens on.
+     */
+    public int getPort(){
+        return serverSocket.getLocalPort();
+    }
+
+    /**
+     * Stops the server.
+     */
+    @Override
+    public void close() throws IOException {
+        serverSocket.close();
+    }
+
+    /**
+     * Writes a snapshot in the Prometheus text format.
+     * Samples of one name are written together, under one TYPE line.
+     * @param snapshot The snapshot.
+     * @param out The destination.
+     * @throws IOException If writing to the destination fails.
+     */
+    public static void writeText(@NonNull MeasureSnapshot snapshot, @NonNull Appendable out) throws IOException {
+        Map<String, List<MeasureSnapshot.Sample>> byName = new LinkedHashMap<>();
+        for (MeasureSnapshot.Sample sample : snapshot.getSamples()) {
+            String name = sanitizeName(sample.getName());
+            List<MeasureSnapshot.Sample> samples = byName.get(name);
+            if(samples == null){
+                samples = new ArrayList<>();
+                byName.put(name, samples);
+            }
+            samples.add(sample);
+        }
+        for (Map.Entry<String, List<MeasureSnapshot.Sample>> entry : byName.entrySet()) {
+            out.append("# TYPE ").append(entry.getKey()).append(" gauge\n");
+            for (MeasureSnapshot.Sample sample : entry.getValue()) {
+                out.append(entry.getKey());
+                if(!sample.getLabels().isEmpty()){
+                    out.append('{');
+                    boolean first = true;
+                    for (Map.Entry<String, String> label : sample.getLabels().entrySet()) {
+                        if(!first)
+                            out.append(',');
+                        first = false;
+                        out.append(sanitizeName(label.getKey())).append("=\"");
+                        appendEscaped(out, label.getValue());
+                        out.append('"');
+                    }
+                    out.append('}');
+                }
+                out.append(' ').append(formatValue(sample.getValue())).append('\n');
+            }
+        }
+    }
+
+    //Internal method accepting connections until the server is closed
+    private void serve(){
+        while(!serverSocket.isClosed()){
+            try (Socket socket = serverSocket.accept()) {
+                socket.setSoTimeout(READ_TIMEOUT_MS);
+                handle(socket);
+            } catch (IOException e){
+                //Closed server or broken connection, the loop condition decides
+            }
+        }
+    }
+
+    //Internal method to answer a single request
+    private void handle(@NonNull Socket socket) throws IOException {
+        BufferedReader reader = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.US_ASCII));
+        //Skip the request line and headers
+        String line;
+        while((line = reader.readLine()) != null && !line.isEmpty()){
+            //Ignored
+        }
+        StringBuilder body = new StringBuilder();
+        MeasureSnapshot snapshot = lastSnapshot;
+        if(snapshot != null)
+            writeText(snapshot, body);
+        byte[] bytes = body.toString().getBytes(StandardCharsets.UTF_8);
+        String header = "HTTP/1.1 200 OK\r\n" +
+                "Content-Type: text/plain; version=0.0.4; charset=utf-8\r\n" +
+                "Content-Length: " + bytes.length + "\r\n" +
+                "Connection: close\r\n\r\n";
+        OutputStream out = socket.getOutputStream();
+        out.write(header.getBytes(StandardCharsets.US_ASCII));
+        out.write(bytes);
+        out.flush();
+    }
+
+    //Replaces characters not allowed in names with underscores
+    @NonNull
+    private static String sanitizeName(@NonNull String name){
+        StringBuilder sb = new StringBuilder(name.length());
+        for (int i = 0; i < name.length(); i++) {
+            char c = name.charAt(i);
+            boolean valid = (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || c == '_' || c == ':'
+                    || (i > 0 && c >= '0' && c <= '9');
+            sb.append(valid ? c : '_');
+        }
+        return sb.length() == 0 ? "_" : sb.toString();
+    }
+
+    private static void appendEscaped(@NonNull Appendable out, @NonNull String value) throws IOException {
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if(c == '\\' || c == '"')
+                out.append('\\').append(c);
+            else if(c == '\n')
+                out.append("\\n");
+            else
+                out.append(c);
+        }
+    }
+
+    @NonNull
+    private static String formatValue(double value){
+        if(Double.isNaN(value))
+            return "NaN";
+        if(Double.isInfinite(value))
+            return value > 0 ? "+Inf" : "-Inf";
+        return Double.toString(value);
+    }
+
+}
@@ -0,0 +1,287 @@
+package com.fivesoft.javautils.measure;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.fivesoft.javautils.time.Clock;
+
+import java.util.Arrays;
+import java.util.Objects;
+
+/**
+ * Measures the distribution of arbitrary double values, for example payload sizes, queue depths
+ * or temperatures, over a sliding interval.<br>
+ * Values are not stored: every probe of the interval keeps a KLL quantile sketch, whose memory is bounded
+ * by about 3k values no matter how many values are recorded. The accuracy is set by k, the rank error
+ * of a quantile is about 1.65% at the default k = 200 and shrinks in proportion to 1/k.
+ * Probes older than the interval are forgotten.<br>
+ * Recording is safe from many threads. Every probe has its own lock,
+ * so recording does not contend with reading older probes.
+ */
+public class QuantileMeasure {
+
+    /**
+     * Default accuracy parameter of the sketches.
+     */
+    public static final int DEFAULT_K = 200;
+
+    private final KllSketch[] buffer;
+    private final int k;
+    private final long probeDuration;
+    private final long interval;
+    private final Object lock = new Object();
+    private volatile long currentProbe = 0;
+    private volatile long origin;
+    @Nullable
+    private volatile ProbeListener probeListener;
+    private final Clock clock;
+
+    public QuantileMeasure(int bufferSize, long interval) {
+        this(bufferSize, interval, DEFAULT_K, Clock.SYSTEM);
+    }
+
+    /**
+     * Creates a new measure.
+     * @param bufferSize The number of probes the interval is split into.
+     * @param interval The interval of the measure. (in milliseconds)
+     * @param k The accuracy parameter, at least 8. Higher is more accurate and takes more memory.
+     * @param clock The clock used to measure time.
+     */
+    public QuantileMeasure(int bufferSize, long interval, int k, @NonNull Clock clock) {
+        if(bufferSize < 1)
+            throw new IllegalArgumentException("Buffer size must be greater than 0");
+        if(interval < 1)
+            throw new IllegalArgumentException("Interval must be greater than 0");
+        this.clock = Objects.requireNonNull(clock);
+        this.k = k;
+        this.buffer = new KllSketch[bufferSize];
+        for (int i = 0; i < bufferSize; i++) {
+            buffer[i] = new KllSketch(k, System.identityHashCode(this) * 31L + i);
+        }
+        this.probeDuration = Probes.duration(interval, bufferSize);
+        this.interval = interval;
+        reset();
+    }
+
+    /**
+     * Records a value. NaN values are ignored.
+     * @param value The value.
+     */
+    public void record(double value){
+        if(Double.isNaN(value))
+            return;
+        rotateTo(clock.nanoTime());
+        KllSketch sketch = buffer[(int) (currentProbe % buffer.length)];
+        synchronized (sketch) {
+            sketch.update(value);
+        }
+    }
+
+    /**
+     * Gets the value below which the given fraction of values of the last interval fall.
+     * @param quantile The quantile, in range [0, 1]. Example: 0.99 for p99.
+     * @return The value at the quantile, or NaN if no values have been recorded.
+     */
+    public double getQuantile(double quantile){
+        rotateTo(clock.nanoTime());
+        double q = Math.max(0, Math.min(1, quantile));
+        if(q == 0)
+            return getMin();
+        if(q == 1)
+            return getMax();
+        double[][] runs = new double[buffer.length * 4][];
+        long[] weights = new long[runs.length];
+        int runCount = 0;
+        for (KllSketch sketch : buffer) {
+            synchronized (sketch) {
+                int needed = runCount + sketch.getLevelCount();
+                if(needed > runs.length){
+                    runs = Arrays.copyOf(runs, Math.max(needed, runs.length * 2));
+                    weights = Arrays.copyOf(weights, runs.length);
+                }
+                runCount = sketch.addRuns(runs, weights, runCount);
+            }
+        }
+        long total = 0;
+        for (int i = 0; i < runCount; i++) {
+            total += weights[i] * runs[i].length;
+        }
+        long rank = Math.max(1, (long) Math.ceil(q * total));
+        return KllSketch.valueAtRank(runs, weights, runCount, rank);
+    }
+
+    /**
+     * Gets the fraction of values of the last interval lower than or equal to the given value.
+     * @param value The value.
+     * @return The fraction in range [0, 1], or NaN if no values have been recorded.
+     */
+    public double getRank(double value){
+        rotateTo(clock.nanoTime());
+        long below = 0;
+        long total = 0;
+        //A sketch has at most 64 levels, weights are powers of two
+        double[][] runs = new double[64][];
+        long[] weights = new long[64];
+        for (KllSketch sketch : buffer) {
+            synchronized (sketch) {
+                int runCount = sketch.addRuns(runs, weights, 0);
+                for (int i = 0; i < runCount; i++) {
+                    total += weights[i] * runs[i].length;
+                }
+                below += KllSketch.rankOf(runs, weights, runCount, value);
+            }
+        }
+        return total == 0 ? Double.NaN : below / (double) total;
+    }
+
+    /**
+     * Gets the number of values recorded in the last interval.
+     */
+    public long getCount(){
+        rotateTo(clock.nanoTime());
+        long count = 0;
+        for (KllSketch sketch : buffer) {
+            synchronized (sketch) {
+                count += sketch.getCount();
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Gets the lowest value of the last interval, or NaN if no values have been recorded.
+     */
+    public double getMin(){
+        rotateTo(clock.nanoTime());
+        double min = Double.NaN;
+        for (KllSketch sketch : buffer) {
+            synchronized (sketch) {
+                double m = sketch.getMin();
+                if(!Double.isNaN(m) && (Double.isNaN(min) || m < min))
+                    min = m;
+            }
+        }
+        return min;
+    }
+
+    /**
+     * Gets the highest value of the last interval, or NaN if no values have been recorded.
+     */
+    public double getMax(){
+        rotateTo(clock.nanoTime());
+        double max = Double.NaN;
+        for (KllSketch sketch : buffer) {
+            synchronized (sketch) {
+                double m = sketch.getMax();
+                if(!Double.isNaN(m) && (Double.isNaN(max) || m > max))
+                    max = m;
+            }
+        }
+        return max;
+    }
+
+    /**
+     * Gets the mean of the values of the last interval, or NaN if no values have been recorded.
+     */
+    public double getMean(){
+        rotateTo(clock.nanoTime());
+        long count = 0;
+        double sum = 0;
+        for (KllSketch sketch : buffer) {
+            synchronized (sketch) {
+                count += sketch.getCount();
+                sum += sketch.getSum();
+            }
+        }
+        return count == 0 ? Double.NaN : sum / count;
+    }
+
+    public void reset(){
+        synchronized (lock) {
+            origin = clock.nanoTime();
+            currentProbe = 0;
+            for (KllSketch sketch : buffer) {
+                synchronized (sketch) {
+                    sketch.reset();
+                }
+            }
+        }
+    }
+
+    /**
+     * Moves the measure to the current time, so a probe whose time has passed is closed
+     * even if no value has been recorded since. See {@link ProbeListener}.
+     */
+    public void flush(){
+        rotateTo(clock.nanoTime());
+    }
+
+    /**
+     * Sets the listener notified with the count, sum, minimum and maximum of the values of every closed probe.
+     * Probes with no values are not reported. A value recorded by a thread racing with the closing
+     * of its probe still counts for the interval, but may be missing from the report.
+     * @param listener The listener, or null to remove it.
+     */
+    public void setProbeListener(@Nullable ProbeListener listener) {
+        this.probeListener = listener;
+    }
+
+    /**
+     * Gets the accuracy parameter of the sketches.
+     */
+    public int getK() {
+        return k;
+    }
+
+    /**
+     * Gets size of the buffer.
+     */
+    public int getBufferSize() {
+        return buffer.length;
+    }
+
+    /**
+     * Gets the interval of the measure. (in milliseconds)
+     */
+    public long getInterval(){
+        return interval;
+    }
+
+    /**
+     * Gets the clock used to measure time.
+     */
+    @NonNull
+    public Clock getClock() {
+        return clock;
+    }
+
+    //Moves to the probe of the given time, clearing the probes that left the interval
+    private void rotateTo(long nanoTime){
+        long number = Probes.numberAt(nanoTime, origin, probeDuration);
+        if(number <= currentProbe)
+            return;
+        synchronized (lock) {
+            long current = currentProbe;
+            if(number <= current)
+                return;
+            ProbeListener listener = probeListener;
+            if(listener != null){
+                KllSketch closed = buffer[(int) (current % buffer.length)];
+                synchronized (closed) {
+                    if(closed.getCount() > 0)
+                        listener.onProbeClosed(origin + current * probeDuration, closed.getCount(),
+                                closed.getSum(), closed.getMin(), closed.getMax());
+                }
+            }
+            //The slot of a new probe held the probe leaving the interval
+            for (long n = Math.max(current + 1, number - buffer.length + 1); n <= number; n++) {
+                KllSketch sketch = buffer[(int) (n % buffer.length)];
+                synchronized (sketch) {
+                    sketch.reset();
+                }
+            }
+            currentProbe = number;
+        }
+    }
+
+}
@@ -0,0 +1,342 @@
+package com.fivesoft.javautils.measure;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.fivesoft.javautils.time.Scheduler;
+import com.fivesoft.javautils.time.SystemScheduler;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the CPU time and, where available, the allocated bytes of chosen threads over a sliding interval,
+ * so CPU can be attributed to worker, render or logging threads in the field.<br>
+ * Threads register themselves with {@link #trackCurrentThread(String)}. Every {@link #sample()}, or every
+ * period after {@link #start(long, TimeUnit)}, reads the totals of the tracked threads and counts the increase
+ * into a {@link FrequencyMeasure} per thread, so the rates cover the last interval like any other measure.<br>
+ * On a JVM the totals come from {@code ThreadMXBean}, looked up by reflection since {@code java.lang.management}
+ * does not exist on Android. On Android the CPU time is read from {@code /proc/self/task/<tid>/stat},
+ * with a resolution of 10 ms, and allocated bytes are not available.
+ */
+public class ResourceMeasure {
+
+    //Linux reports thread times in clock ticks, USER_HZ is fixed at 100 by the kernel ABI
+    private static final long CLOCK_TICK_NANOS = 10_000_000L;
+
+    private static final Object MX_BEAN;
+    @Nullable
+    private static final Method MX_CPU_TIME;
+    @Nullable
+    private static final Method MX_ALLOCATED_BYTES;
+
+    static {
+        Object bean = null;
+        Method cpuTime = null;
+        Method allocatedBytes = null;
+        try {
+            bean = Class.forName("java.lang.management.ManagementFactory")
+                    .getMethod("getThreadMXBean").invoke(null);
+            Class<?> beanClass = Class.forName("java.lang.management.ThreadMXBean");
+            if((Boolean) beanClass.getMethod("isThreadCpuTimeSupported").invoke(bean)){
+                beanClass.getMethod("setThreadCpuTimeEnabled", boolean.class).invoke(bean, true);
+                cpuTime = beanClass.getMethod("getThreadCpuTime", long.class);
+            }
+            Class<?> sunClass = Class.forName("com.sun.management.ThreadMXBean");
+            if(sunClass.isInstance(bean)
+                    && (Boolean) sunClass.getMethod("isThreadAllocatedMemorySupported").invoke(bean)){
+                sunClass.getMethod("setThreadAllocatedMemoryEnabled", boolean.class).invoke(bean, true);
+                allocatedBytes = sunClass.getMethod("getThreadAllocatedBytes", long.class);
+            }
+        } catch (ReflectiveOperationException | RuntimeException | LinkageError e){
+            //Not a JVM with management beans, for example Android
+        }
+        MX_BEAN = bean;
+        MX_CPU_TIME = cpuTime;
+        MX_ALLOCATED_BYTES = allocatedBytes;
+    }
+
+    private final Map<String, Tracked> threads = new ConcurrentHashMap<>();
+    private final int bufferSize;
+    private final long interval;
+    private final Scheduler scheduler;
+    //Buffer for reading /proc, guarded by this
+    private final byte[] statBuffer = new byte[512];
+    @Nullable
+    private Scheduler.Cancellable sampling;
+
+    public ResourceMeasure(int bufferSize, long interval) {
+        this(bufferSize, interval, SystemScheduler.getInstance());
+    }
+
+    /**
+     * Creates a new measure.
+     * @param bufferSize The number of probes the interval is split into.
+     * @param interval The interval of the measure. (in milliseconds)
+     * @param scheduler The scheduler used for periodic sampling, also the clock of the rates.
+     */
+    public ResourceMeasure(int bufferSize, long interval, @NonNull Scheduler scheduler) {
+        if(bufferSize < 1)
+            throw new IllegalArgumentException("Buffer size must be greater than 0");
+        if(interval < 1)
+            throw new IllegalArgumentException("Interval must be greater than 0");
+        this.bufferSize = bufferSize;
+        this.interval = interval;
+        this.scheduler = Objects.requireNonNull(scheduler);
+    }
+
+    /**
+     * Starts tracking the calling thread. Must be called on the thread itself,
+     * since Android exposes the kernel id of the current thread only.
+     * Replaces a thread tracked under the same name.
+     * @param name The name used to read the rates, for example "render".
+     */
+    public void trackCurrentThread(@NonNull String name){
+        Objects.requireNonNull(name);
+        Thread thread = Thread.currentThread();
+        int tid = MX_CPU_TIME == null ? currentTid() : -1;
+        threads.put(name, new Tracked(thread, tid, new FrequencyMeasure(bufferSize, interval, scheduler),
+                new FrequencyMeasure(bufferSize, interval, scheduler)));
+    }
+
+    /**
+     * Stops tracking a thread. Threads which have terminated are removed by the next sample.
+     * @param name The name the thread is tracked under.
+     */
+    public void untrack(@NonNull String name){
+        threads.remove(name);
+    }
+
+    /**
+     * Gets the names of the tracked threads.
+     */
+    @NonNull
+    public List<String> getTrackedThreads(){
+        return Collections.unmodifiableList(new ArrayList<>(threads.keySet()));
+    }
+
+    /**
+     * Reads the CPU time and the allocated bytes of every tracked thread and counts their increase since
+     * the previous sample. Call it periodically, or use {@link #start(long, TimeUnit)}.
+     */
+    public synchronized void sample(){
+        for (Map.Entry<String, Tracked> entry : threads.entrySet()) {
+            Tracked tracked = entry.getValue();
+            if(!tracked.thread.isAlive()){
+                threads.remove(entry.getKey(), tracked);
+                continue;
+            }
+            tracked.cpu.add(readCpuTime(tracked));
+            tracked.allocated.add(readAllocatedBytes(tracked));
+        }
+    }
+
+    /**
+     * Gets the CPU usage of a thread over the last interval.
+     * @param name The name the thread is tracked under.
+     * @return The CPU time per second of real time, 1.0 meaning one core fully busy,
+     * or -1 if the thread is not tracked or its CPU time is not available.
+     */
+    public double getCpuUsage(@NonNull String name){
+        Tracked tracked = threads.get(name);
+        if(tracked == null)
+            return -1;
+        double nanosPerSecond = tracked.cpu.measure.getFrequency();
+        return nanosPerSecond < 0 ? -1 : nanosPerSecond / 1_000_000_000.0;
+    }
+
+    /**
+     * Gets the allocation rate of a thread over the last interval.
+     * @param name The name the thread is tracked under.
+     * @return The allocated bytes per second, or -1 if the thread is not tracked
+     * or its allocated bytes are not available, which is always the case on Android.
+     */
+    public double getAllocationRate(@NonNull String name){
+        Tracked tracked = threads.get(name);
+        return tracked == null ? -1 : tracked.allocated.measure.getFrequency();
+    }
+
+    /**
+     * Gets the rate measure of the CPU time of a thread, counting nanoseconds of CPU time.
+     * @param name The name the thread is tracked under.
+     * @return The measure, or null if the thread is not tracked.
+     */
+    @Nullable
+    public FrequencyMeasure getCpuTimeMeasure(@NonNull String name){
+        Tracked tracked = threads.get(name);
+        return tracked == null ? null : tracked.cpu.measure;
+    }
+
+    /**
+     * Gets the rate measure of the allocated bytes of a thread.
+     * @param name The name the thread is tracked under.
+     * @return The measure, or null if the thread is not tracked.
+     */
+    @Nullable
+    public FrequencyMeasure getAllocationMeasure(@NonNull String name){
+        Tracked tracked = threads.get(name);
+        return tracked == null ? null : tracked.allocated.measure;
+    }
+
+    /**
+     * Starts sampling periodically. Replaces the previous schedule, if any.
+     * The period should be a fraction of the interval, for example one probe.
+     * @param period The time between two samples.
+     * @param unit The time unit of the period.
+     */
+    public synchronized void start(long period, @NonNull TimeUnit unit){
+        stop();
+        sampling = scheduler.scheduleWithFixedDelay(this::sample, period, period, unit);
+    }
+
+    /**
+     * Stops periodic sampling.
+     */
+    public synchronized void stop(){
+        if(sampling != null){
+            sampling.cancel();
+            sampling = null;
+        }
+    }
+
+    /**
+     * Returns true if the CPU time of threads can be read in this runtime.
+     */
+    public static boolean isCpuTimeSupported(){
+        return MX_CPU_TIME != null || new File("/proc/self/task").isDirectory();
+    }
+
+    /**
+     * Returns true if the allocated bytes of threads can be read in this runtime.
+     */
+    public static boolean isAllocationSupported(){
+        return MX_ALLOCATED_BYTES != null;
+    }
+
+    //Total CPU time of the thread in nanoseconds, -1 if not available
+    private long readCpuTime(@NonNull Tracked tracked){
+        if(MX_CPU_TIME != null)
+            return invokeMxBean(MX_CPU_TIME, tracked.thread.getId());
+        return readProcCpuTime(tracked.tid);
+    }
+
+    //Total allocated bytes of the thread, -1 if not available
+    private long readAllocatedBytes(@NonNull Tracked tracked){
+        if(MX_ALLOCATED_BYTES != null)
+            return invokeMxBean(MX_ALLOCATED_BYTES, tracked.thread.getId());
+        return -1;
+    }
+
+    private static long invokeMxBean(@NonNull Method method, long threadId){
+        try {
+            return (Long) method.invoke(MX_BEAN, threadId);
+        } catch (ReflectiveOperationException | RuntimeException e){
+            return -1;
+        }
+    }
+
+    //Kernel id of the calling thread, -1 if it cannot be read
+    private static int currentTid(){
+        if(!new File("/proc/self/task").isDirectory())
+            return -1;
+        try {
+            return android.os.Process.myTid();
+        } catch (LinkageError | RuntimeException e){
+            //Not on Android, for example a JVM without thread CPU time support
+            return -1;
+        }
+    }
+
+    //Reads utime + stime, fields 14 and 15 of /proc/self/task/<tid>/stat
+    private long readProcCpuTime(int tid){
+        if(tid < 0)
+            return -1;
+        int length;
+        try (FileInputStream in = new FileInputStream("/proc/self/task/" + tid + "/stat")) {
+            length = in.read(statBuffer);
+        } catch (IOException e){
+            return -1;
+        }
+        return parseStatCpuTime(statBuffer, length);
+    }
+
+    //Parses utime + stime in nanoseconds from the first length bytes of a stat file, -1 if not found
+    static long parseStatCpuTime(@NonNull byte[] stat, int length){
+        //The thread name in field 2 may contain spaces, fields are counted from its closing parenthesis
+        int i = length - 1;
+        while(i >= 0 && stat[i] != ')')
+            i--;
+        if(i < 0)
+            return -1;
+        int field = 2;
+        long utime = -1;
+        long value = 0;
+        boolean inNumber = false;
+        for (i++; i < length; i++) {
+            byte b = stat[i];
+            if(b == ' ' || b == '\n'){
+                if(inNumber){
+                    if(field == 14)
+                        utime = value;
+                    else if(field == 15)
+                        return utime < 0 ? -1 : (utime + value) * CLOCK_TICK_NANOS;
+                }
+                inNumber = false;
+            } else {
+                if(!inNumber){
+                    field++;
+                    value = 0;
+                    inNumber = true;
+                }
+                value = value * 10 + (b - '0');
+            }
+        }
+        return -1;
+    }
+
+    //Measure fed with the increase of a total
+    private static final class Counter {
+
+        final FrequencyMeasure measure;
+        long lastTotal = -1;
+
+        Counter(@NonNull FrequencyMeasure measure) {
+            this.measure = measure;
+        }
+
+        void add(long total){
+            if(total < 0)
+                return;
+            //The first total is the baseline, what the thread used before tracking is not counted
+            if(lastTotal >= 0)
+                measure.count(Math.max(0, total - lastTotal));
+            lastTotal = total;
+        }
+    }
+
+    private static final class Tracked {
+
+        final Thread thread;
+        //Kernel thread id, used when reading /proc
+        final int tid;
+        final Counter cpu;
+        final Counter allocated;
+
+        Tracked(@NonNull Thread thread, int tid, @NonNull FrequencyMeasure cpu, @NonNull FrequencyMeasure allocated) {
+            this.thread = thread;
+            this.tid = tid;
+            this.cpu = new Counter(cpu);
+            this.allocated = new Counter(allocated);
+        }
+    }
+
+}
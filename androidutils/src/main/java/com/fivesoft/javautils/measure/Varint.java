@@ -0,0 +1,59 @@
+package com.fivesoft.javautils.measure;
+
+import androidx.annotation.NonNull;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * Variable-length encoding of longs used by the serialized snapshots.
+ * Every byte carries 7 bits, the highest bit tells if more bytes follow,
+ * so small values take a single byte. Signed values are zigzag-encoded first.
+ */
+final class Varint {
+
+    private Varint() {
+    }
+
+    static void writeUnsigned(@NonNull OutputStream out, long value) throws IOException {
+        while((value & ~0x7FL) != 0){
+            out.write((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.write((int) value);
+    }
+
+    static void writeSigned(@NonNull OutputStream out, long value) throws IOException {
+        writeUnsigned(out, (value << 1) ^ (value >> 63));
+    }
+
+    static long readUnsigned(@NonNull InputStream in) throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            int b = in.read();
+            if(b < 0)
+                throw new EOFException("Truncated varint");
+            value |= (long) (b & 0x7F) << shift;
+            if((b & 0x80) == 0)
+                return value;
+        }
+        throw new IOException("Malformed varint");
+    }
+
+    static long readSigned(@NonNull InputStream in) throws IOException {
+        long value = readUnsigned(in);
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    //Reads the format version byte and checks it
+    static void readVersion(@NonNull InputStream in, int expected) throws IOException {
+        int version = in.read();
+        if(version < 0)
+            throw new EOFException("Empty snapshot");
+        if(version != expected)
+            throw new IOException("Unsupported snapshot version: " + version);
+    }
+
+}
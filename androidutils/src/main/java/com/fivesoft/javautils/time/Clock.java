@@ -0,0 +1,31 @@
+package com.fivesoft.javautils.time;
+
+/**
+ * A source of monotonic time.<br>
+ * Classes measuring time accept a Clock, so that tests can replace real time
+ * with a {@link VirtualScheduler}.
+ */
+public interface Clock {
+
+    /**
+     * Clock backed by {@link System#nanoTime()}.
+     */
+    Clock SYSTEM = System::nanoTime;
+
+    /**
+     * Returns the current time in nanoseconds.
+     * The value is only meaningful when compared to other values of the same clock.
+     * @return The current time in nanoseconds.
+     */
+    long nanoTime();
+
+    /**
+     * Returns the current time in milliseconds.
+     * The value is only meaningful when compared to other values of the same clock.
+     * @return The current time in milliseconds.
+     */
+    default long millis(){
+        return nanoTime() / 1_000_000;
+    }
+
+}
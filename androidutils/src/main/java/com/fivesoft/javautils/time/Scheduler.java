@@ -0,0 +1,69 @@
+package com.fivesoft.javautils.time;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Executes tasks after a delay, measured with its own {@link Clock}.<br>
+ * Use {@link SystemScheduler#getInstance()} for real time and
+ * {@link VirtualScheduler} for deterministic tests.
+ */
+public interface Scheduler extends Clock {
+
+    /**
+     * Executes the task once after the given delay.
+     * @param task The task.
+     * @param delay The delay. Negative values are treated as 0.
+     * @param unit The time unit of the delay.
+     * @return The handle used to cancel the task.
+     */
+    @NotNull
+    Cancellable schedule(@NotNull Runnable task, long delay, @NotNull TimeUnit unit);
+
+    /**
+     * Executes the task repeatedly, with the given delay between the end of one execution
+     * and the start of the next one. An exception thrown by the task stops the repetition.
+     * @param task The task.
+     * @param initialDelay The delay of the first execution.
+     * @param delay The delay between executions. Must be greater than 0.
+     * @param unit The time unit of the delays.
+     * @return The handle used to cancel the task.
+     */
+    @NotNull
+    Cancellable scheduleWithFixedDelay(@NotNull Runnable task, long initialDelay, long delay, @NotNull TimeUnit unit);
+
+    /**
+     * Blocks the calling thread until the given time has passed on this scheduler's clock.
+     * @param delay The time to wait.
+     * @param unit The time unit of the delay.
+     * @throws InterruptedException If the current thread is interrupted while waiting.
+     */
+    default void sleep(long delay, @NotNull TimeUnit unit) throws InterruptedException {
+        if(delay <= 0){
+            return;
+        }
+        CountDownLatch latch = new CountDownLatch(1);
+        Cancellable wakeUp = schedule(latch::countDown, delay, unit);
+        try {
+            latch.await();
+        } finally {
+            wakeUp.cancel();
+        }
+    }
+
+    /**
+     * Handle of a scheduled task.
+     */
+    interface Cancellable {
+
+        /**
+         * Cancels the task. A running execution is not interrupted.
+         * Has no effect if the task has already finished or was cancelled.
+         */
+        void cancel();
+
+    }
+
+}
@@ -0,0 +1,80 @@
+package com.fivesoft.javautils.time;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Scheduler working in real time.<br>
+ * All tasks are executed on a single daemon thread shared by the whole process,
+ * so the tasks should be short.
+ */
+public final class SystemScheduler implements Scheduler {
+
+    private static volatile SystemScheduler instance;
+
+    private final ScheduledThreadPoolExecutor executor;
+
+    private SystemScheduler(){
+        executor = new ScheduledThreadPoolExecutor(1, r -> {
+            Thread thread = new Thread(r, "SystemScheduler");
+            thread.setDaemon(true);
+            return thread;
+        });
+        //Cancelled tasks should not linger in the queue
+        executor.setRemoveOnCancelPolicy(true);
+    }
+
+    /**
+     * Returns the shared instance. The scheduler thread is created on the first call.
+     * @return The scheduler.
+     */
+    @NotNull
+    public static SystemScheduler getInstance(){
+        SystemScheduler scheduler = instance;
+        if(scheduler == null){
+            synchronized (SystemScheduler.class){
+                scheduler = instance;
+                if(scheduler == null){
+                    instance = scheduler = new SystemScheduler();
+                }
+            }
+        }
+        return scheduler;
+    }
+
+    @Override
+    public long nanoTime() {
+        return System.nanoTime();
+    }
+
+    @NotNull
+    @Override
+    public Cancellable schedule(@NotNull Runnable task, long delay, @NotNull TimeUnit unit) {
+        ScheduledFuture<?> future = executor.schedule(task, Math.max(0, delay), unit);
+        return () -> future.cancel(false);
+    }
+
+    @NotNull
+    @Override
+    public Cancellable scheduleWithFixedDelay(@NotNull Runnable task, long initialDelay, long delay, @NotNull TimeUnit unit) {
+        ScheduledFuture<?> future = executor.scheduleWithFixedDelay(task, Math.max(0, initialDelay), delay, unit);
+        return () -> future.cancel(false);
+    }
+
+    @Override
+    public void sleep(long delay, @NotNull TimeUnit unit) throws InterruptedException {
+        //Park directly, no need to involve the scheduler thread
+        long deadline = System.nanoTime() + unit.toNanos(Math.max(0, delay));
+        for(long remaining = deadline - System.nanoTime(); remaining > 0; remaining = deadline - System.nanoTime()){
+            LockSupport.parkNanos(this, remaining);
+            if(Thread.interrupted()){
+                throw new InterruptedException();
+            }
+        }
+    }
+
+}
@@ -0,0 +1,217 @@
+package com.fivesoft.javautils.time;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+import java.util.PriorityQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Scheduler working in virtual time, for deterministic tests.<br>
+ * Time stands still until it is moved forward with {@link #advanceBy(long, TimeUnit)}
+ * or {@link #advanceTo(long)}. Tasks that become due are executed on the thread moving the time,
+ * in order of their due time, and in order of scheduling when due at the same time.
+ * No real time passes while simulating, so hours of traffic can be simulated in milliseconds.<br>
+ * Like {@link SystemScheduler}, a task throwing an exception is not repeated and does not affect the
+ * other tasks. The exception is not thrown to the caller moving the time, it is recorded instead
+ * and can be checked with {@link #getFailures()}.
+ */
+public final class VirtualScheduler implements Scheduler {
+
+    private final PriorityQueue<VirtualTask> queue = new PriorityQueue<>();
+    private final List<Throwable> failures = new ArrayList<>();
+    private volatile long now;
+    private long sequence = 0;
+
+    /**
+     * Creates a new VirtualScheduler with time starting at 0.
+     */
+    public VirtualScheduler(){
+        this(0);
+    }
+
+    /**
+     * Creates a new VirtualScheduler.
+     * @param startNanos The initial time in nanoseconds.
+     */
+    public VirtualScheduler(long startNanos){
+        this.now = startNanos;
+    }
+
+    @Override
+    public long nanoTime() {
+        return now;
+    }
+
+    @NotNull
+    @Override
+    public Cancellable schedule(@NotNull Runnable task, long delay, @NotNull TimeUnit unit) {
+        Objects.requireNonNull(task);
+        VirtualTask virtualTask = new VirtualTask(task, 0);
+        enqueue(virtualTask, unit.toNanos(Math.max(0, delay)));
+        return virtualTask;
+    }
+
+    @NotNull
+    @Override
+    public Cancellable scheduleWithFixedDelay(@NotNull Runnable task, long initialDelay, long delay, @NotNull TimeUnit unit) {
+        Objects.requireNonNull(task);
+        if(delay <= 0){
+            throw new IllegalArgumentException("delay must be greater than 0");
+        }
+        VirtualTask virtualTask = new VirtualTask(task, unit.toNanos(delay));
+        enqueue(virtualTask, unit.toNanos(Math.max(0, initialDelay)));
+        return virtualTask;
+    }
+
+    /**
+     * Moves the time forward by the given amount, executing all tasks that become due.
+     * @param time The amount of time. Negative values are treated as 0.
+     * @param unit The time unit.
+     * @return The number of executed tasks.
+     */
+    public int advanceBy(long time, @NotNull TimeUnit unit){
+        return advanceTo(now + unit.toNanos(Math.max(0, time)));
+    }
+
+    /**
+     * Moves the time forward to the given point, executing all tasks that become due.
+     * Tasks scheduled by the executed tasks are executed too, if they become due in time.
+     * @param nanos The new time in nanoseconds. Earlier values than the current time are ignored.
+     * @return The number of executed tasks.
+     */
+    public int advanceTo(long nanos){
+        int executed = 0;
+        for(;;){
+            VirtualTask task;
+            synchronized (this){
+                task = queue.peek();
+                if(task == null || task.dueTime > nanos){
+                    if(nanos > now){
+                        now = nanos;
+                    }
+                    return executed;
+                }
+                queue.poll();
+                if(task.dueTime > now){
+                    now = task.dueTime;
+                }
+            }
+            //Execute outside the lock, the task may schedule other tasks
+            if(task.execute()){
+                executed++;
+            }
+        }
+    }
+
+    /**
+     * Executes the tasks that are due at the current time, without moving the time.
+     * @return The number of executed tasks.
+     */
+    public int runDueTasks(){
+        return advanceTo(now);
+    }
+
+    /**
+     * Moves the time forward to the due time of the next task and executes it,
+     * together with all other tasks due at that time.
+     * @return The number of executed tasks, 0 if no task is scheduled.
+     */
+    public int advanceToNextTask(){
+        long next;
+        synchronized (this){
+            VirtualTask task = queue.peek();
+            if(task == null){
+                return 0;
+            }
+            next = task.dueTime;
+        }
+        return advanceTo(next);
+    }
+
+    /**
+     * Returns the number of scheduled tasks, including cancelled tasks not yet removed.
+     * @return The number of scheduled tasks.
+     */
+    public synchronized int getScheduledTaskCount(){
+        return queue.size();
+    }
+
+    /**
+     * Returns the exceptions thrown by the executed tasks, in order of execution.
+     * @return A copy of the recorded exceptions.
+     */
+    @NotNull
+    public synchronized List<Throwable> getFailures(){
+        return Collections.unmodifiableList(new ArrayList<>(failures));
+    }
+
+    /**
+     * Forgets the recorded exceptions.
+     */
+    public synchronized void clearFailures(){
+        failures.clear();
+    }
+
+    //Internal method to record an exception thrown by a task
+    private synchronized void addFailure(@NotNull Throwable failure){
+        failures.add(failure);
+    }
+
+    //Internal method to add a task to the queue
+    private synchronized void enqueue(@NotNull VirtualTask task, long delayNanos){
+        task.dueTime = now + delayNanos;
+        task.sequence = sequence++;
+        queue.add(task);
+    }
+
+    //A scheduled task, ordered by due time and then by order of scheduling
+    private final class VirtualTask implements Cancellable, Comparable<VirtualTask> {
+
+        @NotNull
+        private final Runnable task;
+        private final long period;
+        private long dueTime;
+        private long sequence;
+        private volatile boolean cancelled = false;
+
+        VirtualTask(@NotNull Runnable task, long period){
+            this.task = task;
+            this.period = period;
+        }
+
+        //Executes the task, returns false if it was cancelled
+        boolean execute(){
+            if(cancelled){
+                return false;
+            }
+            try {
+                task.run();
+            } catch (RuntimeException | Error e) {
+                //The task was already removed from the queue, it is simply not repeated
+                addFailure(e);
+                return true;
+            }
+            if(period > 0 && !cancelled){
+                enqueue(this, period);
+            }
+            return true;
+        }
+
+        @Override
+        public void cancel() {
+            //Removed lazily when it becomes due, removing from the middle of the queue is O(n)
+            cancelled = true;
+        }
+
+        @Override
+        public int compareTo(@NotNull VirtualTask other) {
+            int byTime = Long.compare(dueTime, other.dueTime);
+            return byTime != 0 ? byTime : Long.compare(sequence, other.sequence);
+        }
+    }
+
+}
@@ -0,0 +1,105 @@
+package com.fivesoft.androidutils
+
+import android.os.Looper
+import androidx.lifecycle.Lifecycle
+import androidx.lifecycle.LifecycleOwner
+import androidx.lifecycle.LifecycleRegistry
+import org.junit.After
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertFalse
+import org.junit.Assert.assertTrue
+import org.junit.Test
+import org.junit.runner.RunWith
+import org.robolectric.RobolectricTestRunner
+import org.robolectric.Shadows.shadowOf
+import org.robolectric.annotation.Config
+import org.robolectric.annotation.LooperMode
+import org.robolectric.shadows.ShadowChoreographer
+import java.time.Duration
+
+@RunWith(RobolectricTestRunner::class)
+@LooperMode(LooperMode.Mode.PAUSED)
+@Config(sdk = [34])
+class AutoFpsMonitorTest {
+
+    private val monitor = AutoFpsMonitor()
+
+    private class TestOwner : LifecycleOwner {
+        val registry = LifecycleRegistry.createUnsafe(this)
+        override val lifecycle: Lifecycle
+            get() = registry
+    }
+
+    @After
+    fun tearDown() {
+        monitor.stop()
+    }
+
+    private fun runFrames(frameDelayMillis: Long, durationMillis: Long) {
+        ShadowChoreographer.setFrameDelay(Duration.ofMillis(frameDelayMillis))
+        shadowOf(Looper.getMainLooper()).idleFor(Duration.ofMillis(durationMillis))
+    }
+
+    @Test
+    fun measuresTheFrameRateOfTheChoreographer() {
+        monitor.start()
+        runFrames(16, 2_000)
+
+        assertTrue(monitor.isRunning)
+        val fps = monitor.measure.averageFPS
+        assertTrue("fps $fps", fps in 60.0..65.0)
+        assertTrue(monitor.measure.frameStats.frameCount >= 100)
+        assertEquals(0, monitor.droppedVsyncs)
+    }
+
+    @Test
+    fun countsDroppedVsyncsOfLongFrames() {
+        monitor.start()
+        runFrames(16, 500)
+        //Every frame takes three vsyncs, two of them without a frame
+        val frames = monitor.measure.frameStats.frameCount
+        runFrames(50, 1_000)
+        val longFrames = monitor.measure.frameStats.frameCount - frames
+        assertTrue(longFrames >= 10)
+        //The callback posted before the change may still come after one short frame
+        assertTrue(monitor.droppedVsyncs in (longFrames - 1) * 2..longFrames * 2)
+    }
+
+    @Test
+    fun stopsReceivingFramesWhenStopped() {
+        monitor.start()
+        runFrames(16, 500)
+        monitor.stop()
+        val frames = monitor.measure.frameStats.frameCount
+        runFrames(16, 500)
+
+        assertFalse(monitor.isRunning)
+        assertEquals(frames, monitor.measure.frameStats.frameCount)
+    }
+
+    @Test
+    fun followsTheLifecycle() {
+        val owner = TestOwner()
+        monitor.bindTo(owner)
+        owner.registry.handleLifecycleEvent(Lifecycle.Event.ON_CREATE)
+        owner.registry.handleLifecycleEvent(Lifecycle.Event.ON_START)
+        assertFalse(monitor.isRunning)
+
+        owner.registry.handleLifecycleEvent(Lifecycle.Event.ON_RESUME)
+        assertTrue(monitor.isRunning)
+        runFrames(16, 500)
+        assertTrue(monitor.measure.frameStats.frameCount > 0)
+
+        owner.registry.handleLifecycleEvent(Lifecycle.Event.ON_PAUSE)
+        assertFalse(monitor.isRunning)
+        val frames = monitor.measure.frameStats.frameCount
+        runFrames(16, 500)
+        assertEquals(frames, monitor.measure.frameStats.frameCount)
+
+        owner.registry.handleLifecycleEvent(Lifecycle.Event.ON_RESUME)
+        assertTrue(monitor.isRunning)
+        owner.registry.handleLifecycleEvent(Lifecycle.Event.ON_DESTROY)
+        assertFalse(monitor.isRunning)
+        assertEquals(0, owner.registry.observerCount)
+    }
+}
@@ -0,0 +1,70 @@
+package com.fivesoft.javautils
+
+import com.fivesoft.javautils.time.VirtualScheduler
+import org.junit.Assert.assertEquals
+import org.junit.Test
+import java.util.concurrent.TimeUnit
+
+class ConflatingRateLimiterTest {
+
+    private val scheduler = VirtualScheduler()
+    private val delivered = mutableListOf<Int>()
+
+    @Test
+    fun deliversOnlyLatestValuePerInterval() {
+        val limiter = ConflatingRateLimiter<Int>({ delivered.add(it) }, 100L, false, scheduler)
+
+        limiter.offer(1)
+        assertEquals(listOf(1), delivered)
+
+        limiter.offer(2)
+        limiter.offer(3)
+        limiter.offer(4)
+        scheduler.advanceBy(99, TimeUnit.MILLISECONDS)
+        assertEquals(listOf(1), delivered)
+        scheduler.advanceBy(1, TimeUnit.MILLISECONDS)
+        assertEquals(listOf(1, 4), delivered)
+        assertEquals(2, limiter.conflatedValuesCount)
+
+        limiter.offer(5)
+        limiter.clear()
+        scheduler.advanceBy(1, TimeUnit.SECONDS)
+        assertEquals(listOf(1, 4), delivered)
+        assertEquals(0, scheduler.scheduledTaskCount)
+    }
+
+    @Test
+    fun consumerOfferingValuesDoesNotGrowStack() {
+        lateinit var limiter: ConflatingRateLimiter<Int>
+        limiter = ConflatingRateLimiter<Int>({
+            delivered.add(it)
+            if (it < 100_000) {
+                limiter.offer(it + 1)
+            }
+        }, -1L, false, scheduler)
+
+        limiter.offer(1)
+        assertEquals(100_000, delivered.size)
+        assertEquals(100_000, delivered.last())
+    }
+
+    @Test
+    fun valueOfferedByFailingConsumerIsStillDelivered() {
+        lateinit var limiter: ConflatingRateLimiter<Int>
+        limiter = ConflatingRateLimiter<Int>({
+            delivered.add(it)
+            if (it == 1) {
+                limiter.offer(2)
+                throw IllegalStateException()
+            }
+        }, -1L, false, scheduler)
+
+        try {
+            limiter.offer(1)
+            throw AssertionError("The consumer failure was not propagated")
+        } catch (expected: IllegalStateException) {
+        }
+        scheduler.runDueTasks()
+        assertEquals(listOf(1, 2), delivered)
+    }
+}
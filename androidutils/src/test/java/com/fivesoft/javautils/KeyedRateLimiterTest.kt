@@ -0,0 +1,74 @@
+package com.fivesoft.javautils
+
+import com.fivesoft.javautils.time.VirtualScheduler
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertTrue
+import org.junit.Test
+import java.lang.ref.WeakReference
+import java.util.concurrent.TimeUnit
+
+class KeyedRateLimiterTest {
+
+    private val scheduler = VirtualScheduler()
+    private val executed = mutableListOf<String>()
+
+    @Test
+    fun throttlesEachKeySeparately() {
+        val limiter = KeyedRateLimiter<String>({ executed.add(it) }, 100L, 10_000L, scheduler)
+
+        limiter.run("a")
+        limiter.run("b")
+        limiter.run("a") //Trailing run of "a"
+        limiter.run("a") //Dropped, a trailing run is already scheduled
+        assertEquals(listOf("a", "b"), executed)
+        assertEquals(1, limiter.droppedTasksCount)
+
+        scheduler.advanceBy(99, TimeUnit.MILLISECONDS)
+        assertEquals(listOf("a", "b"), executed)
+        scheduler.advanceBy(1, TimeUnit.MILLISECONDS)
+        assertEquals(listOf("a", "b", "a"), executed)
+        limiter.close()
+    }
+
+    @Test
+    fun evictsIdleKeys() {
+        val limiter = KeyedRateLimiter<String>({ executed.add(it) }, 100L, 1_000L, scheduler)
+        limiter.run("a")
+        limiter.run("b")
+        assertEquals(2, limiter.size())
+
+        scheduler.advanceBy(600, TimeUnit.MILLISECONDS)
+        limiter.run("b")
+        scheduler.advanceBy(900, TimeUnit.MILLISECONDS)
+        //"a" has been idle for 1.5 s, "b" for 0.9 s
+        assertEquals(1, limiter.size())
+
+        scheduler.advanceBy(1, TimeUnit.SECONDS)
+        assertEquals(0, limiter.size())
+        limiter.close()
+    }
+
+    @Test
+    fun sweepCancelsItselfWhenLimiterIsCollected() {
+        val reference = createAndForget()
+        //A limiter still retained by the sweep fails the test instead of hanging it
+        val deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10)
+        while (reference.get() != null) {
+            assertTrue("The limiter was not collected", System.nanoTime() < deadline)
+            System.gc()
+            Thread.sleep(10)
+        }
+        //Must not throw into the caller moving the time
+        scheduler.advanceBy(10, TimeUnit.SECONDS)
+        scheduler.advanceBy(10, TimeUnit.SECONDS)
+        assertEquals(0, scheduler.scheduledTaskCount)
+    }
+
+    private fun createAndForget(): WeakReference<KeyedRateLimiter<String>> {
+        val limiter = KeyedRateLimiter<String>({ }, 100L, 1_000L, scheduler)
+        limiter.run("a")
+        scheduler.advanceBy(1, TimeUnit.SECONDS)
+        assertTrue(scheduler.scheduledTaskCount > 0)
+        return WeakReference(limiter)
+    }
+}
@@ -0,0 +1,100 @@
+package com.fivesoft.javautils
+
+import com.fivesoft.javautils.time.VirtualScheduler
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertTrue
+import org.junit.Test
+import java.util.Random
+import java.util.concurrent.TimeUnit
+
+class RateBudgetTest {
+
+    private val scheduler = VirtualScheduler()
+
+    @Test
+    fun loneMemberGetsTheWholeBudget() {
+        val budget = RateBudget(50f, scheduler)
+        val limiter = RateLimiter(null, 1L, scheduler)
+        budget.attach(limiter, 1f)
+
+        //Bursts of 5 permits every 500 ms must not shrink the share
+        var lastBurstMs = 0L
+        repeat(40) {
+            val start = scheduler.millis()
+            val permits = List(5) { limiter.acquireAsync() }
+            while (!permits.last().isDone) {
+                scheduler.advanceBy(1, TimeUnit.MILLISECONDS)
+            }
+            lastBurstMs = scheduler.millis() - start
+            scheduler.advanceTo(TimeUnit.MILLISECONDS.toNanos(start + 500))
+        }
+        assertEquals(50f, budget.getShare(limiter), 0.01f)
+        //4 intervals of 20 ms at 50 Hz
+        assertTrue("Burst took $lastBurstMs ms", lastBurstMs <= 80)
+    }
+
+    @Test
+    fun busyMembersSplitByWeight() {
+        val budget = RateBudget(40f, scheduler)
+        val counts = IntArray(2)
+        val light = RateLimiter({ counts[0]++ }, 1L, scheduler)
+        val heavy = RateLimiter({ counts[1]++ }, 1L, scheduler)
+        budget.attach(light, 1f)
+        budget.attach(heavy, 3f)
+
+        repeat(20_000) {
+            light.run()
+            heavy.run()
+            scheduler.advanceBy(1, TimeUnit.MILLISECONDS)
+        }
+        assertEquals(10f, budget.getShare(light), 0.01f)
+        assertEquals(30f, budget.getShare(heavy), 0.01f)
+        //Never more often than the budget, with slack for the first rebalance
+        assertTrue(counts[0] + counts[1] <= 40 * 20 + 5)
+        assertEquals(3.0, counts[1].toDouble() / counts[0], 0.2)
+    }
+
+    @Test
+    fun idleMemberLendsItsShareAndGetsItBackWhenActive() {
+        val budget = RateBudget(20f, scheduler)
+        val busy = RateLimiter({ }, 1L, scheduler)
+        val idle = RateLimiter({ }, 1L, scheduler)
+        budget.attach(busy, 1f)
+        budget.attach(idle, 1f)
+
+        repeat(5_000) {
+            busy.run()
+            scheduler.advanceBy(1, TimeUnit.MILLISECONDS)
+        }
+        assertTrue(budget.getShare(busy) >= 19f)
+
+        repeat(2_000) {
+            busy.run()
+            idle.run()
+            scheduler.advanceBy(1, TimeUnit.MILLISECONDS)
+        }
+        assertEquals(10f, budget.getShare(busy), 0.01f)
+        assertEquals(10f, budget.getShare(idle), 0.01f)
+    }
+
+    @Test
+    fun sharesNeverExceedTheBudget() {
+        val random = Random(42)
+        repeat(50) {
+            val max = 1f + random.nextInt(200)
+            val budget = RateBudget(max, scheduler)
+            val limiters = List(1 + random.nextInt(6)) {
+                val own = if (random.nextBoolean()) -1L else 1L + random.nextInt(200)
+                RateLimiter({ }, own, scheduler).also { budget.attach(it, 0.5f + random.nextFloat() * 4) }
+            }
+            repeat(2_000) {
+                for (limiter in limiters) {
+                    if (random.nextInt(limiters.indexOf(limiter) + 2) == 0) limiter.run()
+                }
+                scheduler.advanceBy(1 + random.nextInt(5).toLong(), TimeUnit.MILLISECONDS)
+                val sum = limiters.sumOf { budget.getShare(it).toDouble() }
+                assertTrue("Shares $sum over budget $max", sum <= max * (1 + 1e-5))
+            }
+        }
+    }
+}
@@ -0,0 +1,243 @@
+package com.fivesoft.javautils
+
+import com.fivesoft.javautils.time.VirtualScheduler
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertFalse
+import org.junit.Assert.assertNull
+import org.junit.Assert.assertTrue
+import org.junit.Test
+import java.util.concurrent.TimeUnit
+
+class RateLimiterTest {
+
+    private val scheduler = VirtualScheduler()
+    private val executed = mutableListOf<String>()
+
+    @Test
+    fun runsLeadingAndOneTrailingExecutionPerInterval() {
+        val limiter = RateLimiter({ executed.add("a") }, 100L, scheduler)
+
+        limiter.run()
+        limiter.run()
+        limiter.run()
+        assertEquals(1, executed.size)
+        assertEquals(1, limiter.droppedTasksCount)
+
+        scheduler.advanceBy(99, TimeUnit.MILLISECONDS)
+        assertEquals(1, executed.size)
+        scheduler.advanceBy(1, TimeUnit.MILLISECONDS)
+        assertEquals(2, executed.size)
+
+        //Simulate 10 s of calls every millisecond, at most 10 executions per second
+        repeat(10_000) {
+            limiter.run()
+            scheduler.advanceBy(1, TimeUnit.MILLISECONDS)
+        }
+        assertEquals(2 + 100, executed.size)
+    }
+
+    @Test
+    fun setTaskCancelsPendingTrailingExecution() {
+        val limiter = RateLimiter({ executed.add("a") }, 100L, scheduler)
+        limiter.run()
+        limiter.run() //Trailing execution of "a"
+
+        limiter.setTask { executed.add("b") }
+        scheduler.advanceBy(1, TimeUnit.SECONDS)
+        assertEquals(listOf("a"), executed)
+
+        limiter.run()
+        assertEquals(listOf("a", "b"), executed)
+    }
+
+    @Test
+    fun setTaskWithoutInterruptRunsNewTaskWhenDue() {
+        val limiter = RateLimiter({ executed.add("a") }, 100L, scheduler)
+        limiter.run()
+        limiter.run()
+
+        limiter.setTask({ executed.add("b") }, false)
+        scheduler.advanceBy(100, TimeUnit.MILLISECONDS)
+        assertEquals(listOf("a", "b"), executed)
+    }
+
+    @Test
+    fun setTaskDoesNotWaitForRunningExecution() {
+        lateinit var limiter: RateLimiter
+        limiter = RateLimiter({
+            executed.add("a")
+            //Replacing the task from inside the running task must not deadlock
+            limiter.setTask { executed.add("b") }
+        }, 100L, scheduler)
+        limiter.run()
+        scheduler.advanceBy(100, TimeUnit.MILLISECONDS)
+        limiter.run()
+        assertEquals(listOf("a", "b"), executed)
+    }
+
+    @Test
+    fun alignToFramesWithoutLooperRunsTrailingExecutionOnScheduler() {
+        val limiter = RateLimiter({ executed.add("a") }, 100L, scheduler)
+        //Without a looper there is no Choreographer to align to, the flag must be ignored
+        limiter.setLooper(null, true)
+        limiter.run()
+        limiter.run()
+
+        scheduler.advanceBy(100, TimeUnit.MILLISECONDS)
+        assertTrue(scheduler.failures.isEmpty())
+        assertEquals(listOf("a", "a"), executed)
+        assertEquals(0, limiter.droppedTasksCount)
+    }
+
+    @Test
+    fun adaptiveIntervalFollowsAverageTaskDuration() {
+        var duration = 20L
+        val limiter = RateLimiter({
+            //The task takes as long as the virtual clock is moved
+            scheduler.advanceBy(duration, TimeUnit.MILLISECONDS)
+        }, 100L, scheduler)
+        limiter.setAdaptive(0.5f, 1f, 100f)
+        assertTrue(limiter.isAdaptive)
+        //Starts at the highest allowed frequency
+        assertEquals(10, limiter.minInterval)
+        assertEquals(-1.0, limiter.averageTaskDuration, 0.0)
+
+        limiter.run()
+        assertEquals(20.0, limiter.averageTaskDuration, 1e-9)
+        assertEquals(40, limiter.minInterval)
+
+        //20 + 0.2 * (70 - 20) = 30 ms on average, 60 ms of interval at 50% duty cycle
+        duration = 70
+        scheduler.advanceBy(40, TimeUnit.MILLISECONDS)
+        limiter.run()
+        assertEquals(30.0, limiter.averageTaskDuration, 1e-9)
+        assertEquals(60, limiter.minInterval)
+
+        limiter.disableAdaptive()
+        assertFalse(limiter.isAdaptive)
+        duration = 1
+        scheduler.advanceBy(60, TimeUnit.MILLISECONDS)
+        limiter.run()
+        assertEquals(60, limiter.minInterval)
+    }
+
+    @Test
+    fun adaptiveIntervalIsClampedToFrequencyRange() {
+        var duration = 1_000L
+        val limiter = RateLimiter({ scheduler.advanceBy(duration, TimeUnit.MILLISECONDS) }, 100L, scheduler)
+        limiter.setAdaptive(0.5f, 1f, 100f)
+
+        //2000 ms needed, but at least 1 Hz is allowed
+        limiter.run()
+        assertEquals(1_000, limiter.minInterval)
+
+        //The average converges to 1 ms, 2 ms needed, but at most 100 Hz is allowed
+        duration = 1
+        repeat(100) {
+            scheduler.advanceBy(limiter.minInterval, TimeUnit.MILLISECONDS)
+            limiter.run()
+        }
+        assertEquals(1.0, limiter.averageTaskDuration, 1e-3)
+        assertEquals(10, limiter.minInterval)
+    }
+
+    @Test
+    fun adaptiveIntervalLimitsExecutions() {
+        val limiter = RateLimiter({
+            executed.add("a")
+            scheduler.advanceBy(10, TimeUnit.MILLISECONDS)
+        }, 100L, scheduler)
+        //A 10 ms task at 25% duty cycle runs at most every 40 ms
+        limiter.setAdaptive(0.25f, 1f, 1000f)
+        limiter.run()
+        assertEquals(40, limiter.minInterval)
+
+        scheduler.advanceBy(29, TimeUnit.MILLISECONDS)
+        limiter.run()
+        assertEquals(1, executed.size)
+        scheduler.advanceBy(1, TimeUnit.MILLISECONDS)
+        assertEquals(2, executed.size)
+    }
+
+    @Test
+    fun setAdaptiveRejectsInvalidArguments() {
+        val limiter = RateLimiter({ }, 100L, scheduler)
+        for (args in listOf(floatArrayOf(0f, 1f, 10f), floatArrayOf(1.5f, 1f, 10f),
+                floatArrayOf(0.5f, 0f, 10f), floatArrayOf(0.5f, 10f, 1f))) {
+            try {
+                limiter.setAdaptive(args[0], args[1], args[2])
+                throw AssertionError("Accepted " + args.contentToString())
+            } catch (expected: IllegalArgumentException) {
+            }
+        }
+        assertFalse(limiter.isAdaptive)
+    }
+
+    @Test
+    fun metricsCountExecutionsTrailingAndDroppedCalls() {
+        val limiter = RateLimiter({ executed.add("a") }, 100L, scheduler)
+        limiter.setMetricsEnabled(true)
+
+        //Leading execution, one trailing execution scheduled and one call dropped
+        limiter.run()
+        limiter.run()
+        limiter.run()
+        var metrics = limiter.metrics
+        assertEquals(1, metrics.executedCount)
+        assertEquals(1, metrics.trailingScheduledCount)
+        assertEquals(1, metrics.droppedCount)
+
+        scheduler.advanceBy(100, TimeUnit.MILLISECONDS)
+        metrics = limiter.metrics
+        assertEquals(2, metrics.executedCount)
+        assertEquals(1, metrics.droppedCount)
+
+        //Calls every millisecond for 2 s: per 100 ms one trailing execution and 99 dropped calls
+        repeat(2_000) {
+            limiter.run()
+            scheduler.advanceBy(1, TimeUnit.MILLISECONDS)
+        }
+        metrics = limiter.metrics
+        assertEquals(executed.size.toLong(), metrics.executedCount)
+        assertEquals(22, metrics.executedCount)
+        assertEquals(21, metrics.trailingScheduledCount)
+        assertEquals(1 + 20 * 99L, metrics.droppedCount)
+        assertEquals(metrics.droppedCount, limiter.droppedTasksCount)
+        assertEquals(10.0, metrics.achievedFrequency, 0.5)
+
+        //The virtual scheduler runs every trailing execution exactly when it is due
+        val delay = metrics.schedulingDelay!!
+        assertEquals(21, delay.count)
+        assertEquals(0, delay.max)
+        assertEquals(22, metrics.taskDuration!!.count)
+        assertEquals(scheduler.failures, emptyList<Throwable>())
+    }
+
+    @Test
+    fun metricsAreResetAndDisabled() {
+        val limiter = RateLimiter({ }, 100L, scheduler)
+        limiter.setMetricsEnabled(true)
+        limiter.run()
+        limiter.run()
+        scheduler.advanceBy(100, TimeUnit.MILLISECONDS)
+
+        limiter.resetMetrics()
+        var metrics = limiter.metrics
+        assertEquals(0, metrics.executedCount)
+        assertEquals(0, metrics.trailingScheduledCount)
+        assertEquals(0, metrics.droppedCount)
+        assertEquals(0, metrics.schedulingDelay!!.count)
+        assertEquals(0, metrics.taskDuration!!.count)
+
+        limiter.setMetricsEnabled(false)
+        assertFalse(limiter.isMetricsEnabled)
+        scheduler.advanceBy(100, TimeUnit.MILLISECONDS)
+        limiter.run()
+        metrics = limiter.metrics
+        //Counters are always collected
+        assertEquals(1, metrics.executedCount)
+        assertEquals(-1.0, metrics.achievedFrequency, 0.0)
+        assertNull(metrics.schedulingDelay)
+        assertNull(metrics.taskDuration)
+    }
+}
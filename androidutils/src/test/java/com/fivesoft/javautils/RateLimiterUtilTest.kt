@@ -0,0 +1,51 @@
+package com.fivesoft.javautils
+
+import com.fivesoft.javautils.time.VirtualScheduler
+import kotlinx.coroutines.Dispatchers
+import kotlinx.coroutines.launch
+import kotlinx.coroutines.runBlocking
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertTrue
+import org.junit.Test
+import java.util.concurrent.TimeUnit
+
+class RateLimiterUtilTest {
+
+    private val scheduler = VirtualScheduler()
+
+    @Test
+    fun cancelledWaiterGivesUpItsPlace() = runBlocking {
+        val limiter = RateLimiter(null, 100L, scheduler)
+        //Takes the slot at time 0
+        assertTrue(limiter.acquireAsync().isDone)
+
+        val first = launch(Dispatchers.Unconfined) { limiter.awaitPermit() }
+        var grantedAt = -1L
+        val second = launch(Dispatchers.Unconfined) {
+            limiter.awaitPermit()
+            grantedAt = scheduler.millis()
+        }
+        first.cancel()
+
+        scheduler.advanceBy(100, TimeUnit.MILLISECONDS)
+        second.join()
+        //The cancelled waiter must not take the slot at 100 ms
+        assertEquals(100L, grantedAt)
+        assertTrue(first.isCancelled)
+    }
+
+    @Test
+    fun waitersAreServedOnePerInterval() = runBlocking {
+        val limiter = RateLimiter(null, 100L, scheduler)
+        val grants = mutableListOf<Long>()
+        val jobs = List(3) {
+            launch(Dispatchers.Unconfined) {
+                limiter.awaitPermit()
+                grants.add(scheduler.millis())
+            }
+        }
+        scheduler.advanceBy(1, TimeUnit.SECONDS)
+        jobs.forEach { it.join() }
+        assertEquals(listOf(0L, 100L, 200L), grants)
+    }
+}
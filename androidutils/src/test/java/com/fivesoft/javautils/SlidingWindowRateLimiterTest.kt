@@ -0,0 +1,80 @@
+package com.fivesoft.javautils
+
+import com.fivesoft.javautils.time.VirtualScheduler
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertFalse
+import org.junit.Assert.assertTrue
+import org.junit.Test
+import java.util.concurrent.TimeUnit
+
+class SlidingWindowRateLimiterTest {
+
+    private val scheduler = VirtualScheduler()
+
+    @Test
+    fun logAllowsBurstsWithinTheWindow() {
+        val limiter = SlidingWindowRateLimiter.log(3, 1, TimeUnit.SECONDS, scheduler)
+        assertTrue(limiter.tryAcquire())
+        scheduler.advanceBy(100, TimeUnit.MILLISECONDS)
+        assertTrue(limiter.tryAcquire())
+        assertTrue(limiter.tryAcquire())
+        assertFalse(limiter.tryAcquire())
+        assertEquals(0, limiter.availablePermits)
+
+        //The first permit leaves the window at 1000 ms, the others at 1100 ms
+        scheduler.advanceBy(899, TimeUnit.MILLISECONDS)
+        assertFalse(limiter.tryAcquire())
+        scheduler.advanceBy(1, TimeUnit.MILLISECONDS)
+        assertEquals(1, limiter.availablePermits)
+        assertTrue(limiter.tryAcquire())
+        assertFalse(limiter.tryAcquire())
+        scheduler.advanceBy(100, TimeUnit.MILLISECONDS)
+        assertEquals(2, limiter.availablePermits)
+    }
+
+    @Test
+    fun logNeverExceedsTheLimitInAnyWindow() {
+        val limiter = SlidingWindowRateLimiter.log(30, 1, TimeUnit.MINUTES, scheduler)
+        val granted = mutableListOf<Long>()
+        //An hour of attempts every 100 ms
+        repeat(36_000) {
+            if (limiter.tryAcquire()) granted.add(scheduler.millis())
+            scheduler.advanceBy(100, TimeUnit.MILLISECONDS)
+        }
+        for (i in 30 until granted.size) {
+            assertTrue(granted[i] - granted[i - 30] >= 60_000)
+        }
+        assertEquals(30 * 60, granted.size)
+    }
+
+    @Test
+    fun counterStaysCloseToTheLimit() {
+        val limiter = SlidingWindowRateLimiter.counter(100, 1, TimeUnit.SECONDS, 10, scheduler)
+        var granted = 0
+        //10 s of attempts every millisecond
+        repeat(10_000) {
+            if (limiter.tryAcquire()) granted++
+            scheduler.advanceBy(1, TimeUnit.MILLISECONDS)
+        }
+        //The estimate is approximate, but must not go over the limit on average
+        assertTrue("granted $granted", granted in 900..1000)
+    }
+
+    @Test
+    fun counterForgetsPermitsAfterIdleWindow() {
+        val limiter = SlidingWindowRateLimiter.counter(5, 1, TimeUnit.SECONDS, 4, scheduler)
+        repeat(5) { assertTrue(limiter.tryAcquire()) }
+        assertFalse(limiter.tryAcquire())
+        scheduler.advanceBy(5, TimeUnit.SECONDS)
+        assertEquals(5, limiter.availablePermits)
+    }
+
+    @Test
+    fun resetForgetsAllPermits() {
+        val limiter = SlidingWindowRateLimiter.log(2, 1, TimeUnit.SECONDS, scheduler)
+        assertTrue(limiter.tryAcquire())
+        assertTrue(limiter.tryAcquire())
+        limiter.reset()
+        assertEquals(2, limiter.availablePermits)
+    }
+}
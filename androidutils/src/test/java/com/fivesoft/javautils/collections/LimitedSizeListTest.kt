@@ -0,0 +1,125 @@
+package com.fivesoft.javautils.collections
+
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertFalse
+import org.junit.Assert.assertTrue
+import org.junit.Test
+
+class LimitedSizeListTest {
+
+    private fun limitedList(maxSize: Int, vararg items: Int) =
+        LimitedSizeList<Int>(maxSize).also { list -> items.forEach { list.add(it) } }
+
+    @Test
+    fun evictsOldestItemsAcrossArrayEnd() {
+        val list = limitedList(3, 1, 2, 3)
+        assertEquals(listOf(1, 2, 3), list.toList())
+
+        //Every add from now on overwrites the oldest item, the head wraps around twice
+        for (i in 4..9) {
+            list.add(i)
+            assertEquals(listOf(i - 2, i - 1, i), list.toList())
+        }
+        assertEquals(3, list.size)
+        assertEquals(7, list.get(0))
+        assertEquals(9, list.get(2))
+        assertTrue(list.contains(8))
+        assertFalse(list.contains(6))
+        assertEquals("[7, 8, 9]", list.toString())
+    }
+
+    @Test
+    fun addAllKeepsOnlyLastItems() {
+        val list = limitedList(4, 1, 2, 3)
+        list.addAllLast((10..19).toList())
+        assertEquals(listOf(16, 17, 18, 19), list.toList())
+
+        //Partially overflowing, copied in two parts around the array end
+        list.addAllLast(listOf(20, 21))
+        assertEquals(listOf(18, 19, 20, 21), list.toList())
+
+        list.addAllLast(emptyList())
+        assertEquals(4, list.size)
+    }
+
+    @Test
+    fun removesAtIndexInBothHalves() {
+        //The head is not at index 0 of the array, so moves wrap around
+        val list = limitedList(5, 0, 0, 1, 2, 3, 4, 5)
+
+        //First half, items before the index move towards the end
+        list.remove(1)
+        assertEquals(listOf(1, 3, 4, 5), list.toList())
+
+        //Second half, items after the index move towards the start
+        list.remove(2)
+        assertEquals(listOf(1, 3, 5), list.toList())
+
+        list.remove(0)
+        list.remove(1)
+        list.remove(0)
+        assertTrue(list.isEmpty())
+
+        list.add(6)
+        assertEquals(listOf(6), list.toList())
+        try {
+            list.remove(1)
+            throw AssertionError("Removed an index out of bounds")
+        } catch (expected: IndexOutOfBoundsException) {
+        }
+    }
+
+    @Test
+    fun removeFirstAndLastOnEmptyListThrow() {
+        val list = limitedList(2, 1, 2, 3)
+        list.removeFirst()
+        assertEquals(listOf(3), list.toList())
+        list.removeLast()
+        assertTrue(list.isEmpty())
+
+        try {
+            list.removeFirst()
+            throw AssertionError("Removed the first item of an empty list")
+        } catch (expected: NoSuchElementException) {
+        }
+        try {
+            list.removeLast()
+            throw AssertionError("Removed the last item of an empty list")
+        } catch (expected: NoSuchElementException) {
+        }
+    }
+
+    @Test
+    fun iteratorFailsFastOnChange() {
+        val list = limitedList(3, 1, 2, 3)
+        val iterator = list.iterator()
+        assertEquals(1, iterator.next())
+        list.add(4)
+        try {
+            iterator.next()
+            throw AssertionError("The iterator did not detect the change")
+        } catch (expected: ConcurrentModificationException) {
+        }
+    }
+
+    @Test
+    fun snapshotIsNotChangedByList() {
+        val list = limitedList(3, 1, 2, 3)
+        val snapshot = list.toList()
+        //Taken again before a change, the same snapshot is returned
+        assertTrue(snapshot === list.toList())
+
+        list.add(4)
+        assertEquals(listOf(1, 2, 3), snapshot)
+        assertEquals(listOf(2, 3, 4), list.toList())
+
+        val second = list.toList()
+        list.clear()
+        assertEquals(listOf(2, 3, 4), second)
+        assertTrue(list.toList().isEmpty())
+
+        list.add(5)
+        assertEquals(listOf(2, 3, 4), second)
+        assertEquals(listOf(5), list.toList())
+    }
+}
@@ -0,0 +1,126 @@
+package com.fivesoft.javautils.io
+
+import com.fivesoft.javautils.measure.BitrateMeasure
+import com.fivesoft.javautils.time.VirtualScheduler
+import org.junit.Assert.assertEquals
+import org.junit.Test
+import java.io.ByteArrayInputStream
+import java.io.ByteArrayOutputStream
+import java.nio.ByteBuffer
+import java.nio.channels.ReadableByteChannel
+import java.nio.channels.WritableByteChannel
+
+class MeteredIoTest {
+
+    private val measure = BitrateMeasure(10, 1_000, VirtualScheduler())
+    private val data = ByteArray(100) { it.toByte() }
+
+    //Channel transferring at most 3 bytes per call, like a non-blocking socket
+    private class PartialChannel(private val source: ByteArray) : ReadableByteChannel, WritableByteChannel {
+        private var position = 0
+        val written = ByteArrayOutputStream()
+
+        override fun read(dst: ByteBuffer): Int {
+            if (position == source.size) return -1
+            val n = minOf(3, dst.remaining(), source.size - position)
+            dst.put(source, position, n)
+            position += n
+            return n
+        }
+
+        override fun write(src: ByteBuffer): Int {
+            val n = minOf(3, src.remaining())
+            repeat(n) { written.write(src.get().toInt()) }
+            return n
+        }
+
+        override fun isOpen() = true
+
+        override fun close() {}
+    }
+
+    @Test
+    fun inputStreamCountsReadBytesButNotEofOrSkip() {
+        val stream = MeteredInputStream(ByteArrayInputStream(data), measure)
+        val buffer = ByteArray(64)
+
+        assertEquals(40, stream.read(buffer, 0, 40))
+        assertEquals(40, stream.read())
+        assertEquals(41, stream.totalBytes)
+        assertEquals(41 * 8L, measure.count)
+
+        //Skipped bytes are not counted
+        assertEquals(9, stream.skip(9))
+        assertEquals(41, stream.totalBytes)
+
+        //Only the 50 bytes left are counted, the end of the stream is not
+        assertEquals(50, stream.read(buffer, 0, 64))
+        assertEquals(-1, stream.read(buffer, 0, 64))
+        assertEquals(-1, stream.read())
+        assertEquals(91, stream.totalBytes)
+        assertEquals(91 * 8L, measure.count)
+    }
+
+    @Test
+    fun outputStreamCountsWrittenBytes() {
+        val out = ByteArrayOutputStream()
+        val stream = MeteredOutputStream(out, measure)
+        stream.write(data, 10, 30)
+        stream.write(7)
+        stream.write(data)
+        assertEquals(131, stream.totalBytes)
+        assertEquals(131 * 8L, measure.count)
+        assertEquals(131, out.size())
+    }
+
+    @Test
+    fun batchedStreamPublishesWhenFullAndOnClose() {
+        val stream = MeteredInputStream(ByteArrayInputStream(data), measure, 16)
+        val buffer = ByteArray(10)
+
+        stream.read(buffer)
+        assertEquals(10, stream.totalBytes)
+        //Nothing published yet
+        assertEquals(-1, measure.count)
+        stream.read(buffer)
+        assertEquals(20 * 8L, measure.count)
+
+        stream.read(buffer)
+        stream.close()
+        assertEquals(30 * 8L, measure.count)
+    }
+
+    @Test
+    fun channelsCountPartialTransfers() {
+        val source = PartialChannel(data)
+        val input = MeteredReadableByteChannel(source, measure)
+        val buffer = ByteBuffer.allocate(8)
+
+        //A partial read counts only the bytes transferred
+        assertEquals(3, input.read(buffer))
+        assertEquals(3, input.totalBytes)
+        buffer.clear()
+        var total = 3
+        while (true) {
+            val n = input.read(buffer)
+            if (n < 0) break
+            total += n
+            buffer.clear()
+        }
+        assertEquals(100, total)
+        assertEquals(100, input.totalBytes)
+        assertEquals(100 * 8L, measure.count)
+
+        val sink = PartialChannel(ByteArray(0))
+        val output = MeteredWritableByteChannel(sink, measure)
+        val src = ByteBuffer.wrap(data, 0, 10)
+        assertEquals(3, output.write(src))
+        assertEquals(3, output.totalBytes)
+        while (src.hasRemaining()) {
+            output.write(src)
+        }
+        assertEquals(10, output.totalBytes)
+        assertEquals(110 * 8L, measure.count)
+        assertEquals(data.copyOf(10).toList(), sink.written.toByteArray().toList())
+    }
+}
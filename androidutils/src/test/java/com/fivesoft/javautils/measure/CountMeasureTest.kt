@@ -0,0 +1,159 @@
+package com.fivesoft.javautils.measure
+
+import com.fivesoft.javautils.time.VirtualScheduler
+import org.junit.Assert.assertEquals
+import org.junit.Test
+import java.io.IOException
+import java.util.Random
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.TimeUnit
+
+class CountMeasureTest {
+
+    private val scheduler = VirtualScheduler()
+
+    @Test
+    fun returnsMinusOneBeforeFirstCount() {
+        val measure = CountMeasure(10, 1_000, scheduler)
+        assertEquals(-1, measure.count)
+    }
+
+    @Test
+    fun forgetsProbesLeavingTheInterval() {
+        //10 probes of 100 ms
+        val measure = CountMeasure(10, 1_000, scheduler)
+        repeat(10) {
+            measure.count(it + 1L)
+            scheduler.advanceBy(100, TimeUnit.MILLISECONDS)
+        }
+        //Probe 0 has just left the interval
+        assertEquals((2L..10L).sum(), measure.count)
+        scheduler.advanceBy(300, TimeUnit.MILLISECONDS)
+        assertEquals((5L..10L).sum(), measure.count)
+        scheduler.advanceBy(10, TimeUnit.SECONDS)
+        assertEquals(0, measure.count)
+    }
+
+    @Test
+    fun keepsCountingAfterLongIdlePeriod() {
+        val measure = CountMeasure(4, 400, scheduler)
+        measure.count(5)
+        scheduler.advanceBy(1, TimeUnit.HOURS)
+        measure.count(2)
+        scheduler.advanceBy(100, TimeUnit.MILLISECONDS)
+        measure.count(3)
+        assertEquals(5, measure.count)
+    }
+
+    @Test
+    fun runningSumMatchesSumOfProbesInInterval() {
+        //10 probes of 100 ms, compared with summing the counts of the last 10 probe numbers
+        val measure = CountMeasure(10, 1_000, scheduler)
+        val counted = mutableListOf<Pair<Long, Long>>()
+        val random = Random(3)
+        repeat(5_000) {
+            val now = scheduler.nanoTime()
+            val probe = now / TimeUnit.MILLISECONDS.toNanos(100)
+            if (random.nextInt(4) != 0) {
+                val units = random.nextInt(100).toLong()
+                measure.count(units)
+                counted.add(probe to units)
+            }
+            val expected = counted.filter { it.first > probe - 10 }.sumOf { it.second }
+            assertEquals("at $now ns", expected, measure.count)
+            //Mostly within a probe or to the next one, sometimes past several or the whole interval
+            val step = if (random.nextInt(50) == 0) random.nextInt(1_500) else random.nextInt(120)
+            scheduler.advanceBy(step.toLong(), TimeUnit.MILLISECONDS)
+        }
+        measure.reset()
+        assertEquals(-1, measure.count)
+    }
+
+    @Test
+    fun reportsEveryClosedProbe() {
+        val measure = CountMeasure(10, 1_000, scheduler)
+        val closed = mutableListOf<Pair<Long, Double>>()
+        measure.setProbeListener { start, _, sum, _, _ -> closed.add(start to sum) }
+        repeat(5) {
+            measure.count(10)
+            scheduler.advanceBy(100, TimeUnit.MILLISECONDS)
+        }
+        measure.count(1)
+        assertEquals(5, closed.size)
+        assertEquals(TimeUnit.MILLISECONDS.toNanos(400), closed.last().first)
+        assertEquals(50.0, closed.sumOf { it.second }, 0.0)
+    }
+
+    @Test
+    fun concurrentCountsAreNotLostWhileRotating() {
+        //1 ms probes in a 10 min interval, so nothing leaves the interval during the test
+        val measure = CountMeasure(600_000, 600_000)
+        //Guarded by the measure, which calls the listener under its lock
+        var reported = 0.0
+        measure.setProbeListener { _, _, sum, _, _ -> reported += sum }
+        val threads = 8
+        val perThread = 1_000_000
+        val start = CountDownLatch(1)
+        val workers = List(threads) {
+            Thread {
+                start.await()
+                repeat(perThread) { measure.count(1) }
+            }
+        }
+        workers.forEach { it.start() }
+        start.countDown()
+        workers.forEach { it.join() }
+
+        val total = threads.toLong() * perThread
+        assertEquals(total, measure.count)
+        //Move past the open probe, so every unit has been reported
+        Thread.sleep(5)
+        assertEquals(total, measure.count)
+        assertEquals(total.toDouble(), reported, 0.0)
+    }
+
+    @Test
+    fun snapshotRoundTripsThroughBytes() {
+        for (count in longArrayOf(-1, 0, 127, 128, Long.MAX_VALUE)) {
+            val snapshot = CountMeasure.Snapshot(count, 60_000)
+            val decoded = CountMeasure.Snapshot.fromByteArray(snapshot.toByteArray())
+            assertEquals(count, decoded.count)
+            assertEquals(60_000, decoded.interval)
+        }
+        try {
+            CountMeasure.Snapshot.fromByteArray(ByteArray(0))
+            throw AssertionError("Decoded an empty snapshot")
+        } catch (expected: IOException) {
+        }
+    }
+
+    @Test
+    fun mergedSnapshotsEqualCombinedMeasure() {
+        val a = CountMeasure(10, 1_000, scheduler)
+        val b = CountMeasure(10, 1_000, scheduler)
+        val idle = CountMeasure(10, 1_000, scheduler)
+        val combined = CountMeasure(10, 1_000, scheduler)
+        repeat(20) {
+            a.count(it.toLong())
+            combined.count(it.toLong())
+            if (it % 3 == 0) {
+                b.count(7)
+                combined.count(7)
+            }
+            scheduler.advanceBy(70, TimeUnit.MILLISECONDS)
+        }
+        val snapshots = listOf(a.snapshot(), b.snapshot(), idle.snapshot())
+        assertEquals(-1, idle.snapshot().count)
+        assertEquals(combined.count, CountMeasure.Snapshot.merge(snapshots).count)
+        assertEquals(combined.count, a.snapshot().merge(b.snapshot()).merge(idle.snapshot()).count)
+
+        //Also after the round trip a remote collector would do
+        val decoded = snapshots.map { CountMeasure.Snapshot.fromByteArray(it.toByteArray()) }
+        assertEquals(combined.count, CountMeasure.Snapshot.merge(decoded).count)
+        try {
+            a.snapshot().merge(CountMeasure.Snapshot(1, 2_000))
+            throw AssertionError("Merged snapshots of different intervals")
+        } catch (expected: IllegalArgumentException) {
+        }
+    }
+}
@@ -0,0 +1,106 @@
+package com.fivesoft.javautils.measure
+
+import com.fivesoft.javautils.time.VirtualScheduler
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertFalse
+import org.junit.Assert.assertNotNull
+import org.junit.Assert.assertTrue
+import org.junit.Test
+import java.util.concurrent.TimeUnit
+import kotlin.math.exp
+
+class EwmaRateTest {
+
+    private val scheduler = VirtualScheduler()
+    //12 ticks of 100 ms
+    private val rate = EwmaRate(1_200, scheduler)
+
+    //Counts 10 units at the start of every tick, 100 units per second
+    private fun countSteadily(seconds: Int, unitsPerTick: Long = 10) {
+        repeat(seconds * 10) {
+            rate.count(unitsPerTick)
+            scheduler.advanceBy(100, TimeUnit.MILLISECONDS)
+        }
+    }
+
+    @Test
+    fun reportsNothingBeforeFirstCount() {
+        assertFalse(rate.hasCounts())
+        assertEquals(-1.0, rate.oneIntervalRate, 0.0)
+        assertEquals(-1.0, rate.fiveIntervalRate, 0.0)
+        assertEquals(-1.0, rate.fifteenIntervalRate, 0.0)
+
+        rate.count()
+        assertTrue(rate.hasCounts())
+        assertEquals(0.0, rate.oneIntervalRate, 0.0)
+    }
+
+    @Test
+    fun keepsSteadyRate() {
+        countSteadily(12)
+        assertEquals(100.0, rate.oneIntervalRate, 1e-9)
+        assertEquals(100.0, rate.fiveIntervalRate, 1e-9)
+        assertEquals(100.0, rate.fifteenIntervalRate, 1e-9)
+    }
+
+    @Test
+    fun decaysWithTimeConstantsOfOneFiveAndFifteenIntervals() {
+        countSteadily(12)
+        //Close the last tick, then stay idle for one interval
+        assertEquals(100.0, rate.oneIntervalRate, 1e-9)
+        scheduler.advanceBy(1_200, TimeUnit.MILLISECONDS)
+        assertEquals(100 * exp(-1.0), rate.oneIntervalRate, 1e-9)
+        assertEquals(100 * exp(-1.0 / 5), rate.fiveIntervalRate, 1e-9)
+        assertEquals(100 * exp(-1.0 / 15), rate.fifteenIntervalRate, 1e-9)
+    }
+
+    @Test
+    fun movesTowardsNewRate() {
+        countSteadily(12)
+        //200 units per second for one interval, 12 ticks
+        repeat(12) {
+            rate.count(20)
+            scheduler.advanceBy(100, TimeUnit.MILLISECONDS)
+        }
+        assertEquals(200 - 100 * exp(-1.0), rate.oneIntervalRate, 1e-9)
+        assertEquals(200 - 100 * exp(-1.0 / 5), rate.fiveIntervalRate, 1e-9)
+        assertEquals(200 - 100 * exp(-1.0 / 15), rate.fifteenIntervalRate, 1e-9)
+    }
+
+    @Test
+    fun resetForgetsCounts() {
+        countSteadily(2)
+        rate.reset()
+        assertFalse(rate.hasCounts())
+        assertEquals(-1.0, rate.oneIntervalRate, 0.0)
+
+        countSteadily(1, 5)
+        assertEquals(50.0, rate.oneIntervalRate, 1e-9)
+    }
+
+    @Test
+    fun frequencyMeasureInEwmaMode() {
+        val measure = FrequencyMeasure.ewma(1_200, scheduler)
+        assertNotNull(measure.ewma)
+        assertEquals(-1.0, measure.frequency, 0.0)
+        assertEquals(-1, measure.count)
+
+        repeat(120) {
+            measure.count(10)
+            scheduler.advanceBy(100, TimeUnit.MILLISECONDS)
+        }
+        assertEquals(100.0, measure.frequency, 1e-9)
+        //Estimated from the rate, 100 per second over 1.2 s
+        assertEquals(120, measure.count)
+        assertEquals(measure.frequency, measure.ewma!!.oneIntervalRate, 0.0)
+
+        measure.reset()
+        assertEquals(-1.0, measure.frequency, 0.0)
+        assertEquals(-1, measure.count)
+        try {
+            measure.setProbeListener { _, _, _, _, _ -> }
+            throw AssertionError("Accepted a probe listener in EWMA mode")
+        } catch (expected: UnsupportedOperationException) {
+        }
+    }
+}
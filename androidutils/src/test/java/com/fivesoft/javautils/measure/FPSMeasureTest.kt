@@ -0,0 +1,137 @@
+package com.fivesoft.javautils.measure
+
+import com.fivesoft.javautils.time.VirtualScheduler
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertTrue
+import org.junit.Test
+import java.util.Random
+import java.util.concurrent.TimeUnit
+import kotlin.math.abs
+
+class FPSMeasureTest {
+
+    private val measure = FPSMeasure(10, VirtualScheduler())
+    private var frameTime = 0L
+
+    private fun assertClose(expected: Long, actual: Long) {
+        //Log-linear buckets report values within 6.25%
+        assertTrue("expected ~$expected but was $actual", abs(actual - expected) <= expected * 0.0625)
+    }
+
+    //Renders frames taking the given time each
+    private fun frames(count: Int, millis: Long) {
+        repeat(count) {
+            frameTime += TimeUnit.MILLISECONDS.toNanos(millis)
+            measure.onFrame(frameTime)
+        }
+    }
+
+    //100 frames: 90 smooth, 5 slow, 4 janky and 1 frozen
+    private fun renderMixedFrames() {
+        measure.onFrame(frameTime)
+        frames(45, 10)
+        frames(5, 20)
+        frames(45, 10)
+        frames(4, 50)
+        frames(1, 800)
+    }
+
+    @Test
+    fun countsSlowJankyAndFrozenFrames() {
+        renderMixedFrames()
+        val stats = measure.frameStats
+        assertEquals(100, stats.frameCount)
+        //Janky frames are also slow, frozen frames also janky
+        assertEquals(10, stats.slowFrameCount)
+        assertEquals(5, stats.jankyFrameCount)
+        assertEquals(1, stats.frozenFrameCount)
+        assertEquals(measure.slowFrameCount, stats.slowFrameCount)
+        assertEquals(measure.jankyFrameCount, stats.jankyFrameCount)
+        assertEquals(measure.frozenFrameCount, stats.frozenFrameCount)
+    }
+
+    @Test
+    fun computesFrameTimePercentiles() {
+        renderMixedFrames()
+        val stats = measure.frameStats
+        assertClose(TimeUnit.MILLISECONDS.toNanos(10), stats.getFrameTimeAtPercentile(50.0))
+        assertClose(TimeUnit.MILLISECONDS.toNanos(10), stats.getFrameTimeAtPercentile(90.0))
+        assertClose(TimeUnit.MILLISECONDS.toNanos(20), stats.getFrameTimeAtPercentile(95.0))
+        assertClose(TimeUnit.MILLISECONDS.toNanos(50), stats.getFrameTimeAtPercentile(99.0))
+        assertEquals(TimeUnit.MILLISECONDS.toNanos(800), stats.getFrameTimeAtPercentile(100.0))
+        assertEquals(TimeUnit.MILLISECONDS.toNanos(800), stats.maxFrameTime)
+        assertEquals(stats.getFrameTimeAtPercentile(99.0), measure.getFrameTimeAtPercentile(99.0))
+        //(900 + 100 + 200 + 800) ms over 100 frames
+        assertEquals(TimeUnit.MILLISECONDS.toNanos(20).toDouble(), stats.meanFrameTime, 1.0)
+    }
+
+    @Test
+    fun boundaryFrameTimesAreNotCounted() {
+        measure.onFrame(frameTime)
+        for (threshold in longArrayOf(FPSMeasure.SLOW_FRAME_NANOS, FPSMeasure.JANKY_FRAME_NANOS,
+                FPSMeasure.FROZEN_FRAME_NANOS)) {
+            frameTime += threshold
+            measure.onFrame(frameTime)
+        }
+        //Only frames longer than a threshold count
+        assertEquals(2, measure.slowFrameCount)
+        assertEquals(1, measure.jankyFrameCount)
+        assertEquals(0, measure.frozenFrameCount)
+    }
+
+    @Test
+    fun takeFrameStatsStartsNewWindow() {
+        renderMixedFrames()
+        val first = measure.takeFrameStats()
+        assertEquals(100, first.frameCount)
+        assertEquals(0, measure.frameStats.frameCount)
+        assertEquals(-1, measure.getFrameTimeAtPercentile(50.0))
+
+        //A pause is not a frozen frame when skipped
+        frameTime += TimeUnit.SECONDS.toNanos(5)
+        measure.skipFrame()
+        measure.onFrame(frameTime)
+        frames(10, 40)
+        val second = measure.takeFrameStats()
+        assertEquals(10, second.frameCount)
+        assertEquals(10, second.jankyFrameCount)
+        assertEquals(0, second.frozenFrameCount)
+
+        val merged = first.merge(second)
+        assertEquals(110, merged.frameCount)
+        assertEquals(15, merged.jankyFrameCount)
+        assertEquals(1, merged.frozenFrameCount)
+        val decoded = FPSMeasure.FrameStats.fromByteArray(merged.toByteArray())
+        assertEquals(110, decoded.frameCount)
+        assertEquals(20, decoded.slowFrameCount)
+        assertEquals(merged.getFrameTimeAtPercentile(95.0), decoded.getFrameTimeAtPercentile(95.0))
+    }
+
+    @Test
+    fun averageFpsMatchesLastBufferOfFrames() {
+        assertEquals(-1.0, measure.averageFPS, 0.0)
+        val deltas = mutableListOf<Long>()
+        val random = Random(5)
+        measure.onFrame(frameTime)
+        repeat(1_000) {
+            if (random.nextInt(100) == 0) {
+                //A skipped pause records no delta
+                frameTime += TimeUnit.SECONDS.toNanos(1)
+                measure.skipFrame()
+                measure.onFrame(frameTime)
+            }
+            val delta = TimeUnit.MILLISECONDS.toNanos(8 + random.nextInt(30).toLong())
+            frameTime += delta
+            assertEquals(delta, measure.onFrame(frameTime))
+            deltas.add(delta)
+            val last = deltas.takeLast(10)
+            assertEquals(1e9 / last.average(), measure.averageFPS, 1e-6)
+        }
+        measure.reset()
+        assertEquals(-1.0, measure.averageFPS, 0.0)
+        assertEquals(-1, measure.onFrame(frameTime))
+        frameTime += TimeUnit.MILLISECONDS.toNanos(20)
+        measure.onFrame(frameTime)
+        assertEquals(50.0, measure.averageFPS, 1e-9)
+    }
+}
@@ -0,0 +1,105 @@
+package com.fivesoft.javautils.measure
+
+import com.fivesoft.javautils.time.VirtualScheduler
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertTrue
+import org.junit.Test
+import java.util.Random
+import java.util.concurrent.TimeUnit
+import kotlin.math.abs
+import kotlin.math.sqrt
+
+class GaugeMeasureTest {
+
+    private val scheduler = VirtualScheduler()
+
+    @Test
+    fun reportsNaNWithoutSamples() {
+        val measure = GaugeMeasure(10, 1_000, scheduler)
+        assertEquals(0, measure.count)
+        assertTrue(measure.mean.isNaN())
+        assertTrue(measure.min.isNaN())
+        assertTrue(measure.max.isNaN())
+        assertTrue(measure.standardDeviation.isNaN())
+    }
+
+    @Test
+    fun matchesBruteForceOverTheWindow() {
+        //20 probes of 50 ms
+        val measure = GaugeMeasure(20, 1_000, scheduler)
+        val probeNanos = TimeUnit.MILLISECONDS.toNanos(50)
+        val random = Random(11)
+        val times = LongArray(20_000)
+        val values = DoubleArray(20_000)
+        for (i in values.indices) {
+            //Large offset with a small spread, the worst case for sums of squares
+            val value = 1e9 + random.nextGaussian() * (1 + i % 7)
+            measure.record(value)
+            times[i] = scheduler.nanoTime()
+            values[i] = value
+            //Sometimes stay in the probe, sometimes skip several probes or the whole interval
+            val step = when (random.nextInt(100)) {
+                in 0..79 -> random.nextInt(2_000).toLong()
+                in 80..98 -> TimeUnit.MILLISECONDS.toMicros(random.nextInt(300).toLong())
+                else -> TimeUnit.SECONDS.toMicros(2)
+            }
+            scheduler.advanceBy(step, TimeUnit.MICROSECONDS)
+            if (i % 50 == 0) assertMatches(measure, times, values, i + 1, probeNanos)
+        }
+        assertMatches(measure, times, values, values.size, probeNanos)
+    }
+
+    private fun assertMatches(measure: GaugeMeasure, times: LongArray, values: DoubleArray, size: Int, probeNanos: Long) {
+        val oldest = scheduler.nanoTime() / probeNanos - 20 + 1
+        val window = (0 until size).filter { times[it] / probeNanos >= oldest }.map { values[it] }
+        assertEquals(window.size.toLong(), measure.count)
+        if (window.isEmpty()) {
+            assertTrue(measure.mean.isNaN())
+            return
+        }
+        val mean = window.average()
+        val deviation = sqrt(window.sumOf { (it - mean) * (it - mean) } / window.size)
+        assertEquals(mean, measure.mean, 1e-6)
+        assertEquals(window.min(), measure.min, 0.0)
+        assertEquals(window.max(), measure.max, 0.0)
+        assertTrue("deviation $deviation but was ${measure.standardDeviation}",
+            abs(measure.standardDeviation - deviation) <= 1e-6 * deviation + 1e-6)
+    }
+
+    @Test
+    fun leavesNoResidueOfProbesWhichLeft() {
+        val measure = GaugeMeasure(10, 1_000, scheduler)
+        repeat(1_000) {
+            measure.record(1e15 + it)
+            scheduler.advanceBy(1, TimeUnit.MILLISECONDS)
+        }
+        //The large probes leave one by one while small samples come in
+        repeat(10) {
+            measure.record(0.1)
+            scheduler.advanceBy(100, TimeUnit.MILLISECONDS)
+        }
+        measure.record(0.1)
+        assertEquals(10, measure.count)
+        assertEquals(0.1, measure.mean, 1e-15)
+        assertEquals(0.0, measure.standardDeviation, 1e-15)
+    }
+
+    @Test
+    fun reportsClosedProbes() {
+        val measure = GaugeMeasure(10, 1_000, scheduler)
+        val sums = mutableListOf<Double>()
+        measure.setProbeListener { _, count, sum, min, max ->
+            assertEquals(2, count)
+            assertEquals(sum / 2 - 1, min, 0.0)
+            assertEquals(sum / 2 + 1, max, 0.0)
+            sums.add(sum)
+        }
+        for (i in 1..3) {
+            measure.record(i * 10.0 - 1)
+            measure.record(i * 10.0 + 1)
+            scheduler.advanceBy(100, TimeUnit.MILLISECONDS)
+        }
+        measure.count
+        assertEquals(listOf(20.0, 40.0, 60.0), sums)
+    }
+}
@@ -0,0 +1,98 @@
+package com.fivesoft.javautils.measure
+
+import com.fivesoft.javautils.time.VirtualScheduler
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertTrue
+import org.junit.Test
+import java.util.Arrays
+import java.util.Random
+import java.util.concurrent.TimeUnit
+import kotlin.math.abs
+import kotlin.math.exp
+
+class KllSketchTest {
+
+    private fun logNormal(count: Int, seed: Long): DoubleArray {
+        val random = Random(seed)
+        return DoubleArray(count) { exp(random.nextGaussian()) }
+    }
+
+    //Largest and mean difference between the asked quantile and the true rank of the returned value,
+    //over the percentiles 1 to 99
+    private fun rankErrors(sorted: DoubleArray, quantileOf: (Double) -> Double): Pair<Double, Double> {
+        var maxError = 0.0
+        var sumError = 0.0
+        for (i in 1..99) {
+            val q = i / 100.0
+            val value = quantileOf(q)
+            //Rank of the value in the exact data, ties count as below
+            var below = Arrays.binarySearch(sorted, value)
+            below = if (below >= 0) below + 1 else -below - 1
+            val error = abs(below / sorted.size.toDouble() - q)
+            maxError = maxOf(maxError, error)
+            sumError += error
+        }
+        return maxError to sumError / 99
+    }
+
+    private fun assertAccurate(errors: Pair<Double, Double>) {
+        //The documented rank error at k = 200, which single percentiles may come close to
+        assertTrue("max rank error ${errors.first}", errors.first < 0.0165)
+        assertTrue("mean rank error ${errors.second}", errors.second < 0.005)
+    }
+
+    @Test
+    fun rankErrorOfOneMillionValuesStaysWithinTheBound() {
+        val values = logNormal(1_000_000, 42)
+        val sketch = KllSketch(QuantileMeasure.DEFAULT_K, 7)
+        values.forEach { sketch.update(it) }
+        val sorted = values.sortedArray()
+
+        val runs = arrayOfNulls<DoubleArray>(64)
+        val weights = LongArray(64)
+        val runCount = sketch.addRuns(runs, weights, 0)
+        var total = 0L
+        for (i in 0 until runCount) total += weights[i] * runs[i]!!.size
+        assertEquals(1_000_000, total)
+
+        assertAccurate(rankErrors(sorted) { q ->
+            KllSketch.valueAtRank(runs, weights, runCount, Math.ceil(q * total).toLong())
+        })
+        assertEquals(sorted.first(), sketch.min, 0.0)
+        assertEquals(sorted.last(), sketch.max, 0.0)
+    }
+
+    @Test
+    fun measureCombinesTheProbesOfTheInterval() {
+        val scheduler = VirtualScheduler()
+        val measure = QuantileMeasure(10, 1_000, QuantileMeasure.DEFAULT_K, scheduler)
+        val values = logNormal(1_000_000, 43)
+        //Spread over the 10 probes of the interval
+        values.forEachIndexed { i, value ->
+            measure.record(value)
+            if (i % 100_000 == 99_999 && i < 999_999) scheduler.advanceBy(100, TimeUnit.MILLISECONDS)
+        }
+        val sorted = values.sortedArray()
+
+        assertEquals(1_000_000, measure.count)
+        assertEquals(values.average(), measure.mean, 1e-9)
+        assertAccurate(rankErrors(sorted) { measure.getQuantile(it) })
+        assertEquals(0.5, measure.getRank(sorted[499_999]), 0.0165)
+
+        //The first probe leaves the interval
+        scheduler.advanceBy(100, TimeUnit.MILLISECONDS)
+        assertEquals(900_000, measure.count)
+    }
+
+    @Test
+    fun compactionKeepsMemoryBounded() {
+        val sketch = KllSketch(QuantileMeasure.DEFAULT_K, 7)
+        logNormal(1_000_000, 44).forEach { sketch.update(it) }
+        val runs = arrayOfNulls<DoubleArray>(64)
+        val weights = LongArray(64)
+        val runCount = sketch.addRuns(runs, weights, 0)
+        var retained = 0
+        for (i in 0 until runCount) retained += runs[i]!!.size
+        assertTrue("retained $retained", retained <= 3 * QuantileMeasure.DEFAULT_K + 64)
+    }
+}
@@ -0,0 +1,79 @@
+package com.fivesoft.javautils.measure
+
+import com.fivesoft.javautils.time.VirtualScheduler
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertTrue
+import org.junit.Test
+import java.util.concurrent.TimeUnit
+import kotlin.math.abs
+
+class LatencyMeasureTest {
+
+    private val scheduler = VirtualScheduler()
+    //10 probes of 100 ms
+    private val measure = LatencyMeasure(10, 1_000, LatencyMeasure.DEFAULT_HIGHEST_TRACKABLE_NANOS, scheduler)
+
+    private fun assertClose(expected: Long, actual: Long) {
+        //Log-linear buckets report values within 6.25%
+        assertTrue("expected ~$expected but was $actual", abs(actual - expected) <= expected * 0.0625)
+    }
+
+    @Test
+    fun reportsNothingBeforeFirstDuration() {
+        assertEquals(0, measure.count)
+        assertEquals(-1.0, measure.mean, 0.0)
+        assertEquals(-1, measure.max)
+        assertEquals(-1, measure.getValueAtPercentile(50.0))
+    }
+
+    @Test
+    fun computesPercentilesOfTheInterval() {
+        for (ms in 1L..1000L) {
+            measure.record(TimeUnit.MILLISECONDS.toNanos(ms))
+        }
+        assertEquals(1000, measure.count)
+        assertEquals(TimeUnit.MILLISECONDS.toNanos(1000), measure.max)
+        assertEquals(TimeUnit.MICROSECONDS.toNanos(500_500).toDouble(), measure.mean, 0.0)
+        assertClose(TimeUnit.MILLISECONDS.toNanos(500), measure.getValueAtPercentile(50.0))
+        assertClose(TimeUnit.MILLISECONDS.toNanos(990), measure.getValueAtPercentile(99.0))
+        assertEquals(TimeUnit.MILLISECONDS.toNanos(1000), measure.getValueAtPercentile(100.0))
+    }
+
+    @Test
+    fun forgetsDurationsLeavingTheInterval() {
+        measure.record(TimeUnit.SECONDS.toNanos(5))
+        scheduler.advanceBy(500, TimeUnit.MILLISECONDS)
+        repeat(100) { measure.record(TimeUnit.MILLISECONDS.toNanos(10)) }
+        assertEquals(TimeUnit.SECONDS.toNanos(5), measure.max)
+
+        //The long duration leaves the interval, the short ones stay
+        scheduler.advanceBy(500, TimeUnit.MILLISECONDS)
+        assertEquals(100, measure.count)
+        assertEquals(TimeUnit.MILLISECONDS.toNanos(10), measure.max)
+        assertClose(TimeUnit.MILLISECONDS.toNanos(10), measure.getValueAtPercentile(99.9))
+
+        scheduler.advanceBy(1, TimeUnit.HOURS)
+        assertEquals(0, measure.count)
+        assertEquals(-1, measure.max)
+    }
+
+    @Test
+    fun measuresStartStopOnTheClock() {
+        val start = measure.start()
+        scheduler.advanceBy(42, TimeUnit.MILLISECONDS)
+        assertEquals(TimeUnit.MILLISECONDS.toNanos(42), measure.stop(start))
+        assertEquals(TimeUnit.MILLISECONDS.toNanos(42), measure.max)
+    }
+
+    @Test
+    fun snapshotMatchesTheMeasure() {
+        for (ms in 1L..200L) {
+            measure.record(TimeUnit.MILLISECONDS.toNanos(ms))
+            scheduler.advanceBy(1, TimeUnit.MILLISECONDS)
+        }
+        val snapshot = measure.snapshot()
+        assertEquals(measure.count, snapshot.count)
+        assertEquals(measure.max, snapshot.max)
+        assertEquals(measure.getValueAtPercentile(90.0), snapshot.getValueAtPercentile(90.0))
+    }
+}
@@ -0,0 +1,117 @@
+package com.fivesoft.javautils.measure
+
+import com.fivesoft.javautils.time.VirtualScheduler
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertFalse
+import org.junit.Assert.assertTrue
+import org.junit.Test
+import java.util.concurrent.TimeUnit
+
+class MeasureAlarmsTest {
+
+    private val scheduler = VirtualScheduler()
+    private val alarms = MeasureAlarms(scheduler)
+    private var value = 0.0
+    //Raised above 10 and cleared at or below 8, after 1 s
+    private val rule = AlarmRule.above("load", { value }, 10.0, 8.0, 1, TimeUnit.SECONDS)
+    private val changes = mutableListOf<Pair<Long, Boolean>>()
+    private val alarm = alarms.watch(rule) { _, raised, _ -> changes.add(scheduler.millis() to raised) }
+
+    private fun set(newValue: Double) {
+        value = newValue
+        alarm.evaluate()
+        scheduler.runDueTasks()
+    }
+
+    @Test
+    fun raisesOnlyAfterTheHold() {
+        set(12.0)
+        scheduler.advanceBy(999, TimeUnit.MILLISECONDS)
+        assertFalse(alarm.isRaised)
+        //Raised by the hold timer, without another evaluation
+        scheduler.advanceBy(1, TimeUnit.MILLISECONDS)
+        assertTrue(alarm.isRaised)
+        assertEquals(listOf(1_000L to true), changes)
+    }
+
+    @Test
+    fun valueDroppingDuringTheHoldRestartsIt() {
+        set(12.0)
+        scheduler.advanceBy(500, TimeUnit.MILLISECONDS)
+        set(5.0)
+        scheduler.advanceBy(500, TimeUnit.MILLISECONDS)
+        set(12.0)
+        scheduler.advanceBy(999, TimeUnit.MILLISECONDS)
+        assertFalse(alarm.isRaised)
+        scheduler.advanceBy(1, TimeUnit.MILLISECONDS)
+        assertEquals(listOf(2_000L to true), changes)
+    }
+
+    @Test
+    fun staysRaisedBetweenTheThresholds() {
+        set(12.0)
+        scheduler.advanceBy(1, TimeUnit.SECONDS)
+        //Below the enter threshold, but above the exit threshold
+        set(9.0)
+        scheduler.advanceBy(1, TimeUnit.MINUTES)
+        assertTrue(alarm.isRaised)
+        assertEquals(1, changes.size)
+    }
+
+    @Test
+    fun clearsWhenTheMeasureGoesQuiet() {
+        set(12.0)
+        scheduler.advanceBy(1, TimeUnit.SECONDS)
+        //No evaluation is queued after this, the raised alarm checks back by itself
+        value = 3.0
+        scheduler.advanceBy(3, TimeUnit.SECONDS)
+        assertFalse(alarm.isRaised)
+        assertEquals(listOf(1_000L to true, 3_000L to false), changes)
+        //Nothing is left scheduled once cleared
+        assertEquals(0, scheduler.scheduledTaskCount)
+    }
+
+    @Test
+    fun idleAlarmSchedulesNothing() {
+        set(5.0)
+        assertEquals(0, scheduler.scheduledTaskCount)
+    }
+
+    @Test
+    fun ignoresNaN() {
+        set(12.0)
+        scheduler.advanceBy(1, TimeUnit.SECONDS)
+        set(Double.NaN)
+        scheduler.advanceBy(10, TimeUnit.SECONDS)
+        assertTrue(alarm.isRaised)
+    }
+
+    @Test
+    fun closedAlarmDoesNotNotify() {
+        set(12.0)
+        alarm.close()
+        scheduler.advanceBy(10, TimeUnit.SECONDS)
+        assertFalse(alarm.isRaised)
+        assertTrue(changes.isEmpty())
+    }
+
+    @Test
+    fun evaluatesOnClosedProbes() {
+        //Probes of 100 ms, the rate is in units per second
+        val measure = FrequencyMeasure(10, 1_000, scheduler)
+        val rateAlarm = alarms.watch(AlarmRule.above("rate", measure::getFrequency, 100.0, 50.0, 0, TimeUnit.SECONDS)) { _, raised, _ ->
+            changes.add(scheduler.millis() to raised)
+        }
+        measure.setProbeListener(rateAlarm)
+        repeat(3) {
+            measure.count(30)
+            scheduler.advanceBy(100, TimeUnit.MILLISECONDS)
+        }
+        assertFalse(rateAlarm.isRaised)
+        //Counting at 300 ms closes the probe at 200 ms, the interval then holds 120 units
+        measure.count(30)
+        scheduler.runDueTasks()
+        assertTrue(rateAlarm.isRaised)
+        assertEquals(listOf(300L to true), changes)
+    }
+}
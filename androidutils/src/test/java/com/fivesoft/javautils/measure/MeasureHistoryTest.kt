@@ -0,0 +1,99 @@
+package com.fivesoft.javautils.measure
+
+import com.fivesoft.javautils.time.VirtualScheduler
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertTrue
+import org.junit.Test
+import java.util.concurrent.TimeUnit
+
+class MeasureHistoryTest {
+
+    private val scheduler = VirtualScheduler()
+    //1 s x 5 and 5 s x 4
+    private val history = MeasureHistory(
+        MeasureHistory.Resolution(1, TimeUnit.SECONDS, 5),
+        MeasureHistory.Resolution(5, TimeUnit.SECONDS, 4)
+    )
+
+    @Test
+    fun rollsCountsIntoEveryResolution() {
+        //Probes of 100 ms
+        val measure = CountMeasure(10, 1_000, scheduler)
+        measure.setProbeListener(history)
+        for (second in 0 until 10) {
+            repeat(10) {
+                measure.count(second + 1L)
+                scheduler.advanceBy(100, TimeUnit.MILLISECONDS)
+            }
+        }
+        measure.flush()
+
+        val seconds = history.getSeries(0)
+        assertEquals(5, seconds.size())
+        for (i in 0 until 5) {
+            assertEquals(TimeUnit.SECONDS.toNanos(5L + i), seconds.getStartNanos(i))
+            assertEquals(10L * (6 + i), seconds.getSum(i).toLong())
+            assertEquals(10, seconds.getCount(i))
+        }
+        val fives = history.getSeries(1)
+        assertEquals(10L * (1 + 2 + 3 + 4 + 5), fives.getSum(2).toLong())
+        assertEquals(10L * (6 + 7 + 8 + 9 + 10), fives.getSum(3).toLong())
+        assertTrue(fives.getMean(0).isNaN())
+    }
+
+    @Test
+    fun flushDeliversTheLastProbeOfAQuietMeasure() {
+        val measure = GaugeMeasure(10, 1_000, scheduler)
+        measure.setProbeListener(history)
+        measure.record(4.0)
+        measure.record(8.0)
+        scheduler.advanceBy(10, TimeUnit.SECONDS)
+        assertEquals(0, history.getSeries(0).size())
+
+        measure.flush()
+        //The probe at 0 s is the newest bucket
+        val seconds = history.getSeries(0)
+        assertEquals(0, seconds.getStartNanos(4))
+        assertEquals(2, seconds.getCount(4))
+        assertEquals(6.0, seconds.getMean(4), 0.0)
+        assertEquals(4.0, seconds.getMin(4), 0.0)
+        assertEquals(8.0, seconds.getMax(4), 0.0)
+    }
+
+    @Test
+    fun latencyAndQuantileMeasuresFeedAHistory() {
+        val latencies = MeasureHistory(MeasureHistory.Resolution(1, TimeUnit.SECONDS, 3))
+        val latency = LatencyMeasure(10, 1_000, LatencyMeasure.DEFAULT_HIGHEST_TRACKABLE_NANOS, scheduler)
+        latency.setProbeListener(latencies)
+        val quantile = QuantileMeasure(10, 1_000, QuantileMeasure.DEFAULT_K, scheduler)
+        quantile.setProbeListener(history)
+        for (i in 1..3) {
+            latency.record(TimeUnit.MILLISECONDS.toNanos(i * 10L))
+            quantile.record(i * 1.5)
+            scheduler.advanceBy(1, TimeUnit.SECONDS)
+        }
+        latency.flush()
+        quantile.flush()
+
+        val series = latencies.getSeries(0)
+        assertEquals(1, series.getCount(2))
+        assertEquals(TimeUnit.MILLISECONDS.toNanos(30).toDouble(), series.getMax(2), 0.0)
+        assertEquals(TimeUnit.MILLISECONDS.toNanos(60).toDouble(), (0..2).sumOf { series.getSum(it) }, 0.0)
+        val values = history.getSeries(0)
+        assertEquals(listOf(1.5, 3.0, 4.5), (2..4).map { values.getMax(it) })
+    }
+
+    @Test
+    fun ewmaMeasuresHaveNoProbes() {
+        try {
+            FrequencyMeasure.ewma(1_000, scheduler).setProbeListener(history)
+            throw AssertionError("Listener accepted")
+        } catch (expected: UnsupportedOperationException) {
+        }
+    }
+
+    @Test
+    fun ewmaMeasuresAcceptRemovingTheListener() {
+        FrequencyMeasure.ewma(1_000, scheduler).setProbeListener(null)
+    }
+}
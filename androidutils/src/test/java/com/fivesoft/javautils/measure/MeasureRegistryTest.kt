@@ -0,0 +1,103 @@
+package com.fivesoft.javautils.measure
+
+import com.fivesoft.javautils.time.VirtualScheduler
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertFalse
+import org.junit.Assert.assertNull
+import org.junit.Assert.assertSame
+import org.junit.Assert.assertTrue
+import org.junit.Test
+import java.util.concurrent.TimeUnit
+import java.util.function.DoubleSupplier
+
+class MeasureRegistryTest {
+
+    private val scheduler = VirtualScheduler()
+    private val registry = MeasureRegistry(scheduler)
+
+    private fun valueOf(name: String, labels: Map<String, String> = emptyMap()): Double {
+        return registry.snapshot().samples.single { it.name == name && it.labels == labels }.value
+    }
+
+    @Test
+    fun keepsNegativeGaugeValues() {
+        registry.register("temperature", DoubleSupplier { -12.5 })
+        assertEquals(-12.5, valueOf("temperature"), 0.0)
+    }
+
+    @Test
+    fun reportsMeasuresWithoutDataAsNaN() {
+        val count = CountMeasure(10, 1_000, scheduler)
+        registry.register("events", count)
+        assertTrue(valueOf("events").isNaN())
+        count.count(3)
+        assertEquals(3.0, valueOf("events"), 0.0)
+    }
+
+    @Test
+    fun labelsWhichPrintTheSameAreDifferentKeys() {
+        val first = CountMeasure(10, 1_000, scheduler)
+        val second = CountMeasure(10, 1_000, scheduler)
+        //Both print as {k=v, x=y}
+        val joined = mapOf("k" to "v, x=y")
+        val separate = MeasureRegistry.labels("k", "v", "x", "y")
+        registry.register("events", joined, first)
+        registry.register("events", separate, second)
+
+        assertEquals(2, registry.size())
+        assertSame(first, registry.get("events", joined))
+        assertSame(second, registry.get("events", separate))
+    }
+
+    @Test
+    fun namesAndLabelsDoNotBleedIntoEachOther() {
+        registry.register("a", mapOf("b" to "c"), DoubleSupplier { 1.0 })
+        registry.register("a\u0000{b=c}", DoubleSupplier { 2.0 })
+        assertEquals(2, registry.size())
+    }
+
+    @Test
+    fun labelOrderDoesNotMatter() {
+        val measure = CountMeasure(10, 1_000, scheduler)
+        registry.register("events", linkedMapOf("b" to "2", "a" to "1"), measure)
+        assertSame(measure, registry.get("events", linkedMapOf("a" to "1", "b" to "2")))
+        try {
+            registry.register("events", MeasureRegistry.labels("a", "1", "b", "2"), measure)
+            throw AssertionError("Registered twice")
+        } catch (expected: IllegalArgumentException) {
+        }
+        assertTrue(registry.unregister("events", MeasureRegistry.labels("b", "2", "a", "1")))
+        assertFalse(registry.unregister("events", MeasureRegistry.labels("b", "2", "a", "1")))
+        assertNull(registry.get("events", MeasureRegistry.labels("a", "1", "b", "2")))
+    }
+
+    @Test
+    fun snapshotListsEntriesOfOneNameTogether() {
+        registry.register("b", MeasureRegistry.labels("x", "1"), DoubleSupplier { 1.0 })
+        registry.register("a", DoubleSupplier { 2.0 })
+        registry.register("b", emptyMap(), DoubleSupplier { 3.0 })
+        val names = registry.snapshot().samples.map { it.name to it.labels }
+        assertEquals(listOf("a" to emptyMap(), "b" to emptyMap(), "b" to mapOf("x" to "1")), names)
+    }
+
+    @Test
+    fun failingReporterIsPassedToErrorHandlerAndDoesNotStopOthers() {
+        val failure = IllegalStateException("disk full")
+        val failing = MeasureReporter { throw failure }
+        val reported = mutableListOf<MeasureSnapshot>()
+        val errors = mutableListOf<Pair<MeasureReporter, RuntimeException>>()
+        registry.setErrorHandler { reporter, e -> errors.add(reporter to e) }
+        registry.addReporter(failing)
+        registry.addReporter { reported.add(it) }
+        registry.register("gauge", emptyMap(), DoubleSupplier { 1.0 })
+
+        registry.start(1, TimeUnit.SECONDS)
+        scheduler.advanceBy(3, TimeUnit.SECONDS)
+        assertEquals(3, reported.size)
+        assertEquals(3, errors.size)
+        assertSame(failing, errors[0].first)
+        assertSame(failure, errors[0].second)
+        assertTrue(scheduler.failures.isEmpty())
+        registry.stop()
+    }
+}
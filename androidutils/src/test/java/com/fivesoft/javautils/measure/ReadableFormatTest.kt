@@ -0,0 +1,120 @@
+package com.fivesoft.javautils.measure
+
+import com.fivesoft.javautils.time.VirtualScheduler
+import org.junit.Assert.assertEquals
+import org.junit.Test
+import java.util.Locale
+import java.util.Random
+
+class ReadableFormatTest {
+
+    private val frequencyScales = doubleArrayOf(0.001, 1.0, 1_000.0, 1_000_000.0)
+    private val frequencyUnits = arrayOf(" mHz", " Hz", " KHz", " MHz")
+
+    //The String.format code the readable frequency used before
+    private fun formerReadableFrequency(frequency: Double): String = when {
+        frequency == -1.0 -> "N/A"
+        frequency < 1 -> String.format(Locale.US, "%.2f mHz", frequency * 1000)
+        frequency < 1000 -> String.format(Locale.US, "%.2f Hz", frequency)
+        frequency < 1000000 -> String.format(Locale.US, "%.2f KHz", frequency / 1000)
+        else -> String.format(Locale.US, "%.2f MHz", frequency / 1000000)
+    }
+
+    private fun format(value: Double, decimals: Int): String {
+        val sb = StringBuilder()
+        FixedPointFormat.append(sb, value, decimals)
+        val chars = CharArray(64)
+        val end = FixedPointFormat.write(chars, 3, value, decimals)
+        assertEquals(sb.toString(), String(chars, 3, end - 3))
+        return sb.toString()
+    }
+
+    private fun assertSameAsFormat(value: Double) {
+        for (decimals in 0..4) {
+            //From 2^48 scaled the last digit may differ, see FixedPointFormat
+            if (Math.abs(value) * Math.pow(10.0, decimals.toDouble()) >= (1L shl 48)) continue
+            val expected = String.format(Locale.US, "%.${decimals}f", value)
+            assertEquals("$value with $decimals decimals", expected, format(value, decimals))
+        }
+    }
+
+    private fun readable(value: Double): String {
+        val sb = StringBuilder()
+        FrequencyMeasure.appendReadable(sb, value, frequencyScales, frequencyUnits)
+        val chars = CharArray(64)
+        val end = FrequencyMeasure.writeReadable(chars, 0, value, frequencyScales, frequencyUnits)
+        assertEquals(sb.toString(), String(chars, 0, end))
+        return sb.toString()
+    }
+
+    @Test
+    fun roundsDecimalTiesLikeStringFormat() {
+        //Every value with three decimals, half of them are ties like 1.005, stored slightly above or below
+        for (k in -20_000..20_000) {
+            val value = k / 1000.0
+            assertSameAsFormat(value)
+            assertSameAsFormat(Math.nextUp(value))
+            assertSameAsFormat(Math.nextDown(value))
+        }
+        for (value in doubleArrayOf(0.0, -0.0, 0.004, -0.004, 0.005, -0.005, 999.995, 9.995, 1e12 + 0.005, 4503599627370.4966, 4503599627370.5)) {
+            assertSameAsFormat(value)
+        }
+    }
+
+    @Test
+    fun matchesStringFormatForRandomValues() {
+        val random = Random(42)
+        repeat(200_000) {
+            val value = (random.nextDouble() - 0.5) * Math.pow(10.0, random.nextInt(18) - 4.0)
+            assertSameAsFormat(value)
+        }
+    }
+
+    @Test
+    fun readableFrequencyMatchesFormerOutput() {
+        val values = mutableListOf(-1.0, -5.0, -0.0005, 0.0, 0.000005, 0.0009995, 0.9999949, 0.999995, 1.0,
+            1.005, 2.675, 999.994, 999.995, 999.999, 1000.0, 999_994.9, 999_995.0, 1e6, 1.2345e9,
+            Double.NaN, Double.POSITIVE_INFINITY, Double.NEGATIVE_INFINITY)
+        val random = Random(7)
+        repeat(10_000) {
+            values.add(random.nextDouble() * Math.pow(10.0, random.nextInt(12) - 4.0))
+        }
+        for (value in values) {
+            assertEquals("$value", formerReadableFrequency(value), readable(value))
+        }
+        assertEquals("1000.00 Hz", readable(999.995))
+        assertEquals("N/A", readable(-1.0))
+        assertEquals("NaN MHz", readable(Double.NaN))
+    }
+
+    @Test
+    fun measureWritesReadableFrequency() {
+        val measure = FrequencyMeasure(1, 1_000_000, VirtualScheduler())
+        assertEquals("N/A", measure.readableFrequency)
+        val chars = CharArray(3)
+        assertEquals(3, measure.writeReadableFrequency(chars, 0))
+        assertEquals("N/A", String(chars))
+
+        //999.995 Hz over 1000 s
+        measure.count(999_995)
+        assertEquals(formerReadableFrequency(measure.frequency), measure.readableFrequency)
+        assertEquals("1000.00 Hz", measure.readableFrequency)
+        val dst = CharArray(16)
+        val length = measure.writeReadableFrequency(dst, 2)
+        assertEquals("1000.00 Hz", String(dst, 2, length))
+
+        //Too small, with or without the offset
+        for (offset in intArrayOf(0, 8)) {
+            try {
+                measure.writeReadableFrequency(CharArray(9), offset)
+                throw AssertionError("Wrote past the end of the array at $offset")
+            } catch (expected: IndexOutOfBoundsException) {
+            }
+        }
+        try {
+            FrequencyMeasure(1, 1_000).writeReadableFrequency(CharArray(2), 0)
+            throw AssertionError("Wrote N/A past the end of the array")
+        } catch (expected: IndexOutOfBoundsException) {
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package com.fivesoft.javautils.measure
+
+import com.fivesoft.javautils.time.VirtualScheduler
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertFalse
+import org.junit.Assert.assertTrue
+import org.junit.Test
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicBoolean
+
+class ResourceMeasureTest {
+
+    private val scheduler = VirtualScheduler()
+    private val measure = ResourceMeasure(10, 1000, scheduler)
+
+    @Test
+    fun busyThreadReportsCpuUsageAndIsDroppedWhenDead() {
+        val tracked = CountDownLatch(1)
+        val running = AtomicBoolean(true)
+        val worker = Thread {
+            measure.trackCurrentThread("worker")
+            tracked.countDown()
+            var x = 0L
+            while (running.get()) {
+                x = x * 31 + 7
+            }
+            //Use the result, so the loop is not optimized away
+            if (x == 42L) println()
+        }
+        worker.start()
+        assertTrue(tracked.await(10, TimeUnit.SECONDS))
+
+        //The first sample is the baseline
+        measure.sample()
+        Thread.sleep(100)
+        scheduler.advanceBy(100, TimeUnit.MILLISECONDS)
+        measure.sample()
+        assertTrue(measure.getCpuUsage("worker") > 0)
+        assertTrue(measure.getCpuTimeMeasure("worker")!!.frequency > 0)
+
+        running.set(false)
+        worker.join()
+        measure.sample()
+        assertFalse(measure.trackedThreads.contains("worker"))
+        assertEquals(-1.0, measure.getCpuUsage("worker"), 0.0)
+    }
+
+    @Test
+    fun untrackedNameReturnsMinusOne() {
+        assertEquals(-1.0, measure.getCpuUsage("unknown"), 0.0)
+        assertEquals(-1.0, measure.getAllocationRate("unknown"), 0.0)
+
+        measure.trackCurrentThread("test")
+        measure.untrack("test")
+        assertEquals(-1.0, measure.getCpuUsage("test"), 0.0)
+        assertTrue(measure.trackedThreads.isEmpty())
+    }
+
+    @Test
+    fun parsesCpuTimeAfterLastParenthesis() {
+        //The thread name may contain ") ", fields are counted from the last closing parenthesis
+        val line = "1234 (my) (thread) S 1 2 3 4 5 6 7 8 9 10 250 75 0 0 20 0 1 0\n"
+        val stat = ByteArray(512) { '9'.code.toByte() }
+        val bytes = line.toByteArray(Charsets.US_ASCII)
+        System.arraycopy(bytes, 0, stat, 0, bytes.size)
+
+        //Bytes after the length are ignored
+        assertEquals((250L + 75) * 10_000_000L, ResourceMeasure.parseStatCpuTime(stat, bytes.size))
+        //Cut before the stime field
+        assertEquals(-1L, ResourceMeasure.parseStatCpuTime(stat, line.indexOf(" 75 ") + 1))
+        assertEquals(-1L, ResourceMeasure.parseStatCpuTime("1234 S 1 2".toByteArray(), 10))
+        assertEquals(-1L, ResourceMeasure.parseStatCpuTime(stat, -1))
+    }
+}
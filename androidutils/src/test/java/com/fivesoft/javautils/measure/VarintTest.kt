@@ -0,0 +1,75 @@
+package com.fivesoft.javautils.measure
+
+import org.junit.Assert.assertEquals
+import org.junit.Test
+import java.io.ByteArrayInputStream
+import java.io.ByteArrayOutputStream
+import java.io.EOFException
+import java.io.IOException
+
+class VarintTest {
+
+    private fun unsigned(value: Long): ByteArray =
+        ByteArrayOutputStream().also { Varint.writeUnsigned(it, value) }.toByteArray()
+
+    private fun signed(value: Long): ByteArray =
+        ByteArrayOutputStream().also { Varint.writeSigned(it, value) }.toByteArray()
+
+    @Test
+    fun roundTripsUnsignedBoundaries() {
+        //Value to encoded length, negative values take all 64 bits
+        val lengths = mapOf(0L to 1, 1L to 1, 127L to 1, 128L to 2, 16_383L to 2, 16_384L to 3,
+            Int.MAX_VALUE.toLong() to 5, Long.MAX_VALUE to 9, -1L to 10, Long.MIN_VALUE to 10)
+        for ((value, length) in lengths) {
+            val bytes = unsigned(value)
+            assertEquals("length of $value", length, bytes.size)
+            val input = ByteArrayInputStream(bytes)
+            assertEquals(value, Varint.readUnsigned(input))
+            assertEquals(-1, input.read())
+        }
+    }
+
+    @Test
+    fun roundTripsSignedBoundaries() {
+        //Zigzag encoding keeps small negative values short
+        val lengths = mapOf(0L to 1, -1L to 1, 63L to 1, -64L to 1, 64L to 2, -65L to 2,
+            Long.MAX_VALUE to 10, Long.MIN_VALUE to 10)
+        for ((value, length) in lengths) {
+            val bytes = signed(value)
+            assertEquals("length of $value", length, bytes.size)
+            assertEquals(value, Varint.readSigned(ByteArrayInputStream(bytes)))
+        }
+    }
+
+    @Test
+    fun readsConsecutiveValues() {
+        val out = ByteArrayOutputStream()
+        val values = listOf(0L, 127L, 128L, -1L, Long.MAX_VALUE, Long.MIN_VALUE, 300L)
+        values.forEach { Varint.writeSigned(out, it) }
+        val input = ByteArrayInputStream(out.toByteArray())
+        assertEquals(values, values.map { Varint.readSigned(input) })
+    }
+
+    @Test
+    fun rejectsTruncatedAndMalformedInput() {
+        val truncated = unsigned(Long.MAX_VALUE).copyOf(4)
+        try {
+            Varint.readUnsigned(ByteArrayInputStream(truncated))
+            throw AssertionError("Read a truncated varint")
+        } catch (expected: EOFException) {
+        }
+        //More continuation bytes than a long can take
+        val malformed = ByteArray(11) { 0x80.toByte() }
+        try {
+            Varint.readUnsigned(ByteArrayInputStream(malformed))
+            throw AssertionError("Read a malformed varint")
+        } catch (expected: IOException) {
+            assertEquals(IOException::class.java, expected.javaClass)
+        }
+        try {
+            Varint.readVersion(ByteArrayInputStream(byteArrayOf(2)), 1)
+            throw AssertionError("Accepted an unknown version")
+        } catch (expected: IOException) {
+        }
+    }
+}
@@ -0,0 +1,72 @@
+package com.fivesoft.javautils.time
+
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertTrue
+import org.junit.Test
+import java.util.concurrent.TimeUnit
+
+class VirtualSchedulerTest {
+
+    private val scheduler = VirtualScheduler()
+    private val log = mutableListOf<String>()
+
+    @Test
+    fun runsTasksInOrderOfDueTimeThenScheduling() {
+        scheduler.schedule({ log.add("b") }, 20, TimeUnit.MILLISECONDS)
+        scheduler.schedule({ log.add("a") }, 10, TimeUnit.MILLISECONDS)
+        scheduler.schedule({ log.add("c") }, 20, TimeUnit.MILLISECONDS)
+
+        assertEquals(0, scheduler.advanceBy(9, TimeUnit.MILLISECONDS))
+        assertEquals(3, scheduler.advanceBy(11, TimeUnit.MILLISECONDS))
+        assertEquals(listOf("a", "b", "c"), log)
+        assertEquals(TimeUnit.MILLISECONDS.toNanos(20), scheduler.nanoTime())
+    }
+
+    @Test
+    fun tasksSeeTheirDueTime() {
+        scheduler.schedule({ log.add("at ${scheduler.millis()}") }, 15, TimeUnit.MILLISECONDS)
+        scheduler.advanceBy(1, TimeUnit.SECONDS)
+        assertEquals(listOf("at 15"), log)
+    }
+
+    @Test
+    fun repeatsWithFixedDelayUntilCancelled() {
+        val handle = scheduler.scheduleWithFixedDelay({ log.add("tick") }, 0, 100, TimeUnit.MILLISECONDS)
+        scheduler.advanceBy(450, TimeUnit.MILLISECONDS)
+        assertEquals(5, log.size)
+        handle.cancel()
+        scheduler.advanceBy(1, TimeUnit.SECONDS)
+        assertEquals(5, log.size)
+    }
+
+    @Test
+    fun failingTaskIsRecordedAndNotRepeated() {
+        scheduler.scheduleWithFixedDelay({
+            log.add("fail")
+            throw IllegalStateException("boom")
+        }, 10, 10, TimeUnit.MILLISECONDS)
+        scheduler.schedule({ log.add("other") }, 10, TimeUnit.MILLISECONDS)
+
+        //Must not throw into the caller
+        scheduler.advanceBy(100, TimeUnit.MILLISECONDS)
+        assertEquals(listOf("fail", "other"), log)
+        assertEquals(1, scheduler.failures.size)
+        assertTrue(scheduler.failures[0] is IllegalStateException)
+        assertEquals(0, scheduler.scheduledTaskCount)
+
+        scheduler.clearFailures()
+        assertTrue(scheduler.failures.isEmpty())
+    }
+
+    @Test
+    fun sleepReturnsWhenAnotherThreadAdvancesTime() {
+        val sleeper = Thread { scheduler.sleep(1, TimeUnit.SECONDS) }
+        sleeper.start()
+        while (scheduler.scheduledTaskCount == 0) {
+            Thread.sleep(1)
+        }
+        scheduler.advanceBy(1, TimeUnit.SECONDS)
+        sleeper.join(5_000)
+        assertTrue(!sleeper.isAlive)
+    }
+}